@@ -0,0 +1,126 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+//Keeps one data file open in append mode and writes lines to it in groups.
+//Pending lines are pushed to the file once batchRecords of them have built up,
+//once batchMillis have passed since the last flush, or when flush()/close() is called.
+public class AppendLog implements Closeable {
+
+	//Shared daemon thread that flushes logs whose time window has run out.
+	private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "append-log-flusher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final File file;
+	private final int batchRecords;
+	private final long batchMillis;
+
+	private FileOutputStream stream;
+	private BufferedWriter writer;
+	private ScheduledFuture<?> timer;
+	private int pending;
+
+	public AppendLog(File file, int batchRecords, long batchMillis) {
+		this.file = file;
+		this.batchRecords = Math.max(1, batchRecords);
+		this.batchMillis = Math.max(0, batchMillis);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	//Buffers one line and writes the group out if the record limit has been reached.
+	public synchronized void append(String line) throws IOException {
+		open();
+		writer.write(line);
+		writer.newLine();
+		pending++;
+		if (pending >= batchRecords) {
+			flush();
+		}
+	}
+
+	//Writes a batch of lines with one flush and forces them to disk, for bulk imports.
+	public synchronized void appendAll(Collection<String> lines) throws IOException {
+		if (lines.isEmpty()) {
+			return;
+		}
+		open();
+		for (String line : lines) {
+			writer.write(line);
+			writer.newLine();
+		}
+		writer.flush();
+		pending = 0;
+		stream.getFD().sync();
+	}
+
+	//Pushes every pending line to the file.
+	public synchronized void flush() throws IOException {
+		if (writer != null && pending > 0) {
+			writer.flush();
+			pending = 0;
+		}
+	}
+
+	//Flushes pending lines and forces everything written so far to disk.
+	public synchronized void sync() throws IOException {
+		if (writer == null) {
+			return;
+		}
+		writer.flush();
+		pending = 0;
+		stream.getFD().sync();
+	}
+
+	//Flushes pending lines and releases the file handle. The log reopens on the next append.
+	@Override
+	public synchronized void close() throws IOException {
+		if (writer == null) {
+			return;
+		}
+		try {
+			flush();
+			writer.close();
+		} finally {
+			if (timer != null) {
+				timer.cancel(false);
+			}
+			writer = null;
+			stream = null;
+			timer = null;
+		}
+	}
+
+	//Opens the file the first time it is needed so nothing is created until there is data to write.
+	private void open() throws IOException {
+		if (writer != null) {
+			return;
+		}
+		stream = new FileOutputStream(file, true);
+		writer = new BufferedWriter(new OutputStreamWriter(stream));
+		if (batchMillis > 0 && batchRecords > 1) {
+			timer = FLUSHER.scheduleWithFixedDelay(this::flushQuietly, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
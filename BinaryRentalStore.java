@@ -0,0 +1,486 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+//Saves everything to one binary log, rentals.bin, in the order it happens. Each entry is framed as
+//
+//  int length | byte type | length bytes of payload | int CRC32C of the type and payload
+//
+//so loading skips no text parsing, and an entry cut off or damaged by a crash is caught by its length or checksum.
+//Loading stops at the first bad entry and the log is cut back to the entry before it, so the next save follows
+//good data. Numbers are big-endian, plates are their PlateCodec code (with the text after it for plates that
+//can't be packed), dates are epoch days and text is an int byte count and UTF-8 (-1 for null).
+//Every save is handed to the OS straight away, as the text store does by default; bulk saves, flush and close
+//also force the log to disk.
+public class BinaryRentalStore implements RentalStore {
+
+	private static final byte VEHICLE = 1;
+	private static final byte CUSTOMER = 2;
+	private static final byte RECORD = 3;
+	private static final byte RESERVE = 4;
+	private static final byte RELEASE = 5;
+	private static final byte STATUS = 6;  //A vehicle's status as of a checkpoint.
+
+	private static final int HEADER = 5;  //Length and type.
+	private static final int TRAILER = 4;  //Checksum.
+
+	//Vehicle kinds, as the text store names them.
+	private static final byte CAR = 0;
+	private static final byte MINIBUS = 1;
+	private static final byte PICKUP_TRUCK = 2;
+
+	//Writes one entry's payload.
+	private interface Payload {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	//A ByteArrayOutputStream that lets the checksum read its bytes without copying them.
+	private static class Buffer extends ByteArrayOutputStream {
+		byte[] bytes() {
+			return buf;
+		}
+	}
+
+	private final File file;
+
+	//Guarded by this.
+	private final Buffer payload = new Buffer();
+	private final DataOutputStream payloadOut = new DataOutputStream(payload);
+	private final CRC32C checksum = new CRC32C();
+	private FileOutputStream stream;
+	private DataOutputStream out;
+	private long goodLength = -1;  //Set by a load that found a bad entry; the log is cut back to it before the next save.
+	private Frames loaded;  //The log as read at startup, kept until the last load step has run.
+
+	public BinaryRentalStore(File dataDir) {
+		this.file = new File(dataDir, "rentals.bin");
+	}
+
+	@Override
+	public void saveVehicle(Vehicle vehicle) throws IOException {
+		save(VEHICLE, out -> writeVehicle(out, vehicle));
+	}
+
+	@Override
+	public void saveCustomer(Customer customer) throws IOException {
+		save(CUSTOMER, out -> writeCustomer(out, customer));
+	}
+
+	@Override
+	public void saveRecord(RentalRecord record) throws IOException {
+		save(RECORD, out -> writeRecord(out, record));
+	}
+
+	@Override
+	public void saveReservation(Reservation reservation) throws IOException {
+		save(RESERVE, out -> {
+			out.writeLong(reservation.getId());
+			writePlate(out, reservation.getVehicle());
+			out.writeInt(reservation.getCustomer().getCustomerId());
+			out.writeInt((int) reservation.getStartDate().toEpochDay());
+			out.writeInt((int) reservation.getEndDate().toEpochDay());
+		});
+	}
+
+	@Override
+	public void saveRelease(long reservationId) throws IOException {
+		save(RELEASE, out -> out.writeLong(reservationId));
+	}
+
+	@Override
+	public synchronized void saveVehicles(List<Vehicle> vehicles) throws IOException {
+		for (Vehicle vehicle : vehicles) {
+			writeEntry(VEHICLE, out -> writeVehicle(out, vehicle));
+		}
+		sync();
+	}
+
+	@Override
+	public synchronized void saveCustomers(List<Customer> customers) throws IOException {
+		for (Customer customer : customers) {
+			writeEntry(CUSTOMER, out -> writeCustomer(out, customer));
+		}
+		sync();
+	}
+
+	@Override
+	public synchronized void saveRecords(List<RentalRecord> records) throws IOException {
+		for (RentalRecord record : records) {
+			writeEntry(RECORD, out -> writeRecord(out, record));
+		}
+		sync();
+	}
+
+	//Appends every vehicle's status. Loading replays the log in order, so these override the records before them.
+	@Override
+	public synchronized void checkpoint(List<Vehicle> fleet) throws IOException {
+		for (Vehicle vehicle : fleet) {
+			writeStatus(vehicle);
+		}
+		sync();
+	}
+
+	//Rewrites the log without released reservations and old statuses, then adds a checkpoint. Vehicles, customers and
+	//records are all kept, since the history is rebuilt from them. The new log is swapped in only once it is on disk.
+	@Override
+	public synchronized void compact(List<Vehicle> fleet) throws IOException {
+		close();
+		File temp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream tempStream = new FileOutputStream(temp)) {
+			if (file.exists()) {
+				Frames frames = Frames.read(file);
+				Set<Long> released = new HashSet<>();
+				for (int i = 0; i < frames.count; i++) {
+					if (frames.type(i) == RELEASE) {
+						released.add(frames.payload(i).getLong());
+					}
+				}
+				try (FileChannel target = tempStream.getChannel()) {
+					for (int i = 0; i < frames.count; i++) {
+						byte type = frames.type(i);
+						boolean keep = type == VEHICLE || type == CUSTOMER || type == RECORD ||
+								(type == RESERVE && !released.contains(frames.payload(i).getLong()));
+						if (keep) {
+							target.write(frames.frame(i));
+						}
+					}
+					open(tempStream);
+					for (Vehicle vehicle : fleet) {
+						writeStatus(vehicle);
+					}
+					sync();
+				}
+			} else {
+				open(tempStream);
+				for (Vehicle vehicle : fleet) {
+					writeStatus(vehicle);
+				}
+				sync();
+			}
+		} finally {
+			out = null;
+			stream = null;
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		goodLength = -1;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (out != null) {
+			sync();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out == null) {
+			return;
+		}
+		try {
+			sync();
+			out.close();
+		} finally {
+			out = null;
+			stream = null;
+		}
+	}
+
+	private synchronized void save(byte type, Payload payload) throws IOException {
+		writeEntry(type, payload);
+		out.flush();
+	}
+
+	private void sync() throws IOException {
+		out.flush();
+		stream.getFD().sync();
+	}
+
+	//Frames one entry and writes it to the log's buffer. Callers hold this lock.
+	private void writeEntry(byte type, Payload writer) throws IOException {
+		payload.reset();
+		writer.write(payloadOut);
+		payloadOut.flush();
+		checksum.reset();
+		checksum.update(type);
+		checksum.update(payload.bytes(), 0, payload.size());
+		open();
+		out.writeInt(payload.size());
+		out.writeByte(type);
+		out.write(payload.bytes(), 0, payload.size());
+		out.writeInt((int) checksum.getValue());
+	}
+
+	//Opens the log for appending the first time something is saved, cutting off any bad entry a load found first.
+	private void open() throws IOException {
+		if (out != null) {
+			return;
+		}
+		if (goodLength >= 0) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(goodLength);
+			}
+			goodLength = -1;
+		}
+		open(new FileOutputStream(file, true));
+	}
+
+	private void open(FileOutputStream target) {
+		stream = target;
+		out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+	}
+
+	private static void writeVehicle(DataOutputStream out, Vehicle vehicle) throws IOException {
+		out.writeByte(vehicle instanceof Car ? CAR : vehicle instanceof Minibus ? MINIBUS : PICKUP_TRUCK);
+		writePlate(out, vehicle);
+		writeText(out, vehicle.getMake());
+		writeText(out, vehicle.getModel());
+		out.writeInt(vehicle.getYear());
+		if (vehicle instanceof Car) {
+			out.writeInt(((Car) vehicle).getNumSeats());
+		} else if (vehicle instanceof Minibus) {
+			out.writeBoolean(((Minibus) vehicle).getIsAccessible());
+		} else {
+			PickupTruck truck = (PickupTruck) vehicle;
+			out.writeDouble(truck.getCargoSize());
+			out.writeBoolean(truck.hasTrailer());
+		}
+	}
+
+	private static void writeCustomer(DataOutputStream out, Customer customer) throws IOException {
+		out.writeInt(customer.getCustomerId());
+		writeText(out, customer.getCustomerName());
+	}
+
+	private static void writeRecord(DataOutputStream out, RentalRecord record) throws IOException {
+		writePlate(out, record.getVehicle());
+		out.writeInt(record.getCustomer().getCustomerId());
+		out.writeInt((int) record.getRecordDate().toEpochDay());
+		out.writeDouble(record.getTotalAmount());
+		writeText(out, record.getRecordType());
+	}
+
+	private void writeStatus(Vehicle vehicle) throws IOException {
+		writeEntry(STATUS, out -> {
+			writePlate(out, vehicle);
+			out.writeByte(vehicle.getStatus().ordinal());
+		});
+	}
+
+	private static void writePlate(DataOutputStream out, Vehicle vehicle) throws IOException {
+		out.writeInt(vehicle.getPlateCode());
+		if (vehicle.getPlateCode() == PlateCodec.NO_CODE) {
+			writeText(out, vehicle.getLicensePlate());
+		}
+	}
+
+	private static void writeText(DataOutputStream out, String text) throws IOException {
+		if (text == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	@Override
+	public synchronized void loadVehicles(RentalStore.Loader loader) throws IOException {
+		Frames frames = frames();
+		for (int i = 0; i < frames.count; i++) {
+			if (frames.type(i) == VEHICLE) {
+				loader.addVehicle(readVehicle(frames.payload(i)));
+			}
+		}
+	}
+
+	@Override
+	public synchronized void loadCustomers(RentalStore.Loader loader) throws IOException {
+		Frames frames = frames();
+		for (int i = 0; i < frames.count; i++) {
+			if (frames.type(i) == CUSTOMER) {
+				ByteBuffer in = frames.payload(i);
+				loader.addCustomer(new Customer(in.getInt(), readText(in)));
+			}
+		}
+	}
+
+	//Records and checkpointed statuses are replayed together, in the order they were saved.
+	@Override
+	public synchronized void loadRecords(RentalStore.Loader loader) throws IOException {
+		Frames frames = frames();
+		for (int i = 0; i < frames.count; i++) {
+			byte type = frames.type(i);
+			if (type == RECORD) {
+				ByteBuffer in = frames.payload(i);
+				Vehicle vehicle = readVehicleRef(in, loader);
+				Customer customer = loader.findCustomer(in.getInt());
+				long day = in.getInt();
+				double amount = in.getDouble();
+				String recordType = readText(in);
+				if (vehicle != null && customer != null) {
+					loader.addRecord(vehicle, customer, day, amount, recordType.equals("RENT") ? "RENT" : recordType.equals("RETURN") ? "RETURN" : recordType);  //Shares the two usual values.
+				}
+			} else if (type == STATUS) {
+				ByteBuffer in = frames.payload(i);
+				Vehicle vehicle = readVehicleRef(in, loader);
+				int status = in.get();
+				if (vehicle != null) {
+					vehicle.setStatus(Vehicle.VehicleStatus.values()[status]);
+				}
+			}
+		}
+	}
+
+	//The last load step, after which the log read at startup is let go.
+	@Override
+	public synchronized void loadReservations(RentalStore.Loader loader) throws IOException {
+		Frames frames = frames();
+		loaded = null;
+		for (int i = 0; i < frames.count; i++) {
+			byte type = frames.type(i);
+			if (type == RESERVE) {
+				ByteBuffer in = frames.payload(i);
+				long id = in.getLong();
+				Vehicle vehicle = readVehicleRef(in, loader);
+				Customer customer = loader.findCustomer(in.getInt());
+				LocalDate from = LocalDate.ofEpochDay(in.getInt());
+				LocalDate to = LocalDate.ofEpochDay(in.getInt());
+				if (vehicle != null && customer != null) {
+					loader.addReservation(new Reservation(id, vehicle, customer, from, to));
+				}
+			} else if (type == RELEASE) {
+				loader.releaseReservation(frames.payload(i).getLong());
+			}
+		}
+	}
+
+	//Reads the log the first time a load step asks for it.
+	private Frames frames() throws IOException {
+		if (loaded == null) {
+			loaded = file.exists() ? Frames.read(file) : Frames.EMPTY;
+			if (loaded.goodLength < loaded.fileLength) {
+				System.out.println("Error: " + (loaded.fileLength - loaded.goodLength) + " bytes at the end of " + file.getName() +
+						" are cut off or damaged and will be dropped.");
+				goodLength = loaded.goodLength;
+			}
+		}
+		return loaded;
+	}
+
+	private static Vehicle readVehicle(ByteBuffer in) {
+		byte kind = in.get();
+		int plateCode = in.getInt();
+		String plate = plateCode == PlateCodec.NO_CODE ? readText(in) : null;
+		String make = readText(in);
+		String model = readText(in);
+		int year = in.getInt();
+		Vehicle vehicle;
+		if (kind == CAR) {
+			vehicle = new Car(make, model, year, in.getInt());
+		} else if (kind == MINIBUS) {
+			vehicle = new Minibus(make, model, year, in.get() != 0);
+		} else {
+			double cargoSize = in.getDouble();
+			vehicle = new PickupTruck(make, model, year, cargoSize, in.get() != 0);
+		}
+		vehicle.setLicensePlate(plate != null ? plate : PlateCodec.decode(plateCode));
+		return vehicle;
+	}
+
+	private static Vehicle readVehicleRef(ByteBuffer in, RentalStore.Loader loader) {
+		int plateCode = in.getInt();
+		return plateCode != PlateCodec.NO_CODE ? loader.findVehicle(plateCode) : loader.findVehicle(readText(in));
+	}
+
+	private static String readText(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	//The good entries of a log, found by walking the frames from the start and checking each checksum.
+	private static class Frames {
+		static final Frames EMPTY = new Frames(ByteBuffer.allocate(0), new int[0], 0, 0, 0);
+
+		final ByteBuffer data;
+		final int[] starts;
+		final int count;
+		final long goodLength;  //End of the last good entry.
+		final long fileLength;
+
+		Frames(ByteBuffer data, int[] starts, int count, long goodLength, long fileLength) {
+			this.data = data;
+			this.starts = starts;
+			this.count = count;
+			this.goodLength = goodLength;
+			this.fileLength = fileLength;
+		}
+
+		static Frames read(File file) throws IOException {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size > Integer.MAX_VALUE) {
+					throw new IOException(file.getName() + " is over 2 GB; compact it or use the text store");
+				}
+				MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				int[] starts = new int[1024];
+				int count = 0;
+				int position = 0;
+				CRC32C checksum = new CRC32C();
+				while (size - position >= HEADER + TRAILER) {
+					int length = data.getInt(position);
+					if (length < 0 || length > size - position - HEADER - TRAILER) {
+						break;  //Cut off, or a damaged length.
+					}
+					checksum.reset();
+					checksum.update(data.duplicate().position(position + 4).limit(position + HEADER + length));
+					if ((int) checksum.getValue() != data.getInt(position + HEADER + length)) {
+						break;
+					}
+					if (count == starts.length) {
+						starts = Arrays.copyOf(starts, count * 2);
+					}
+					starts[count++] = position;
+					position += HEADER + length + TRAILER;
+				}
+				return new Frames(data, starts, count, position, size);
+			}
+		}
+
+		byte type(int i) {
+			return data.get(starts[i] + 4);
+		}
+
+		//The entry's payload, ready to be read from its start.
+		ByteBuffer payload(int i) {
+			int start = starts[i] + HEADER;
+			return data.duplicate().position(start).limit(start + data.getInt(starts[i]));
+		}
+
+		//The whole entry, framing and all, for copying as it is.
+		ByteBuffer frame(int i) {
+			return data.duplicate().position(starts[i]).limit(starts[i] + HEADER + data.getInt(starts[i]) + TRAILER);
+		}
+	}
+}
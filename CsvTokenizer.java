@@ -0,0 +1,337 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+
+//Walks the comma-separated fields of one line straight from a byte buffer, such as a memory-mapped chunk of a
+//data file, and parses numbers, decimal amounts, ISO dates, booleans and plates in place. Only text fields
+//that are kept, like customer names, become Strings. One tokenizer is reused for every line of a chunk:
+//
+//  line.next("customer id").asInt()
+//
+//A field that can't be parsed throws a FieldException naming the field, so loaders can report exactly what
+//was wrong with a line. Not thread-safe; each loading thread has its own.
+public class CsvTokenizer {
+
+	//Thrown for a missing or malformed field. The message names the field and shows what was found.
+	public static class FieldException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		private final int field;
+
+		FieldException(int field, String message) {
+			super(message);
+			this.field = field;
+		}
+
+		//The field's position in the line, counting from 1.
+		public int getField() {
+			return field;
+		}
+	}
+
+	private static final Charset CHARSET = Charset.defaultCharset();  //Same charset the files are written with.
+
+	//Days from 0000-01-01 to 1970-01-01, as used by LocalDate.toEpochDay.
+	private static final long DAYS_0000_TO_1970 = 719_528L;
+
+	//Exact powers of ten. Any long below 2^53 divided or multiplied by one of these rounds correctly.
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private ByteBuffer buffer;
+	private int lineStart;
+	private int lineEnd;
+	private int position;  //Start of the next field, or past lineEnd when there are no more.
+	private int fieldStart;
+	private int fieldEnd;
+	private int fieldNumber;
+	private String fieldName;
+	private byte[] scratch = new byte[64];
+
+	//A tokenizer over a line that is already a String, e.g. a line being imported.
+	public static CsvTokenizer of(String line) {
+		byte[] bytes = line.getBytes(CHARSET);
+		CsvTokenizer tokenizer = new CsvTokenizer();
+		tokenizer.reset(ByteBuffer.wrap(bytes), 0, bytes.length);
+		return tokenizer;
+	}
+
+	//Points the tokenizer at the line from start up to but not including end. A trailing carriage return is dropped.
+	public void reset(ByteBuffer buffer, int start, int end) {
+		if (end > start && buffer.get(end - 1) == '\r') {
+			end--;
+		}
+		this.buffer = buffer;
+		this.lineStart = start;
+		this.lineEnd = end;
+		this.position = start;
+		this.fieldNumber = 0;
+	}
+
+	//Whether the line is empty or only whitespace.
+	public boolean isBlank() {
+		for (int i = lineStart; i < lineEnd; i++) {
+			if (buffer.get(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean hasNext() {
+		return position <= lineEnd;
+	}
+
+	//Moves to the next field. The name is only used in error messages.
+	public CsvTokenizer next(String name) {
+		fieldNumber++;
+		fieldName = name;
+		if (position > lineEnd) {
+			throw new FieldException(fieldNumber, "field " + fieldNumber + " (" + name + ") is missing");
+		}
+		int end = position;
+		while (end < lineEnd && buffer.get(end) != ',') {
+			end++;
+		}
+		fieldStart = position;
+		fieldEnd = end;
+		position = end + 1;
+		return this;
+	}
+
+	//Moves to a last field that runs to the end of the line, commas and all, such as a name.
+	public CsvTokenizer rest(String name) {
+		next(name);
+		fieldEnd = lineEnd;
+		position = lineEnd + 1;
+		return this;
+	}
+
+	//The whole line as text, e.g. to keep a line for later.
+	public String line() {
+		return decode(lineStart, lineEnd);
+	}
+
+	public String asString() {
+		return decode(fieldStart, fieldEnd);
+	}
+
+	//Whether the field is exactly the given ASCII text.
+	public boolean is(String text) {
+		if (fieldEnd - fieldStart != text.length()) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (buffer.get(fieldStart + i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean startsWith(char c) {
+		return fieldEnd > fieldStart && buffer.get(fieldStart) == c;
+	}
+
+	public int asInt() {
+		return parseInt(fieldStart, fieldEnd, "a whole number");
+	}
+
+	//Parses the field after its first skip characters as an int, e.g. 1 for a "@12" reference.
+	public int asInt(int skip) {
+		return parseInt(fieldStart + skip, fieldEnd, "a whole number");
+	}
+
+	//Parses a decimal such as 120.5, -3 or 1.25E7, the forms Double.toString writes. Up to 18 significant digits
+	//with a small exponent are worked out exactly from the digits; anything else, such as longer numbers or fields
+	//with spaces around them, falls back to Double.parseDouble so it accepts what it always did.
+	public double asDecimal() {
+		int i = fieldStart;
+		boolean negative = i < fieldEnd && buffer.get(i) == '-';
+		if (negative || (i < fieldEnd && buffer.get(i) == '+')) {
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;  //Power of ten the mantissa is multiplied by.
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+		boolean tooLong = false;
+		for (; i < fieldEnd; i++) {
+			byte b = buffer.get(i);
+			if (b == '.' && !seenPoint) {
+				seenPoint = true;
+				continue;
+			}
+			if (b < '0' || b > '9') {
+				break;
+			}
+			seenDigit = true;
+			if (mantissa == 0 && b == '0') {
+				scale -= seenPoint ? 1 : 0;  //Leading zeros don't count towards the digits.
+			} else if (digits < 18) {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				scale -= seenPoint ? 1 : 0;
+			} else {
+				tooLong = true;
+			}
+		}
+		if (!seenDigit) {
+			i = fieldEnd;
+			tooLong = true;  //Leaves NaN, Infinity and the like to Double.parseDouble.
+		}
+		if (i < fieldEnd) {
+			byte b = buffer.get(i);
+			if (b != 'E' && b != 'e') {
+				tooLong = true;
+			} else {
+				try {
+					scale += parseInt(i + 1, fieldEnd, "a decimal number");
+				} catch (FieldException e) {
+					tooLong = true;
+				}
+			}
+		}
+		if (!tooLong && mantissa < (1L << 53) && scale >= -22 && scale <= 22) {
+			double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(asString());
+		} catch (NumberFormatException e) {
+			throw invalid("a decimal number");
+		}
+	}
+
+	//Parses an ISO date such as 2025-11-30 straight to its epoch day, checking the month and day are real.
+	public long asEpochDay() {
+		if (fieldEnd - fieldStart != 10 || buffer.get(fieldStart + 4) != '-' || buffer.get(fieldStart + 7) != '-') {
+			try {
+				return LocalDate.parse(asString()).toEpochDay();  //Years past 9999 and other rare forms.
+			} catch (RuntimeException e) {
+				throw invalid("a date like 2025-11-30");
+			}
+		}
+		int year = digits(fieldStart, 4);
+		int month = digits(fieldStart + 5, 2);
+		int day = digits(fieldStart + 8, 2);
+		boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > monthLength(month, leap)) {
+			throw invalid("a date like 2025-11-30");
+		}
+		//The same sum LocalDate.toEpochDay works out, for years 0 to 9999.
+		long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+		total += (367 * month - 362) / 12 + day - 1;
+		if (month > 2) {
+			total -= leap ? 1 : 2;
+		}
+		return total - DAYS_0000_TO_1970;
+	}
+
+	//True for "true" in any case and false for anything else, the same as Boolean.parseBoolean.
+	public boolean asBoolean() {
+		if (fieldEnd - fieldStart != 4) {
+			return false;
+		}
+		return (buffer.get(fieldStart) | 0x20) == 't' && (buffer.get(fieldStart + 1) | 0x20) == 'r' &&
+				(buffer.get(fieldStart + 2) | 0x20) == 'u' && (buffer.get(fieldStart + 3) | 0x20) == 'e';
+	}
+
+	//The field's PlateCodec code, or PlateCodec.NO_CODE if it isn't three letters A to Z and three digits in either case.
+	public int asPlateCode() {
+		if (fieldEnd - fieldStart != 6) {
+			return PlateCodec.NO_CODE;
+		}
+		int code = 0;
+		for (int i = 0; i < 3; i++) {
+			int letter = (buffer.get(fieldStart + i) | 0x20) - 'a';
+			if (letter < 0 || letter >= 26) {
+				return PlateCodec.NO_CODE;
+			}
+			code = code * 26 + letter;
+		}
+		for (int i = 3; i < 6; i++) {
+			int digit = buffer.get(fieldStart + i) - '0';
+			if (digit < 0 || digit > 9) {
+				return PlateCodec.NO_CODE;
+			}
+			code = code * 10 + digit;
+		}
+		return code;
+	}
+
+	//An error for the current field, e.g. "field 5 (year) should be a whole number but was "20x0"".
+	public FieldException invalid(String expected) {
+		return new FieldException(fieldNumber, "field " + fieldNumber + " (" + fieldName + ") should be " + expected +
+				" but was \"" + asString() + "\"");
+	}
+
+	//Parses the bytes from start up to end as an optionally signed int.
+	private int parseInt(int start, int end, String expected) {
+		int i = start;
+		boolean negative = i < end && buffer.get(i) == '-';
+		if (negative || (i < end && buffer.get(i) == '+')) {
+			i++;
+		}
+		if (i == end) {
+			throw invalid(expected);
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw invalid(expected);
+			}
+			value = value * 10 + digit;
+			if (value > Integer.MAX_VALUE + 1L) {
+				throw invalid(expected + " in int range");
+			}
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw invalid(expected + " in int range");
+		}
+		return (int) value;
+	}
+
+	private int digits(int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw invalid("a date like 2025-11-30");
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static int monthLength(int month, boolean leap) {
+		switch (month) {
+			case 2:
+				return leap ? 29 : 28;
+			case 4:
+			case 6:
+			case 9:
+			case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+
+	private String decode(int start, int end) {
+		int length = end - start;
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + start, length, CHARSET);
+		}
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		buffer.get(start, scratch, 0, length);
+		return new String(scratch, 0, length, CHARSET);
+	}
+}
@@ -0,0 +1,155 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+//A stretch of rental_records.txt that a lazy startup has scanned but not turned into records.
+//The scan keeps the byte offset of every STRIDE-th record, so a page of the history can be read
+//straight from the file, and the whole stretch is only parsed when a query needs all of it.
+public class HistorySegment {
+
+	//Records between two entries of the sparse offset index.
+	private static final int STRIDE = 1024;
+
+	private final File file;
+	private final long start;
+	private final long end;
+	private final long[] offsets;  //offsets[i] is where record i * STRIDE starts.
+	private final int size;
+	private final Function<String, RentalRecord> parser;
+
+	private HistorySegment(File file, long start, long end, long[] offsets, int size, Function<String, RentalRecord> parser) {
+		this.file = file;
+		this.start = start;
+		this.end = end;
+		this.offsets = offsets;
+		this.size = size;
+		this.parser = parser;
+	}
+
+	//Reads the file from the given offset to its end once, passing each non-blank line to the scanner.
+	//The scanner returns whether the line is a record the parser will accept, so the offsets count the same
+	//records the history would hold. Nothing is parsed into records here.
+	public static HistorySegment scan(File file, long start, Predicate<String> scanner, Function<String, RentalRecord> parser) throws IOException {
+		Charset charset = Charset.defaultCharset();  //Same charset the files are written with.
+		long[] offsets = new long[16];
+		int size = 0;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				InputStream in = Channels.newInputStream(channel.position(start))) {
+			long end = channel.size();
+			LineReader line = new LineReader(in);
+			long position = start;
+			int used;
+			while (position < end && (used = line.next()) != -1) {
+				long lineStart = position;
+				position += used;
+				String text = line.text(charset);
+				if (text.trim().isEmpty() || !scanner.test(text)) {
+					continue;
+				}
+				if (size % STRIDE == 0) {
+					if (size / STRIDE == offsets.length) {
+						offsets = Arrays.copyOf(offsets, offsets.length * 2);
+					}
+					offsets[size / STRIDE] = lineStart;
+				}
+				size++;
+			}
+			return new HistorySegment(file, start, end, offsets, size, parser);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	//Parses every record in the segment, in file order.
+	public List<RentalRecord> loadAll() throws IOException {
+		return ParallelFileLoader.load(file, start, end, parser);
+	}
+
+	//Adds up to count records starting at the given record number. Only the lines from the nearest
+	//indexed offset onwards are read.
+	public void read(int fromRow, int count, List<RentalRecord> into) throws IOException {
+		if (fromRow >= size || count <= 0) {
+			return;
+		}
+		int row = fromRow - fromRow % STRIDE;
+		long position = offsets[fromRow / STRIDE];
+		int wanted = Math.min(count, size - fromRow);
+		Charset charset = Charset.defaultCharset();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				InputStream in = Channels.newInputStream(channel.position(position))) {
+			LineReader line = new LineReader(in);
+			int used;
+			//Stops at the end of the segment, since records saved after the scan follow it in the file.
+			while (wanted > 0 && position < end && (used = line.next()) != -1) {
+				position += used;
+				String text = line.text(charset);
+				if (text.trim().isEmpty()) {
+					continue;
+				}
+				RentalRecord record = parser.apply(text);
+				if (record == null) {
+					continue;  //Skipped by the scan as well, so it doesn't count as a row.
+				}
+				if (row++ >= fromRow) {
+					into.add(record);
+					wanted--;
+				}
+			}
+		}
+	}
+
+	//Splits a stream into lines through its own buffer, keeping count of the bytes each line used up.
+	private static class LineReader {
+		private final InputStream in;
+		private final byte[] buffer = new byte[1 << 16];
+		private int position;
+		private int limit;
+		private byte[] line = new byte[256];
+		private int length;
+
+		LineReader(InputStream in) {
+			this.in = in;
+		}
+
+		//Reads the next line, leaving out the newline. Returns the bytes used up, or -1 at the end of the stream.
+		int next() throws IOException {
+			length = 0;
+			int used = 0;
+			while (true) {
+				if (position == limit) {
+					limit = in.read(buffer);
+					position = 0;
+					if (limit <= 0) {
+						limit = 0;
+						return used == 0 ? -1 : used;
+					}
+				}
+				byte b = buffer[position++];
+				used++;
+				if (b == '\n') {
+					return used;
+				}
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = b;
+			}
+		}
+
+		//The current line as text, without a trailing carriage return.
+		String text(Charset charset) {
+			int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+			return new String(line, 0, end, charset);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Outcome of a bulk import: how many rows went in, and which rows were skipped as duplicates or rejected, and why.
+public class ImportReport {
+
+	//One row that was not imported.
+	public static class RowProblem {
+		private final int row;
+		private final String line;
+		private final String message;
+
+		RowProblem(int row, String line, String message) {
+			this.row = row;
+			this.line = line;
+			this.message = message;
+		}
+
+		public int getRow() { return row; }
+
+		public String getLine() { return line; }
+
+		public String getMessage() { return message; }
+
+		@Override
+		public String toString() {
+			return "Row " + row + ": " + message + " (" + line + ")";
+		}
+	}
+
+	private int imported;
+	private final List<RowProblem> duplicates = new ArrayList<>();
+	private final List<RowProblem> errors = new ArrayList<>();
+
+	void imported(int count) {
+		imported += count;
+	}
+
+	void duplicate(int row, String line, String message) {
+		duplicates.add(new RowProblem(row, line, message));
+	}
+
+	void error(int row, String line, String message) {
+		errors.add(new RowProblem(row, line, message));
+	}
+
+	public int getImported() { return imported; }
+
+	public List<RowProblem> getDuplicates() { return Collections.unmodifiableList(duplicates); }
+
+	public List<RowProblem> getErrors() { return Collections.unmodifiableList(errors); }
+
+	public boolean hasProblems() {
+		return !duplicates.isEmpty() || !errors.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return imported + " imported, " + duplicates.size() + " duplicates, " + errors.size() + " errors";
+	}
+}
@@ -0,0 +1,137 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//Keeps everything saved in memory, in the order it was saved, so tests and benchmarks don't pay for disk I/O.
+//A new RentalSystem over the same store loads it all back, much as a restart would load the files, but gets the
+//same Vehicle and Customer objects the last one saved, so only one system should use the store at a time.
+public class InMemoryRentalStore implements RentalStore {
+
+	//A vehicle's status as of a checkpoint.
+	private static class Status {
+		final Vehicle vehicle;
+		final Vehicle.VehicleStatus status;
+
+		Status(Vehicle vehicle, Vehicle.VehicleStatus status) {
+			this.vehicle = vehicle;
+			this.status = status;
+		}
+	}
+
+	//Vehicles, Customers, RentalRecords, Reservations, released reservation ids (Long) and checkpoint Statuses.
+	private final List<Object> saved = new ArrayList<>();  //Guarded by this.
+
+	@Override
+	public synchronized void saveVehicle(Vehicle vehicle) {
+		saved.add(vehicle);
+	}
+
+	@Override
+	public synchronized void saveCustomer(Customer customer) {
+		saved.add(customer);
+	}
+
+	@Override
+	public synchronized void saveRecord(RentalRecord record) {
+		saved.add(record);
+	}
+
+	@Override
+	public synchronized void saveReservation(Reservation reservation) {
+		saved.add(reservation);
+	}
+
+	@Override
+	public synchronized void saveRelease(long reservationId) {
+		saved.add(reservationId);
+	}
+
+	@Override
+	public synchronized void saveVehicles(List<Vehicle> vehicles) {
+		saved.addAll(vehicles);
+	}
+
+	@Override
+	public synchronized void saveCustomers(List<Customer> customers) {
+		saved.addAll(customers);
+	}
+
+	@Override
+	public synchronized void saveRecords(List<RentalRecord> records) {
+		saved.addAll(records);
+	}
+
+	@Override
+	public synchronized void checkpoint(List<Vehicle> fleet) {
+		for (Vehicle vehicle : fleet) {
+			saved.add(new Status(vehicle, vehicle.getStatus()));
+		}
+	}
+
+	//Drops reservations that have been released and statuses older than the new checkpoint.
+	@Override
+	public synchronized void compact(List<Vehicle> fleet) {
+		Set<Long> released = new HashSet<>();
+		for (Object item : saved) {
+			if (item instanceof Long) {
+				released.add((Long) item);
+			}
+		}
+		saved.removeIf(item -> item instanceof Long || item instanceof Status
+				|| (item instanceof Reservation && released.contains(((Reservation) item).getId())));
+		checkpoint(fleet);
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public synchronized void loadVehicles(RentalStore.Loader loader) {
+		for (Object item : saved) {
+			if (item instanceof Vehicle) {
+				loader.addVehicle((Vehicle) item);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void loadCustomers(RentalStore.Loader loader) {
+		for (Object item : saved) {
+			if (item instanceof Customer) {
+				loader.addCustomer((Customer) item);
+			}
+		}
+	}
+
+	//Records and checkpointed statuses are replayed together, in the order they were saved.
+	@Override
+	public synchronized void loadRecords(RentalStore.Loader loader) {
+		for (Object item : saved) {
+			if (item instanceof RentalRecord) {
+				RentalRecord record = (RentalRecord) item;
+				loader.addRecord(record.getVehicle(), record.getCustomer(), record.getRecordDate().toEpochDay(),
+						record.getTotalAmount(), record.getRecordType());
+			} else if (item instanceof Status) {
+				Status status = (Status) item;
+				status.vehicle.setStatus(status.status);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void loadReservations(RentalStore.Loader loader) {
+		for (Object item : saved) {
+			if (item instanceof Reservation) {
+				loader.addReservation((Reservation) item);
+			} else if (item instanceof Long) {
+				loader.releaseReservation((Long) item);
+			}
+		}
+	}
+}
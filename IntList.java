@@ -0,0 +1,65 @@
+import java.util.Arrays;
+
+//Growable list of ints backed by a plain array, for row numbers and ids that would otherwise be boxed.
+public class IntList {
+	private int[] values;
+	private int size;
+
+	public IntList() {
+		this(8);
+	}
+
+	public IntList(int capacity) {
+		values = new int[Math.max(1, capacity)];
+	}
+
+	public void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	//Adds a value after the last one not greater than it. A list filled in ascending order stays sorted when
+	//values arrive slightly out of order, and costs the same as add when the value is the largest so far.
+	public void addInOrder(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		int at = size;
+		while (at > 0 && values[at - 1] > value) {
+			at--;
+		}
+		System.arraycopy(values, at, values, at + 1, size - at);
+		values[at] = value;
+		size++;
+	}
+
+	//Puts the values of another list in front of this list's.
+	public void addAllFirst(IntList front) {
+		int[] joined = new int[Math.max(values.length, size + front.size)];
+		System.arraycopy(front.values, 0, joined, 0, front.size);
+		System.arraycopy(values, 0, joined, front.size, size);
+		values = joined;
+		size += front.size;
+	}
+
+	public int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		}
+		return values[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+
+//Hash map from int keys to objects that stores the keys in a plain int array, so lookups
+//don't box the key or follow an entry object. Uses open addressing with linear probing.
+//Reads are optimistic and normally take no lock; writes take a write lock.
+//Null values are not allowed, since a null value marks an empty slot.
+public class IntObjectMap<V> {
+
+	//Both arrays live in one object so a reader always sees a matching pair, even mid-resize.
+	private static final class Table {
+		final int[] keys;
+		final Object[] values;
+
+		Table(int capacity) {
+			keys = new int[capacity];
+			values = new Object[capacity];
+		}
+	}
+
+	private final StampedLock lock = new StampedLock();
+	private Table table;
+	private int size;
+
+	public IntObjectMap() {
+		this(16);
+	}
+
+	public IntObjectMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		table = new Table(capacity);
+	}
+
+	public V get(int key) {
+		long stamp = lock.tryOptimisticRead();
+		V value = find(table, key);
+		if (!lock.validate(stamp)) {
+			//A write happened during the read, so it is repeated under the read lock.
+			stamp = lock.readLock();
+			try {
+				value = find(table, key);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return value;
+	}
+
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	//Stores the value and returns the one it replaced, or null.
+	public V put(int key, V value) {
+		long stamp = lock.writeLock();
+		try {
+			return insert(key, value, true);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	//Stores the value only if the key is free. Returns the existing value, or null if the value was stored.
+	public V putIfAbsent(int key, V value) {
+		long stamp = lock.writeLock();
+		try {
+			return insert(key, value, false);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	//Returns the value for the key, creating and storing it first if there isn't one.
+	public V computeIfAbsent(int key, IntFunction<? extends V> create) {
+		V value = get(key);
+		if (value != null) {
+			return value;
+		}
+		long stamp = lock.writeLock();
+		try {
+			value = find(table, key);
+			if (value == null) {
+				value = create.apply(key);
+				insert(key, value, false);
+			}
+			return value;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	//Returns a copy of the values, in no particular order.
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		long stamp = lock.readLock();
+		try {
+			List<V> result = new ArrayList<>(size);
+			for (Object value : table.values) {
+				if (value != null) {
+					result.add((V) value);
+				}
+			}
+			return result;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	//Returns a copy of the keys, in no particular order.
+	public int[] keys() {
+		long stamp = lock.readLock();
+		try {
+			int[] result = new int[size];
+			int count = 0;
+			Table current = table;
+			for (int i = 0; i < current.values.length; i++) {
+				if (current.values[i] != null) {
+					result[count++] = current.keys[i];
+				}
+			}
+			return result;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	//Probes for the key. Stops after one pass over the table so a read racing a write can never spin forever.
+	@SuppressWarnings("unchecked")
+	private static <V> V find(Table table, int key) {
+		int[] keys = table.keys;
+		Object[] values = table.values;
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		for (int probes = 0; probes < keys.length; probes++) {
+			Object value = values[slot];
+			if (value == null) {
+				return null;
+			}
+			if (keys[slot] == key) {
+				return (V) value;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	//Must be called with the write lock held.
+	@SuppressWarnings("unchecked")
+	private V insert(int key, V value, boolean replace) {
+		if (value == null) {
+			throw new NullPointerException("IntObjectMap does not hold null values");
+		}
+		if ((size + 1) * 2 > table.keys.length) {
+			resize();
+		}
+		int[] keys = table.keys;
+		Object[] values = table.values;
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (values[slot] != null) {
+			if (keys[slot] == key) {
+				V old = (V) values[slot];
+				if (replace) {
+					values[slot] = value;
+				}
+				return old;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;  //The key goes in before the value that marks the slot as used.
+		values[slot] = value;
+		size++;
+		return null;
+	}
+
+	//Doubles the table and publishes it in one step.
+	private void resize() {
+		Table old = table;
+		Table bigger = new Table(old.keys.length * 2);
+		int mask = bigger.keys.length - 1;
+		for (int i = 0; i < old.keys.length; i++) {
+			if (old.values[i] != null) {
+				int slot = hash(old.keys[i]) & mask;
+				while (bigger.values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				bigger.keys[slot] = old.keys[i];
+				bigger.values[slot] = old.values[i];
+			}
+		}
+		table = bigger;
+	}
+
+	//Spreads nearby keys such as consecutive plate codes or customer ids across the table.
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+//Gives every distinct make and model one small int code and one shared String, so a fleet of thousands of
+//vehicles holds each capitalized value once instead of once per vehicle. Vehicles keep the codes, which also
+//makes grouping by make or model a matter of counting ints. Codes are only handed out, never taken back.
+public class MakeModelDictionary {
+
+	public static final int NO_CODE = -1;
+
+	private static final MakeModelDictionary SHARED = new MakeModelDictionary();
+
+	//Values exactly as they were passed in, so the same spelling is only capitalized the first time it is seen.
+	private final Map<String, Integer> codesByInput = new ConcurrentHashMap<>();
+	private final Map<String, Integer> codesByValue = new HashMap<>();  //Guarded by this.
+	private volatile String[] values = new String[64];
+	private int size;  //Guarded by this.
+
+	//The dictionary every Vehicle uses.
+	public static MakeModelDictionary shared() {
+		return SHARED;
+	}
+
+	//Returns the code for the capitalized value, adding it if it is new. Null and empty values have NO_CODE.
+	public int encode(String input) {
+		if (input == null || input.isEmpty()) {
+			return NO_CODE;
+		}
+		Integer code = codesByInput.get(input);
+		if (code != null) {
+			return code;
+		}
+		synchronized (this) {
+			String value = capitalize(input);
+			code = codesByValue.get(value);
+			if (code == null) {
+				code = size;
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = value;
+				codesByValue.put(value, code);
+			}
+		}
+		codesByInput.put(input, code);
+		return code;
+	}
+
+	//The value for a code, or null for NO_CODE.
+	public String value(int code) {
+		return code == NO_CODE ? null : values[code];
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	//Upper-cases the first letter and lower-cases the rest, e.g. "toyota" and "TOYOTA" both become "Toyota".
+	static String capitalize(String input) {
+		return input.substring(0, 1).toUpperCase() + input.substring(1).toLowerCase();
+	}
+
+	//The codes one vehicles file uses. The file has its own numbering, written as "#DICT,code,value" lines,
+	//and vehicle lines refer to a make or model as "@code". Each definition is written before the first line
+	//that uses it, and files without any still load since plain values are read as they are.
+	public static class FileCodes {
+		private final MakeModelDictionary dictionary;
+		private volatile String[] valuesByFileCode = new String[64];  //Read without the lock while loading in parallel.
+		private int[] fileCodesByCode = new int[64];
+		private int nextFileCode;
+
+		public FileCodes(MakeModelDictionary dictionary) {
+			this.dictionary = dictionary;
+			Arrays.fill(fileCodesByCode, NO_CODE);
+		}
+
+		//Records a "#DICT,code,value" line read from the file.
+		public synchronized void define(int fileCode, String value) {
+			if (fileCode < 0) {
+				throw new IllegalArgumentException("Negative make or model code " + fileCode);
+			}
+			String[] values = valuesByFileCode;
+			if (fileCode >= values.length) {
+				values = Arrays.copyOf(values, Math.max(fileCode + 1, values.length * 2));
+			}
+			values[fileCode] = value;
+			valuesByFileCode = values;
+			mapCode(dictionary.encode(value), fileCode);
+			nextFileCode = Math.max(nextFileCode, fileCode + 1);
+		}
+
+		//Returns the value of a "@code" reference, or null if the code hasn't been defined yet. Doesn't lock, so a
+		//definition made on another thread a moment ago may not be seen yet; the caller tries again after the
+		//load's threads have finished.
+		public String resolve(int fileCode) {
+			String[] values = valuesByFileCode;
+			return fileCode >= 0 && fileCode < values.length ? values[fileCode] : null;
+		}
+
+		//Returns the "@code" field for a dictionary code. A code new to the file gets the next file code and its
+		//definition is handed to the writer first, under this lock, so no other line can use it before it is written.
+		public synchronized String reference(int code, Consumer<String> definitionWriter) {
+			if (code == NO_CODE) {
+				return "null";  //What a missing make or model was always saved as.
+			}
+			if (code < fileCodesByCode.length && fileCodesByCode[code] != NO_CODE) {
+				return "@" + fileCodesByCode[code];
+			}
+			int fileCode = nextFileCode++;
+			String value = dictionary.value(code);
+			if (fileCode >= valuesByFileCode.length) {
+				valuesByFileCode = Arrays.copyOf(valuesByFileCode, valuesByFileCode.length * 2);
+			}
+			valuesByFileCode[fileCode] = value;
+			mapCode(code, fileCode);
+			definitionWriter.accept("#DICT," + fileCode + "," + value);
+			return "@" + fileCode;
+		}
+
+		private void mapCode(int code, int fileCode) {
+			if (code >= fileCodesByCode.length) {
+				int length = fileCodesByCode.length;
+				fileCodesByCode = Arrays.copyOf(fileCodesByCode, Math.max(code + 1, length * 2));
+				Arrays.fill(fileCodesByCode, length, fileCodesByCode.length, NO_CODE);
+			}
+			fileCodesByCode[code] = fileCode;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Case-insensitive search index over customer names.
+//Substring searches go through a trigram index: the search's rarest trigram gives a short list of candidate
+//customers, and only those names are checked. Prefix searches use the names kept in sorted order.
+//Searches shorter than a trigram check every name, which is still one check per customer, not per record.
+public class NameIndex {
+
+	private final IntObjectMap<String> names = new IntObjectMap<>();  //Lower-cased name of each customer id.
+	private final Map<Long, IntList> idsByTrigram = new HashMap<>();
+	private final NavigableMap<String, IntList> idsByName = new TreeMap<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	//Adds a customer. A customer id that is already indexed is left as it is.
+	public void add(Customer customer) {
+		String name = normalize(customer.getCustomerName());
+		int id = customer.getCustomerId();
+		lock.writeLock().lock();
+		try {
+			if (names.putIfAbsent(id, name) != null) {
+				return;
+			}
+			idsByName.computeIfAbsent(name, key -> new IntList()).add(id);
+			Set<Long> seen = new HashSet<>();
+			for (int i = 0; i + 3 <= name.length(); i++) {
+				long trigram = trigram(name, i);
+				if (seen.add(trigram)) {
+					idsByTrigram.computeIfAbsent(trigram, key -> new IntList()).add(id);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean contains(int customerId) {
+		lock.readLock().lock();
+		try {
+			return names.containsKey(customerId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	//Ids of the customers whose name contains the text, ignoring case.
+	public List<Integer> findBySubstring(String text) {
+		String search = normalize(text);
+		List<Integer> result = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			if (search.length() < 3) {
+				for (int id : names.keys()) {
+					if (names.get(id).contains(search)) {
+						result.add(id);
+					}
+				}
+				return result;
+			}
+			//Every match contains all of the search's trigrams, so the shortest list holds every match.
+			IntList candidates = null;
+			for (int i = 0; i + 3 <= search.length(); i++) {
+				IntList ids = idsByTrigram.get(trigram(search, i));
+				if (ids == null) {
+					return result;  //No name has this trigram, so none can match.
+				}
+				if (candidates == null || ids.size() < candidates.size()) {
+					candidates = ids;
+				}
+			}
+			for (int i = 0; i < candidates.size(); i++) {
+				int id = candidates.get(i);
+				if (names.get(id).contains(search)) {
+					result.add(id);
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	//Ids of the customers whose name starts with the text, ignoring case, in name order.
+	public List<Integer> findByPrefix(String text) {
+		String prefix = normalize(text);
+		List<Integer> result = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (IntList ids : idsByName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+				for (int i = 0; i < ids.size(); i++) {
+					result.add(ids.get(i));
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return names.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static String normalize(String name) {
+		return name == null ? "" : name.toLowerCase(Locale.ROOT);
+	}
+
+	//Packs three characters into one key.
+	private static long trigram(String text, int start) {
+		return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+	}
+}
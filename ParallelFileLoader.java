@@ -0,0 +1,264 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//Loads a line-based data file by memory-mapping it and cutting it into chunks that end on a newline.
+//Each chunk is parsed on the fork-join pool and the results are handed back in file order,
+//so callers can still replay them one after another.
+public class ParallelFileLoader {
+
+	//Files smaller than this are parsed on the calling thread, since splitting them costs more than it saves.
+	private static final long MIN_CHUNK_BYTES = 1 << 20;
+
+	//Upper bound on a chunk so each mapping and its line buffer stay small.
+	private static final long MAX_CHUNK_BYTES = 64L << 20;
+
+	//Eight newline bytes, for finding a newline in a long read eight bytes at a time.
+	private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+	private ParallelFileLoader() {
+	}
+
+	//Receives the lines of one chunk in turn, each with the result being collected for that chunk.
+	public interface LineHandler<A> {
+		void handle(A chunk, CsvTokenizer line);
+	}
+
+	//One chunk's result, its line count and the lines that failed, by their index within the chunk.
+	private static class ChunkResult<A> {
+		final A result;
+		int lines;
+		final List<Integer> errorLines = new ArrayList<>();
+		final List<String> errorMessages = new ArrayList<>();
+
+		ChunkResult(A result) {
+			this.result = result;
+		}
+	}
+
+	//Parses every non-blank line from the given byte offset to the end of the file.
+	//Lines the parser turns into null are left out of the result.
+	public static <T> List<T> load(File file, long offset, Function<String, T> parser) throws IOException {
+		return load(file, offset, Long.MAX_VALUE, parser);
+	}
+
+	//Parses the non-blank lines from the byte offset up to the limit offset, which should fall at the end of a line.
+	public static <T> List<T> load(File file, long offset, long limit, Function<String, T> parser) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = Math.min(channel.size(), limit);
+			if (offset >= size) {
+				return new ArrayList<>();
+			}
+
+			List<Long> bounds = split(channel, offset, size);
+			if (bounds.size() == 2) {
+				return parseChunk(channel, bounds.get(0), bounds.get(1), parser);  //Only one chunk, so no need for the pool.
+			}
+
+			//Starts one task per chunk, then collects them in order.
+			List<ForkJoinTask<List<T>>> tasks = new ArrayList<>();
+			for (int i = 0; i + 1 < bounds.size(); i++) {
+				long start = bounds.get(i);
+				long end = bounds.get(i + 1);
+				tasks.add(ForkJoinPool.commonPool().submit(() -> parseChunk(channel, start, end, parser)));
+			}
+			List<T> result = new ArrayList<>();
+			for (ForkJoinTask<List<T>> task : tasks) {
+				result.addAll(task.join());
+			}
+			return result;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();  //Hands read errors from the workers back as the IOException they started as.
+		}
+	}
+
+	//Like load, but hands each non-blank line to the handler as a tokenizer over the mapped bytes, so no String is made
+	//unless the handler asks for one. Each chunk collects into its own result from newChunk, and the results come back
+	//in file order. A line the handler throws a FieldException for is skipped and described in errors as
+	//"line N: ...", with N counted from the offset.
+	public static <A> List<A> loadLines(File file, long offset, Supplier<A> newChunk, LineHandler<A> handler,
+			List<String> errors) throws IOException {
+		return loadLines(file, offset, Long.MAX_VALUE, newChunk, handler, errors);
+	}
+
+	//Same, stopping at the limit offset, which should fall at the end of a line.
+	public static <A> List<A> loadLines(File file, long offset, long limit, Supplier<A> newChunk, LineHandler<A> handler,
+			List<String> errors) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = Math.min(channel.size(), limit);
+			List<ChunkResult<A>> chunks = new ArrayList<>();
+			if (offset < size) {
+				List<Long> bounds = split(channel, offset, size);
+				List<ForkJoinTask<ChunkResult<A>>> tasks = new ArrayList<>();
+				for (int i = 0; i + 1 < bounds.size(); i++) {
+					long start = bounds.get(i);
+					long end = bounds.get(i + 1);
+					if (bounds.size() == 2) {
+						chunks.add(handleChunk(channel, start, end, newChunk.get(), handler));  //One chunk, so no need for the pool.
+					} else {
+						tasks.add(ForkJoinPool.commonPool().submit(() -> handleChunk(channel, start, end, newChunk.get(), handler)));
+					}
+				}
+				for (ForkJoinTask<ChunkResult<A>> task : tasks) {
+					chunks.add(task.join());
+				}
+			}
+			List<A> results = new ArrayList<>();
+			int firstLine = 1;
+			for (ChunkResult<A> chunk : chunks) {
+				results.add(chunk.result);
+				for (int i = 0; i < chunk.errorLines.size(); i++) {
+					errors.add("line " + (firstLine + chunk.errorLines.get(i)) + ": " + chunk.errorMessages.get(i));
+				}
+				firstLine += chunk.lines;
+			}
+			return results;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	//Maps one chunk and passes its lines to the handler, finding each newline eight bytes at a time.
+	private static <A> ChunkResult<A> handleChunk(FileChannel channel, long start, long end, A result, LineHandler<A> handler) {
+		ChunkResult<A> chunk = new ChunkResult<>(result);
+		try {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			ByteBuffer bytes = mapped.order(ByteOrder.LITTLE_ENDIAN);  //So the first byte in memory is the lowest in a long.
+			int length = bytes.limit();
+			CsvTokenizer line = new CsvTokenizer();
+			int lineStart = 0;
+			while (lineStart < length) {
+				int lineEnd = indexOfNewline(bytes, lineStart, length);
+				line.reset(bytes, lineStart, lineEnd);
+				if (!line.isBlank()) {
+					try {
+						handler.handle(result, line);
+					} catch (CsvTokenizer.FieldException e) {
+						chunk.errorLines.add(chunk.lines);
+						chunk.errorMessages.add(e.getMessage());
+					}
+				}
+				chunk.lines++;
+				lineStart = lineEnd + 1;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return chunk;
+	}
+
+	//Returns the index of the first newline from the given index, or end if there is none. Each long is checked
+	//for a newline byte with the usual has-zero-byte test on the long XORed with eight newlines.
+	private static int indexOfNewline(ByteBuffer bytes, int from, int end) {
+		int i = from;
+		for (; i + 8 <= end; i += 8) {
+			long word = bytes.getLong(i) ^ NEWLINES;
+			long found = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);  //The lowest flagged byte is always a real match.
+			}
+		}
+		for (; i < end; i++) {
+			if (bytes.get(i) == '\n') {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	//Works out the chunk boundaries. Each boundary after the first is moved forward to just past a newline.
+	private static List<Long> split(FileChannel channel, long offset, long size) throws IOException {
+		int workers = ForkJoinPool.commonPool().getParallelism();
+		long target = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, (size - offset) / (workers * 4L)));
+
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(offset);
+		long position = offset;
+		while (size - position > target) {
+			long next = nextLineStart(channel, position + target, size);
+			if (next >= size) {
+				break;
+			}
+			bounds.add(next);
+			position = next;
+		}
+		bounds.add(size);
+		return bounds;
+	}
+
+	//Returns the position just after the first newline at or after the given position.
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	//Maps one chunk and parses it line by line.
+	private static <T> List<T> parseChunk(FileChannel channel, long start, long end, Function<String, T> parser) {
+		List<T> result = new ArrayList<>();
+		Charset charset = Charset.defaultCharset();  //Same charset the files are written with.
+		try {
+			MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			byte[] line = new byte[256];
+			int length = 0;
+			while (chunk.hasRemaining()) {
+				byte b = chunk.get();
+				if (b == '\n') {
+					addLine(result, parser, new String(line, 0, trimEnd(line, length), charset));
+					length = 0;
+					continue;
+				}
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = b;
+			}
+			if (length > 0) {
+				addLine(result, parser, new String(line, 0, trimEnd(line, length), charset));  //Last line without a newline.
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result;
+	}
+
+	//Drops a trailing carriage return so files written on Windows load the same way.
+	private static int trimEnd(byte[] line, int length) {
+		return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+	}
+
+	private static <T> void addLine(List<T> result, Function<String, T> parser, String line) {
+		if (line.trim().isEmpty()) {
+			return;  //Skips empty lines.
+		}
+		T parsed = parser.apply(line);
+		if (parsed != null) {
+			result.add(parsed);
+		}
+	}
+}
@@ -0,0 +1,250 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+//Hands lines for the AppendLogs to one background writer thread through a bounded queue.
+//How long a caller waits depends on the durability mode:
+//  SYNC  - no queue; the caller writes the line itself, as before.
+//  GROUP - the caller waits until its line is on disk. The writer syncs everything queued so far with one fsync.
+//  ASYNC - the caller only waits for room in the queue. Lines are written shortly after, and drained on close or shutdown.
+//A full queue makes callers wait, so a slow disk slows the counters down instead of growing the queue forever.
+public class PersistencePipeline implements Closeable {
+
+	public enum DurabilityMode { SYNC, GROUP, ASYNC }
+
+	//Most lines the writer takes off the queue for one write and flush.
+	private static final int MAX_BATCH = 4096;
+
+	//One queued line, or a marker with no log that just waits for the lines queued before it.
+	private static class Entry {
+		final AppendLog log;
+		final String line;
+		final CompletableFuture<Void> done;  //Null when nobody waits for this entry.
+		final boolean stop;
+		Thread takenBy;  //For a stop marker, the writer that took it. Set before done completes.
+
+		Entry(AppendLog log, String line, CompletableFuture<Void> done, boolean stop) {
+			this.log = log;
+			this.line = line;
+			this.done = done;
+			this.stop = stop;
+		}
+	}
+
+	private final DurabilityMode mode;
+	private final BlockingQueue<Entry> queue;
+
+	private Thread writer;
+	private Thread shutdownHook;
+
+	public PersistencePipeline(DurabilityMode mode, int capacity) {
+		this.mode = mode;
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+	}
+
+	public DurabilityMode getMode() {
+		return mode;
+	}
+
+	//The mode named by the rental.durability property. A name that isn't a mode is reported and SYNC used instead,
+	//so a typo doesn't stop the system from starting.
+	public static DurabilityMode configuredMode() {
+		String name = System.getProperty("rental.durability", "SYNC");
+		try {
+			return DurabilityMode.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			System.out.println("Error: Unknown rental.durability " + name + ", expected SYNC, GROUP or ASYNC. Using SYNC.");
+			return DurabilityMode.SYNC;
+		}
+	}
+
+	//Writes one line to the log, or queues it, depending on the mode.
+	public void submit(AppendLog log, String line) throws IOException {
+		if (mode == DurabilityMode.SYNC) {
+			log.append(line);
+			return;
+		}
+		Entry entry = new Entry(log, line, mode == DurabilityMode.GROUP ? new CompletableFuture<>() : null, false);
+		enqueue(entry);
+		if (entry.done != null) {
+			await(entry.done);
+		}
+	}
+
+	//Waits until every line queued so far has been written and flushed.
+	public void drain() throws IOException {
+		if (mode == DurabilityMode.SYNC || isIdle()) {
+			return;
+		}
+		Entry marker = new Entry(null, null, new CompletableFuture<>(), false);
+		enqueue(marker);
+		await(marker.done);
+	}
+
+	//Drains the queue and stops the writer thread. A later submit starts it again.
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (isIdle()) {
+				return;
+			}
+			removeShutdownHook();
+		}
+		Entry marker = new Entry(null, null, new CompletableFuture<>(), true);
+		enqueue(marker);
+		await(marker.done);
+		//Joins the writer that took the marker, not whichever writer is running now: once that one has left,
+		//a saver waiting for room may already have started a new one, which no marker will stop.
+		try {
+			marker.takenBy.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//True when there is no writer and nothing queued for one.
+	private synchronized boolean isIdle() {
+		return writer == null && queue.isEmpty();
+	}
+
+	//Queues an entry and makes sure a writer is running to take it.
+	//The put happens outside this lock, since it blocks while the queue is full and the writer takes this lock
+	//before it leaves. The writer only leaves with the queue empty, so an entry put after that finds no writer
+	//here and starts a new one.
+	private void enqueue(Entry entry) throws IOException {
+		try {
+			queue.put(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for room in the persistence queue");
+		}
+		startWriter();
+	}
+
+	//Starts the writer, and the shutdown hook that drains it, if something is queued and no writer is running.
+	private synchronized void startWriter() {
+		if (writer == null && !queue.isEmpty()) {
+			writer = new Thread(this::writeLoop, "persistence-writer");
+			writer.setDaemon(true);
+			writer.start();
+			if (shutdownHook == null) {
+				Thread hook = new Thread(this::drainQuietly, "persistence-drain");
+				try {
+					Runtime.getRuntime().addShutdownHook(hook);
+					shutdownHook = hook;
+				} catch (IllegalStateException e) {
+					//Already shutting down. Whoever queued this waits on it or closes the pipeline.
+				}
+			}
+		}
+	}
+
+	private void removeShutdownHook() {
+		if (shutdownHook == null) {
+			return;
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			//Already shutting down, in which case the hook is the one draining the queue.
+		}
+		shutdownHook = null;
+	}
+
+	private static void await(CompletableFuture<Void> done) throws IOException {
+		try {
+			done.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the persistence queue");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+		}
+	}
+
+	private void drainQuietly() {
+		try {
+			drain();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	//Takes whatever has queued up, writes it, then flushes (or syncs, in GROUP mode) each log it touched once.
+	private void writeLoop() {
+		List<Entry> batch = new ArrayList<>();
+		List<AppendLog> touched = new ArrayList<>();
+		boolean stop = false;  //A stop marker has been seen; the writer leaves once the queue is empty.
+		while (true) {
+			batch.clear();
+			touched.clear();
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				continue;  //Only close() stops the writer, so nothing queued is ever left behind.
+			}
+			queue.drainTo(batch, MAX_BATCH - 1);
+
+			IOException failure = null;
+			for (Entry entry : batch) {
+				if (entry.stop) {
+					stop = true;
+					entry.takenBy = Thread.currentThread();
+				}
+				if (entry.log == null) {
+					continue;
+				}
+				try {
+					entry.log.append(entry.line);
+					if (!touched.contains(entry.log)) {
+						touched.add(entry.log);  //Only three logs, so a list is enough.
+					}
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+			for (AppendLog log : touched) {
+				try {
+					if (mode == DurabilityMode.GROUP) {
+						log.sync();
+					} else {
+						log.flush();
+					}
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+
+			if (failure != null && mode == DurabilityMode.ASYNC) {
+				failure.printStackTrace();  //Nobody is waiting on these lines to hear about it.
+			}
+			for (Entry entry : batch) {
+				if (entry.done == null) {
+					continue;
+				}
+				if (failure != null && entry.log != null) {
+					entry.done.completeExceptionally(failure);
+				} else {
+					entry.done.complete(null);
+				}
+			}
+			if (stop) {
+				synchronized (this) {
+					if (queue.isEmpty()) {
+						writer = null;
+						return;
+					}
+				}
+				//Something was queued behind the stop marker, so it is written before the writer leaves.
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+//Packs a license plate of three letters and three digits into one int and back again.
+//Letters count in base 26 and the digits fill the last three decimal places, so AAA000 is 0,
+//AAA001 is 1, AAB000 is 1000 and ZZZ999 is 17,575,999. Plates that Vehicle accepts but that use
+//letters or digits outside A-Z and 0-9 have no code and are kept as text instead.
+public final class PlateCodec {
+
+	public static final int NO_CODE = -1;
+
+	//Number of distinct codes, from 0 up to but not including this value.
+	public static final int CODES = 26 * 26 * 26 * 1000;
+
+	private PlateCodec() {
+	}
+
+	//Returns the code for a plate in either case, or NO_CODE if the plate can't be packed.
+	public static int encode(CharSequence plate) {
+		if (plate == null || plate.length() != 6) {
+			return NO_CODE;
+		}
+		int code = 0;
+		for (int i = 0; i < 3; i++) {
+			int letter = letterValue(plate.charAt(i));
+			if (letter < 0) {
+				return NO_CODE;
+			}
+			code = code * 26 + letter;
+		}
+		for (int i = 3; i < 6; i++) {
+			char c = plate.charAt(i);
+			if (c < '0' || c > '9') {
+				return NO_CODE;
+			}
+			code = code * 10 + (c - '0');
+		}
+		return code;
+	}
+
+	//Turns a code back into the upper case plate.
+	public static String decode(int code) {
+		if (code < 0 || code >= CODES) {
+			throw new IllegalArgumentException("Invalid plate code: " + code);
+		}
+		char[] plate = new char[6];
+		int digits = code % 1000;
+		int letters = code / 1000;
+		plate[5] = (char) ('0' + digits % 10);
+		plate[4] = (char) ('0' + (digits / 10) % 10);
+		plate[3] = (char) ('0' + digits / 100);
+		plate[2] = (char) ('A' + letters % 26);
+		plate[1] = (char) ('A' + (letters / 26) % 26);
+		plate[0] = (char) ('A' + letters / 676);
+		return new String(plate);
+	}
+
+	private static int letterValue(char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return c - 'A';
+		}
+		if (c >= 'a' && c <= 'z') {
+			return c - 'a';
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,89 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+//Map keyed by license plate. Plates are looked up by their PlateCodec code in an IntObjectMap,
+//so a lookup neither hashes nor compares strings. The rare plate without a code is kept in an
+//ordinary map under its upper case text. Lookups ignore case like the rest of the system.
+public class PlateMap<V> {
+
+	private final IntObjectMap<V> byCode;
+	private final Map<String, V> byText = new ConcurrentHashMap<>();
+
+	public PlateMap() {
+		byCode = new IntObjectMap<>();
+	}
+
+	public PlateMap(int expectedSize) {
+		byCode = new IntObjectMap<>(expectedSize);
+	}
+
+	public V get(String plate) {
+		int code = codeOf(plate);
+		if (code != PlateCodec.NO_CODE) {
+			return byCode.get(code);
+		}
+		return plate == null ? null : byText.get(textKey(plate));
+	}
+
+	//Looks up a vehicle's own plate, using the code it already carries.
+	public V get(Vehicle vehicle) {
+		int code = vehicle.getPlateCode();
+		if (code != PlateCodec.NO_CODE) {
+			return byCode.get(code);
+		}
+		String plate = vehicle.getLicensePlate();
+		return plate == null ? null : byText.get(textKey(plate));
+	}
+
+	public V getByCode(int code) {
+		return byCode.get(code);
+	}
+
+	//Stores the value only if the plate is free. Returns the existing value, or null if the value was stored.
+	public V putIfAbsent(String plate, V value) {
+		int code = codeOf(plate);
+		if (code != PlateCodec.NO_CODE) {
+			return byCode.putIfAbsent(code, value);
+		}
+		return byText.putIfAbsent(textKey(plate), value);
+	}
+
+	//Stores the value under the vehicle's own plate only if the plate is free.
+	public V putIfAbsent(Vehicle vehicle, V value) {
+		int code = vehicle.getPlateCode();
+		if (code != PlateCodec.NO_CODE) {
+			return byCode.putIfAbsent(code, value);
+		}
+		return byText.putIfAbsent(textKey(vehicle.getLicensePlate()), value);
+	}
+
+	//Returns the value for the vehicle's plate, creating and storing it first if there isn't one.
+	public V computeIfAbsent(Vehicle vehicle, Supplier<? extends V> create) {
+		int code = vehicle.getPlateCode();
+		if (code != PlateCodec.NO_CODE) {
+			return byCode.computeIfAbsent(code, key -> create.get());
+		}
+		return byText.computeIfAbsent(textKey(vehicle.getLicensePlate()), key -> create.get());
+	}
+
+	public int size() {
+		return byCode.size() + byText.size();
+	}
+
+	//Returns a copy of the values, in no particular order.
+	public List<V> values() {
+		List<V> values = byCode.values();
+		values.addAll(byText.values());
+		return values;
+	}
+
+	private static int codeOf(String plate) {
+		return PlateCodec.encode(plate);
+	}
+
+	private static String textKey(String plate) {
+		return plate.toUpperCase();
+	}
+}
@@ -0,0 +1,182 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Rental records stored column by column instead of one object per record. Each field lives in
+//its own primitive array, grown a chunk at a time, so a history of millions of records is a handful
+//of large arrays rather than millions of objects. Vehicle and customer columns hold references to the
+//shared objects, so each row gives back the very objects it was added with, and record types are kept
+//once in a small dictionary and referred to by number. RentalRecord objects are only built when a row is asked for.
+//
+//Rows can be added from many threads at once without a lock. Each add claims the next row number from an
+//atomic counter and fills in its own row. A row is only published, and counted by size(), once it and every
+//row before it are filled in, so readers never see a row half written or a gap.
+public class RecordColumns {
+
+	//Rows per chunk. A power of two so the chunk and the position in it are a shift and a mask.
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	//Record types are stored as a byte; RENT and RETURN always have the first two numbers.
+	public static final byte RENT = 0;
+	public static final byte RETURN = 1;
+
+	//Volatile access to the type column, whose entries are written last and mark their row as filled in.
+	private static final VarHandle TYPES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+	//CHUNK_SIZE rows of every column.
+	private static final class Chunk {
+		final Vehicle[] vehicles = new Vehicle[CHUNK_SIZE];
+		final Customer[] customers = new Customer[CHUNK_SIZE];
+		final int[] epochDays = new int[CHUNK_SIZE];
+		final double[] amounts = new double[CHUNK_SIZE];
+		final byte[] types = new byte[CHUNK_SIZE];  //Type number + 1, so 0 means the row isn't filled in yet.
+	}
+
+	private volatile Chunk[] chunks = new Chunk[0];
+	private final AtomicInteger claimed = new AtomicInteger();  //Rows handed out to adds.
+	private final AtomicInteger published = new AtomicInteger();  //Rows filled in without a gap.
+
+	private final List<String> typeNames = new CopyOnWriteArrayList<>(List.of("RENT", "RETURN"));
+
+	//Appends a row and returns its number.
+	public int add(Vehicle vehicle, Customer customer, long epochDay, double amount, String recordType) {
+		byte type = typeCode(recordType);
+		int row = claimed.getAndIncrement();
+		Chunk chunk = chunkFor(row >>> CHUNK_BITS);
+		int slot = row & CHUNK_MASK;
+		chunk.vehicles[slot] = vehicle;
+		chunk.customers[slot] = customer;
+		chunk.epochDays[slot] = (int) epochDay;
+		chunk.amounts[slot] = amount;
+		TYPES.setVolatile(chunk.types, slot, (byte) (type + 1));
+		publish();
+		return row;
+	}
+
+	//The number of published rows. Rows still being filled in by other threads aren't counted yet.
+	public int size() {
+		return published.get();
+	}
+
+	public int epochDay(int row) {
+		return chunks[row >>> CHUNK_BITS].epochDays[row & CHUNK_MASK];
+	}
+
+	public double amount(int row) {
+		return chunks[row >>> CHUNK_BITS].amounts[row & CHUNK_MASK];
+	}
+
+	public byte type(int row) {
+		return (byte) (chunks[row >>> CHUNK_BITS].types[row & CHUNK_MASK] - 1);
+	}
+
+	public Vehicle vehicle(int row) {
+		return chunks[row >>> CHUNK_BITS].vehicles[row & CHUNK_MASK];
+	}
+
+	public Customer customer(int row) {
+		return chunks[row >>> CHUNK_BITS].customers[row & CHUNK_MASK];
+	}
+
+	public String typeName(int row) {
+		return typeNames.get(type(row));
+	}
+
+	//Builds a RentalRecord for one row.
+	public RentalRecord record(int row) {
+		return new RentalRecord(vehicle(row), customer(row), LocalDate.ofEpochDay(epochDay(row)), amount(row), typeName(row));
+	}
+
+	//Adds the amounts of every published row of the given type, or of every row if the type is negative.
+	//Walks the amount and type arrays chunk by chunk without creating any objects.
+	public double sumAmounts(int type) {
+		int size = size();
+		Chunk[] current = chunks;
+		double total = 0;
+		for (int chunk = 0; chunk * CHUNK_SIZE < size; chunk++) {
+			double[] amountChunk = current[chunk].amounts;
+			byte[] typeChunk = current[chunk].types;
+			int rows = Math.min(CHUNK_SIZE, size - chunk * CHUNK_SIZE);
+			for (int i = 0; i < rows; i++) {
+				if (type < 0 || typeChunk[i] == type + 1) {
+					total += amountChunk[i];
+				}
+			}
+		}
+		return total;
+	}
+
+	//Returns the stored number for a record type, or -1 if no row has that type.
+	public int findTypeCode(String recordType) {
+		return typeNames.indexOf(recordType);
+	}
+
+	//Moves the published count past every row filled in so far. Every add calls this after filling in its row, so
+	//whichever add fills the last row of a run publishes the whole run. The type column and the count are both
+	//read and written as volatiles, so an add that finds the next row not yet filled in and the add filling it in
+	//can't both miss each other.
+	private void publish() {
+		int next = published.get();
+		while (next < claimed.get() && isFilled(next)) {
+			if (published.compareAndSet(next, next + 1)) {
+				next++;
+			} else {
+				next = published.get();
+			}
+		}
+	}
+
+	private boolean isFilled(int row) {
+		Chunk[] current = chunks;
+		int chunk = row >>> CHUNK_BITS;
+		return chunk < current.length && (byte) TYPES.getVolatile(current[chunk].types, row & CHUNK_MASK) != 0;
+	}
+
+	//Returns the chunk, adding chunks up to it first if the rows it holds are the first to be claimed.
+	private Chunk chunkFor(int index) {
+		Chunk[] current = chunks;
+		if (index < current.length) {
+			return current[index];
+		}
+		synchronized (this) {
+			current = chunks;
+			if (index >= current.length) {
+				Chunk[] grown = Arrays.copyOf(current, index + 1);
+				for (int i = current.length; i < grown.length; i++) {
+					grown[i] = new Chunk();
+				}
+				chunks = grown;
+				current = grown;
+			}
+			return current[index];
+		}
+	}
+
+	private byte typeCode(String recordType) {
+		if ("RENT".equals(recordType)) {
+			return RENT;
+		} else if ("RETURN".equals(recordType)) {
+			return RETURN;
+		}
+		int code = typeNames.indexOf(recordType);
+		if (code < 0) {
+			synchronized (typeNames) {
+				code = typeNames.indexOf(recordType);
+				if (code < 0) {
+					if (typeNames.size() >= Byte.MAX_VALUE) {
+						throw new IllegalStateException("Too many record types");
+					}
+					code = typeNames.size();
+					typeNames.add(recordType);
+				}
+			}
+		}
+		return (byte) code;
+	}
+}
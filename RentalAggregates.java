@@ -0,0 +1,285 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Running revenue totals kept up to date by RentalHistory as each record is added, so dashboards can read
+//them without going through the records. RENT amounts and RETURN extra fees are counted separately.
+//Totals per vehicle, customer, vehicle type, day and month are single lookups. Sums over a date range
+//add up day, month and year totals, so they cost about the same for a week as for a decade.
+//
+//Records are counted from many threads at once without a lock over all the totals. Totals for one vehicle or
+//customer have a lock of their own, which only records for that vehicle or customer take. Totals every record
+//adds to, overall, per type and per day, month and year, are LongAdders, which spread adds from different
+//threads over separate cells instead of having them all update one field.
+public class RentalAggregates {
+
+	//A copy of the totals for one key at one moment. Amounts are kept in whole cents, so totals added up
+	//over any number of records come out exact.
+	public static class Totals {
+		public static final Totals NONE = new Totals(0, 0, 0, 0);
+
+		private final long rentCents;
+		private final long returnCents;
+		private final long rentals;
+		private final long returns;
+
+		public Totals(long rentCents, long returnCents, long rentals, long returns) {
+			this.rentCents = rentCents;
+			this.returnCents = returnCents;
+			this.rentals = rentals;
+			this.returns = returns;
+		}
+
+		public double getRentAmount() { return rentCents / 100.0; }
+
+		public double getReturnFees() { return returnCents / 100.0; }
+
+		public long getRentals() { return rentals; }
+
+		public long getReturns() { return returns; }
+
+		//Rent amounts and return fees together.
+		public double getRevenue() { return (rentCents + returnCents) / 100.0; }
+
+		@Override
+		public String toString() {
+			return String.format("Rentals: %d ($%.2f) | Returns: %d ($%.2f fees) | Revenue: $%.2f",
+					rentals, getRentAmount(), returns, getReturnFees(), getRevenue());
+		}
+	}
+
+	//The live counterpart of Totals for one vehicle or customer, guarded by its own lock.
+	private static class Running {
+		private long rentCents;
+		private long returnCents;
+		private long rentals;
+		private long returns;
+
+		synchronized void add(boolean rent, long cents) {
+			if (rent) {
+				rentCents += cents;
+				rentals++;
+			} else {
+				returnCents += cents;
+				returns++;
+			}
+		}
+
+		synchronized Totals snapshot() {
+			return new Totals(rentCents, returnCents, rentals, returns);
+		}
+	}
+
+	//The live counterpart of Totals for totals that every record, or every record of a day, adds to. A snapshot
+	//taken while records are being added may already count a record's amount but not yet the record itself.
+	private static class SharedRunning {
+		private final LongAdder rentCents = new LongAdder();
+		private final LongAdder returnCents = new LongAdder();
+		private final LongAdder rentals = new LongAdder();
+		private final LongAdder returns = new LongAdder();
+
+		void add(boolean rent, long cents) {
+			if (rent) {
+				rentCents.add(cents);
+				rentals.increment();
+			} else {
+				returnCents.add(cents);
+				returns.increment();
+			}
+		}
+
+		Totals snapshot() {
+			return new Totals(rentCents.sum(), returnCents.sum(), rentals.sum(), returns.sum());
+		}
+	}
+
+	//Adds up totals over a range of calendar periods.
+	private static class Sum {
+		long rentCents;
+		long returnCents;
+		long rentals;
+		long returns;
+
+		void add(Totals totals) {
+			rentCents += totals.rentCents;
+			returnCents += totals.returnCents;
+			rentals += totals.rentals;
+			returns += totals.returns;
+		}
+
+		Totals snapshot() {
+			return new Totals(rentCents, returnCents, rentals, returns);
+		}
+	}
+
+	//Totals per day, month and year, kept only for the periods that have records, so a record dated far from
+	//the rest costs three entries rather than an array spanning the gap. A range is summed from the days of
+	//its partial first and last months, the months of its partial first and last years and the whole years
+	//between, which is at most a few dozen entries plus one per year with records.
+	private static class CalendarTotals {
+		private final ConcurrentNavigableMap<Integer, SharedRunning> days = new ConcurrentSkipListMap<>();
+		private final ConcurrentNavigableMap<Integer, SharedRunning> months = new ConcurrentSkipListMap<>();
+		private final ConcurrentNavigableMap<Integer, SharedRunning> years = new ConcurrentSkipListMap<>();
+
+		void add(int day, int month, boolean rent, long cents) {
+			days.computeIfAbsent(day, key -> new SharedRunning()).add(rent, cents);
+			months.computeIfAbsent(month, key -> new SharedRunning()).add(rent, cents);
+			years.computeIfAbsent(Math.floorDiv(month, 12), key -> new SharedRunning()).add(rent, cents);
+		}
+
+		Totals onDay(int day) {
+			return snapshot(days.get(day));
+		}
+
+		Totals inMonth(int month) {
+			return snapshot(months.get(month));
+		}
+
+		//Totals from one day to another, both included.
+		Totals between(int from, int to) {
+			if (from > to || days.isEmpty()) {
+				return Totals.NONE;
+			}
+			//Days outside the records change nothing, and keeping to them keeps the dates in LocalDate's range.
+			from = Math.max(from, days.firstKey());
+			to = Math.min(to, days.lastKey());
+			if (from > to) {
+				return Totals.NONE;
+			}
+			Sum sum = new Sum();
+			LocalDate first = LocalDate.ofEpochDay(from);
+			LocalDate last = LocalDate.ofEpochDay(to);
+			int fullFrom = monthIndex(first);
+			int fullTo = monthIndex(last);
+			if (fullFrom == fullTo) {
+				addAll(sum, days.subMap(from, true, to, true));
+				return sum.snapshot();
+			}
+			if (first.getDayOfMonth() != 1) {
+				addAll(sum, days.subMap(from, true, (int) first.withDayOfMonth(first.lengthOfMonth()).toEpochDay(), true));
+				fullFrom++;
+			}
+			if (last.getDayOfMonth() != last.lengthOfMonth()) {
+				addAll(sum, days.subMap((int) last.withDayOfMonth(1).toEpochDay(), true, to, true));
+				fullTo--;
+			}
+			addMonths(sum, fullFrom, fullTo);
+			return sum.snapshot();
+		}
+
+		private void addMonths(Sum sum, int from, int to) {
+			if (from > to) {
+				return;
+			}
+			int fullFrom = Math.floorDiv(from, 12);
+			int fullTo = Math.floorDiv(to, 12);
+			if (fullFrom == fullTo) {
+				addAll(sum, months.subMap(from, true, to, true));
+				return;
+			}
+			if (Math.floorMod(from, 12) != 0) {
+				addAll(sum, months.subMap(from, true, fullFrom * 12 + 11, true));
+				fullFrom++;
+			}
+			if (Math.floorMod(to, 12) != 11) {
+				addAll(sum, months.subMap(fullTo * 12, true, to, true));
+				fullTo--;
+			}
+			if (fullFrom <= fullTo) {
+				addAll(sum, years.subMap(fullFrom, true, fullTo, true));
+			}
+		}
+
+		private static void addAll(Sum sum, Map<Integer, SharedRunning> periods) {
+			for (SharedRunning period : periods.values()) {
+				sum.add(period.snapshot());
+			}
+		}
+	}
+
+	//The maps are safe to read and add keys to from any thread.
+	private final PlateMap<Running> byVehicle = new PlateMap<>();
+	private final PlateMap<IntObjectMap<Running>> byVehicleMonth = new PlateMap<>();
+	private final IntObjectMap<Running> byCustomer = new IntObjectMap<>();
+	private final IntObjectMap<IntObjectMap<Running>> byCustomerMonth = new IntObjectMap<>();
+	private final Map<String, SharedRunning> byType = new ConcurrentHashMap<>();
+	private final SharedRunning overall = new SharedRunning();
+	private final CalendarTotals calendar = new CalendarTotals();
+
+	//Counts one record. Records other than RENT and RETURN are left out. Safe to call from any thread.
+	void add(Vehicle vehicle, Customer customer, long epochDay, double amount, String recordType) {
+		boolean rent = "RENT".equals(recordType);
+		if (!rent && !"RETURN".equals(recordType)) {
+			return;
+		}
+		int month = monthIndex(LocalDate.ofEpochDay(epochDay));
+		long cents = Math.round(amount * 100);
+		if (vehicle.getPlateCode() != PlateCodec.NO_CODE || vehicle.getLicensePlate() != null) {
+			byVehicle.computeIfAbsent(vehicle, Running::new).add(rent, cents);
+			byVehicleMonth.computeIfAbsent(vehicle, IntObjectMap::new).computeIfAbsent(month, key -> new Running()).add(rent, cents);
+		}
+		int customerId = customer.getCustomerId();
+		byCustomer.computeIfAbsent(customerId, key -> new Running()).add(rent, cents);
+		byCustomerMonth.computeIfAbsent(customerId, key -> new IntObjectMap<>()).computeIfAbsent(month, key -> new Running()).add(rent, cents);
+		byType.computeIfAbsent(ReportWriter.vehicleType(vehicle), key -> new SharedRunning()).add(rent, cents);
+		overall.add(rent, cents);
+		calendar.add((int) epochDay, month, rent, cents);
+	}
+
+	public Totals getTotals() {
+		return overall.snapshot();
+	}
+
+	public Totals getVehicleTotals(String licensePlate) {
+		return snapshot(licensePlate == null ? null : byVehicle.get(licensePlate));
+	}
+
+	//A vehicle's totals for one month, such as "revenue for this vehicle this month".
+	public Totals getVehicleTotals(String licensePlate, YearMonth month) {
+		IntObjectMap<Running> months = licensePlate == null ? null : byVehicleMonth.get(licensePlate);
+		return snapshot(months == null ? null : months.get(monthIndex(month.atDay(1))));
+	}
+
+	public Totals getCustomerTotals(int customerId) {
+		return snapshot(byCustomer.get(customerId));
+	}
+
+	public Totals getCustomerTotals(int customerId, YearMonth month) {
+		IntObjectMap<Running> months = byCustomerMonth.get(customerId);
+		return snapshot(months == null ? null : months.get(monthIndex(month.atDay(1))));
+	}
+
+	//Totals for one vehicle type, named the way the reports name them ("Car", "Minibus", "Pickup Truck").
+	public Totals getTypeTotals(String vehicleType) {
+		return snapshot(byType.get(vehicleType));
+	}
+
+	public Totals getMonthTotals(YearMonth month) {
+		return calendar.inMonth(monthIndex(month.atDay(1)));
+	}
+
+	public Totals getDayTotals(LocalDate date) {
+		return calendar.onDay((int) date.toEpochDay());
+	}
+
+	//Totals for the records dated from the start date to the end date, both included.
+	public Totals getTotalsBetween(LocalDate from, LocalDate to) {
+		return calendar.between((int) from.toEpochDay(), (int) to.toEpochDay());
+	}
+
+	private static Totals snapshot(Running running) {
+		return running == null ? Totals.NONE : running.snapshot();
+	}
+
+	private static Totals snapshot(SharedRunning running) {
+		return running == null ? Totals.NONE : running.snapshot();
+	}
+
+	private static int monthIndex(LocalDate date) {
+		return date.getYear() * 12 + date.getMonthValue() - 1;
+	}
+}
@@ -1,34 +1,415 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
 
 public class RentalHistory {
-    private List<RentalRecord> rentalRecords = new ArrayList<>();
-
-    public void addRecord(RentalRecord record) {
-        rentalRecords.add(record);
+	//Records are kept column by column and only turned into RentalRecord objects when asked for. Counters add
+	//records side by side: each claims its own row in the columns, and no lock over the history is taken.
+    private final RecordColumns columns = new RecordColumns();
+    
+    //Secondary indexes of row numbers kept up to date as records are added, so queries only touch the rows they
+    //return. Each list of rows is guarded by its own lock, so filing a record only waits for records and queries
+    //of the same vehicle, customer or day.
+    private final PlateMap<IntList> rowsByPlate = new PlateMap<>();
+    private final IntObjectMap<IntList> rowsByCustomer = new IntObjectMap<>();
+    private final ConcurrentNavigableMap<Integer, IntList> rowsByDay = new ConcurrentSkipListMap<>();
+    
+    //Running totals updated with every record, for reads that shouldn't touch the records at all.
+    private final RentalAggregates aggregates = new RentalAggregates();
+    
+    //Names of the customers in the history, for searches by part of a name. RentalSystem shares its own
+    //index here, and every customer a record brings in is added to it as well.
+    private NameIndex customerNames = new NameIndex();
+    
+    public RentalHistory() {
     }
-
+    
+    public RentalHistory(NameIndex customerNames) {
+    	this.customerNames = customerNames;
+    }
+    
+    //Records still on disk after a lazy startup. They come before every record in the columns, and are
+    //parsed into columns of their own the first time a query needs more than a page of them.
+    private volatile HistorySegment base;
+    private volatile int baseSize;
+    private volatile RecordColumns baseColumns;
+    
+    //Starts the history with records that stay on disk until they are needed. Called before any record is added.
+    void setLazyBase(HistorySegment segment) {
+    	base = segment != null && segment.size() > 0 ? segment : null;
+    	baseSize = base == null ? 0 : base.size();
+    }
+    
+    //Held by the one thread parsing the records a lazy startup left on disk, so others wait for it instead of parsing them too.
+    private final Object loading = new Object();
+    
+    //Records older than any in the history that a store kept on disk, such as those before a checkpoint. They
+    //stay out of the history but count in the totals, once, the first time the totals are read.
+    private volatile RentalStore.EarlierRecords earlier;
+    private volatile boolean hasEarlier;
+    
+    void setEarlierRecords(RentalStore.EarlierRecords records) {
+    	earlier = records;
+    	hasEarlier = records != null;
+    }
+    
+    //Whether the store kept records on disk that count in the totals but aren't listed in this history.
+    public boolean hasEarlierRecords() {
+    	return hasEarlier;
+    }
+    
+    void ensureCounted() {
+    	if (earlier == null) {
+    		return;
+    	}
+    	synchronized (loading) {
+    		RentalStore.EarlierRecords records = earlier;
+    		if (records == null) {
+    			return;  //Another thread counted them first.
+    		}
+    		earlier = null;  //Counted at most once, even if reading them fails part way.
+    		try {
+    			records.countInto(aggregates);
+    		} catch (IOException e) {
+    			throw new UncheckedIOException(e);
+    		}
+    	}
+    }
+    
+    //Parses the records left on disk by a lazy startup, if there are any. They go into columns of their own in
+    //front of the live ones, and their rows go in front of the live rows in each index, so rentals carry on
+    //adding to the live columns the whole time.
+    public void ensureLoaded() {
+    	if (base == null || baseColumns != null) {
+    		return;
+    	}
+    	synchronized (loading) {
+    		if (baseColumns != null) {
+    			return;  //Another thread loaded them first.
+    		}
+    		RecordColumns loaded = new RecordColumns();
+    		try {
+    			for (RentalRecord record : base.loadAll()) {
+    				long epochDay = record.getRecordDate().toEpochDay();
+    				loaded.add(record.getVehicle(), record.getCustomer(), epochDay, record.getTotalAmount(), record.getRecordType());
+    				aggregates.add(record.getVehicle(), record.getCustomer(), epochDay, record.getTotalAmount(), record.getRecordType());
+    			}
+    		} catch (IOException e) {
+    			throw new UncheckedIOException(e);
+    		}
+    		//Gathers the rows for each index list first, so each list takes them in one go.
+    		Map<IntList, IntList> front = new IdentityHashMap<>();
+    		for (int row = 0; row < loaded.size(); row++) {
+    			Vehicle vehicle = loaded.vehicle(row);
+    			if (vehicle.getPlateCode() != PlateCodec.NO_CODE || vehicle.getLicensePlate() != null) {
+    				front.computeIfAbsent(rowsByPlate.computeIfAbsent(vehicle, IntList::new), key -> new IntList()).add(row);
+    			}
+    			front.computeIfAbsent(customerRows(loaded.customer(row)), key -> new IntList()).add(row);
+    			front.computeIfAbsent(rowsByDay.computeIfAbsent(loaded.epochDay(row), key -> new IntList()), key -> new IntList()).add(row);
+    		}
+    		for (Map.Entry<IntList, IntList> rows : front.entrySet()) {
+    			synchronized (rows.getKey()) {
+    				rows.getKey().addAllFirst(rows.getValue());
+    			}
+    		}
+    		baseColumns = loaded;  //Published last, so queries that find it set also find the rows in the indexes.
+    	}
+    }
+    
+    //Returns the record's row, counting from the oldest record in the history.
+    public int addRecord(RentalRecord record) {
+    	return addRecord(record.getVehicle(), record.getCustomer(), record.getRecordDate().toEpochDay(), record.getTotalAmount(), record.getRecordType());
+    }
+    
+    //Adds a record from its fields without building a RentalRecord first. The row comes from the columns'
+    //counter and the indexes and totals only lock the vehicle's, customer's and day's own entries, so counters
+    //renting different vehicles don't wait on each other.
+    public int addRecord(Vehicle vehicle, Customer customer, long epochDay, double amount, String recordType) {
+    	int row = baseSize + columns.add(vehicle, customer, epochDay, amount, recordType);
+    	if (vehicle.getPlateCode() != PlateCodec.NO_CODE || vehicle.getLicensePlate() != null) {
+    		file(rowsByPlate.computeIfAbsent(vehicle, IntList::new), row);
+    	}
+    	file(customerRows(customer), row);
+    	file(rowsByDay.computeIfAbsent((int) epochDay, key -> new IntList()), row);
+    	aggregates.add(vehicle, customer, epochDay, amount, recordType);
+    	return row;
+    }
+    
+    //Adds a row to one index list. Rows stay in row order even when two adds file theirs the other way round.
+    private static void file(IntList rows, int row) {
+    	synchronized (rows) {
+    		rows.addInOrder(row);
+    	}
+    }
+    
+    //The customer's list of rows, created with their first record, which also adds them to the name index.
+    private IntList customerRows(Customer customer) {
+    	IntList rows = rowsByCustomer.get(customer.getCustomerId());
+    	if (rows == null) {
+    		IntList created = new IntList();
+    		rows = rowsByCustomer.putIfAbsent(customer.getCustomerId(), created);
+    		if (rows == null) {
+    			customerNames.add(customer);  //First record for this customer.
+    			rows = created;
+    		}
+    	}
+    	return rows;
+    }
+    
+    //Revenue and usage totals per vehicle, customer, vehicle type, day and month, kept as records are added.
+    public RentalAggregates getAggregates() {
+    	ensureLoaded();  //Totals have to include any records a lazy startup left on disk.
+    	ensureCounted();
+    	return aggregates;
+    }
+    
+    //Returns a copy of the history in the order the records were added.
     public List<RentalRecord> getRentalHistory() {
-        return rentalRecords;
+    	ensureLoaded();
+    	int size = size();
+    	List<RentalRecord> result = new ArrayList<>(size);
+    	for (int row = 0; row < size; row++) {
+    		result.add(record(row));
+    	}
+    	return result;
     }
-
+    
+    //Returns one page of the history: skips the first offset records that pass the filter, then returns
+    //up to limit of the records after them. A null filter lets every record through.
+    public List<RentalRecord> getPage(int offset, int limit, Predicate<RentalRecord> filter) {
+    	List<RentalRecord> result = new ArrayList<>();
+    	readRecords(skipRecords(0, offset, filter), limit, filter, result);
+    	return result;
+    }
+    
+    //Cursor over the history: adds up to limit records that pass the filter to the list, starting at the
+    //given row. Returns the row to carry on from on the next call. Without a filter, rows still on disk
+    //after a lazy startup are read straight from the file, so paging doesn't load the whole history.
+    public int readRecords(int fromRow, int limit, Predicate<RentalRecord> filter, List<RentalRecord> into) {
+    	if (filter != null) {
+    		ensureLoaded();  //Filtering has to look at every record anyway.
+    	}
+    	int row = Math.max(0, fromRow);
+    	int added = 0;
+    	int size = size();
+    	if (row < baseSize && baseColumns == null && limit > 0) {
+    		int before = into.size();
+    		try {
+    			base.read(row, limit, into);
+    		} catch (IOException e) {
+    			throw new UncheckedIOException(e);
+    		}
+    		added = into.size() - before;
+    		row += added;
+    	}
+    	while (row < size && added < limit) {
+    		RentalRecord record = record(row++);
+    		if (filter == null || filter.test(record)) {
+    			into.add(record);
+    			added++;
+    		}
+    	}
+    	return row;
+    }
+    
+    //Position before the first record in date order, and the position readRecordsByDate returns once it has read them all.
+    public static final long FIRST_BY_DATE = (long) Integer.MIN_VALUE << 32;
+    public static final long END_BY_DATE = Long.MAX_VALUE;
+    
+    //Cursor over the history in date order, records of the same day in the order they were added. Works like
+    //readRecords, but a position is the day in the high half and the place within that day in the low half,
+    //so records added to other days between two calls don't move it.
+    public long readRecordsByDate(long from, int limit, Predicate<RentalRecord> filter, List<RentalRecord> into) {
+    	if (from == END_BY_DATE) {
+    		return END_BY_DATE;
+    	}
+    	ensureLoaded();
+    	int fromDay = (int) (from >> 32);
+    	int added = 0;
+    	for (Map.Entry<Integer, IntList> day : rowsByDay.tailMap(fromDay, true).entrySet()) {
+    		int[] rows = rowsOf(day.getValue());
+    		for (int i = day.getKey() == fromDay ? (int) from : 0; i < rows.length; i++) {
+    			if (added == limit) {
+    				return (long) day.getKey() << 32 | i;
+    			}
+    			RentalRecord record = record(rows[i]);
+    			if (filter == null || filter.test(record)) {
+    				into.add(record);
+    				added++;
+    			}
+    		}
+    	}
+    	return END_BY_DATE;
+    }
+    
+    //Returns the row just past the first count records from the given row that pass the filter.
+    //Without a filter that is simple arithmetic, so skipping to a late page costs nothing.
+    public int skipRecords(int fromRow, int count, Predicate<RentalRecord> filter) {
+    	if (filter == null) {
+    		return (int) Math.min(size(), (long) Math.max(0, fromRow) + Math.max(0, count));
+    	}
+    	ensureLoaded();
+    	int size = size();
+    	int row = Math.max(0, fromRow);
+    	int skipped = 0;
+    	while (row < size && skipped < count) {
+    		if (filter.test(record(row++))) {
+    			skipped++;
+    		}
+    	}
+    	return row;
+    }
+    
+    public int size() {
+    	return baseSize + columns.size();
+    }
+    
+    public boolean isEmpty() {
+    	return size() == 0;
+    }
+    
+    //Looks the text up in the customer name index, then returns the matching customers' records from the
+    //customer index. Customers come in the order of their first record, as when every record was checked.
+    //Text with digits, or text that could match any of the labels around the name such as "Customer" or
+    //"name", could match more than the name, so it is still matched against toString once per customer.
     public List<RentalRecord> getRentalRecordsByCustomer(String customerName) {
+    	ensureLoaded();
         List<RentalRecord> result = new ArrayList<>();
-        for (RentalRecord record : rentalRecords) {
-            if (record.getCustomer().toString().toLowerCase().contains(customerName.toLowerCase())) {
-                result.add(record);
-            }
-        }
-        return result;
+        String search = customerName.toLowerCase(Locale.ROOT);  //Same folding as NameIndex, whatever the default locale.
+    	List<int[]> matches = new ArrayList<>();
+    	if (searchesNameOnly(search)) {
+    		for (int customerId : customerNames.findBySubstring(search)) {
+    			IntList rows = rowsByCustomer.get(customerId);
+    			if (rows != null) {
+    				matches.add(rowsOf(rows));
+    			}
+    		}
+    	} else {
+	        for (int customerId : rowsByCustomer.keys()) {
+	        	int[] rows = rowsOf(rowsByCustomer.get(customerId));
+	            if (rows.length > 0 && customer(rows[0]).toString().toLowerCase(Locale.ROOT).contains(search)) {
+	                matches.add(rows);
+	            }
+	        }
+    	}
+    	matches.removeIf(rows -> rows.length == 0);  //A customer whose first row is still being filed.
+    	matches.sort((a, b) -> Integer.compare(a[0], b[0]));  //Order of each customer's first record.
+    	for (int[] rows : matches) {
+    		addRows(result, rows);
+    	}
+    	return result;
     }
-
+    
+    //Customer.toString() with the id and name left out, e.g. "customer id: 0 | name: ".
+    private static final String CUSTOMER_LABELS = new Customer(0, "").toString().toLowerCase(Locale.ROOT);
+    
+    private static boolean searchesNameOnly(String search) {
+    	for (int i = 0; i < search.length(); i++) {
+    		char c = search.charAt(i);
+    		if (Character.isDigit(c) || c == ':' || c == '|') {
+    			return false;
+    		}
+    	}
+    	//Text without digits can only reach past the name if it starts inside the labels: it is either
+    	//part of them or begins with their last few characters.
+    	for (int start = 0; start < CUSTOMER_LABELS.length(); start++) {
+    		int length = Math.min(search.length(), CUSTOMER_LABELS.length() - start);
+    		if (CUSTOMER_LABELS.regionMatches(start, search, 0, length)) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+    
+    public List<RentalRecord> getRentalRecordsByCustomerId(int customerId) {
+    	ensureLoaded();
+    	List<RentalRecord> result = new ArrayList<>();
+    	addRows(result, rowsOf(rowsByCustomer.get(customerId)));
+    	return result;
+    }
+    
     public List<RentalRecord> getRentalRecordsByVehicle(String licensePlate) {
-        List<RentalRecord> result = new ArrayList<>();
-        for (RentalRecord record : rentalRecords) {
-            if (record.getVehicle().getLicensePlate().equalsIgnoreCase(licensePlate)) {
-                result.add(record);
-            }
-        }
-        return result;
-    }
-}
\ No newline at end of file
+    	ensureLoaded();
+    	List<RentalRecord> result = new ArrayList<>();
+    	if (licensePlate == null) {
+    		return result;
+    	}
+    	addRows(result, rowsOf(rowsByPlate.get(licensePlate)));
+    	return result;
+    }
+    
+    //Returns the records dated from the start date to the end date, both included, in date order.
+    public List<RentalRecord> getRentalRecordsBetween(LocalDate from, LocalDate to) {
+    	ensureLoaded();
+    	List<RentalRecord> result = new ArrayList<>();
+    	if (from.isAfter(to)) {
+    		return result;
+    	}
+    	for (IntList rows : rowsByDay.subMap((int) from.toEpochDay(), true, (int) to.toEpochDay(), true).values()) {
+    		addRows(result, rowsOf(rows));
+    	}
+    	return result;
+    }
+    
+    //Adds up the amounts of every record of one type. RENT and RETURN come from the running totals,
+    //any other type straight from the amount columns.
+    public double getTotalAmount(String recordType) {
+    	ensureLoaded();
+    	//The two record types the system writes are kept as running totals, which also count the earlier records.
+    	if ("RENT".equals(recordType)) {
+    		ensureCounted();
+    		return aggregates.getTotals().getRentAmount();
+    	} else if ("RETURN".equals(recordType)) {
+    		ensureCounted();
+    		return aggregates.getTotals().getReturnFees();
+    	}
+    	double total = 0;
+    	for (RecordColumns part : baseColumns == null ? List.of(columns) : List.of(baseColumns, columns)) {
+    		int type = part.findTypeCode(recordType);
+    		total += type < 0 ? 0 : part.sumAmounts(type);
+    	}
+    	return total;
+    }
+    
+    //Copies the rows of one index list under its lock, so the records can be built without holding it.
+    private static int[] rowsOf(IntList rows) {
+    	if (rows == null) {
+    		return new int[0];
+    	}
+    	synchronized (rows) {
+    		return rows.toArray();
+    	}
+    }
+    
+    //Rows are numbered across both sets of columns: the lazily loaded ones first, then the live ones.
+    //Rows in the first set are only read once ensureLoaded has parsed them.
+    private RecordColumns columnsOf(int row) {
+    	return row < baseSize ? baseColumns : columns;
+    }
+    
+    private int rowIn(int row) {
+    	return row < baseSize ? row : row - baseSize;
+    }
+    
+    private RentalRecord record(int row) {
+    	return columnsOf(row).record(rowIn(row));
+    }
+    
+    private Customer customer(int row) {
+    	return columnsOf(row).customer(rowIn(row));
+    }
+    
+    private void addRows(List<RentalRecord> result, int[] rows) {
+    	for (int row : rows) {
+    		result.add(record(row));
+    	}
+    }
+}
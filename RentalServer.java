@@ -0,0 +1,208 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//A line-protocol front end so many clerks can share one RentalSystem over the network.
+//Each connection gets its own thread: a virtual thread when the JDK has them (Java 21 and later),
+//otherwise a pooled platform thread. Commands are one line each, with comma-separated fields like the data files:
+//
+//  PING
+//  ADD_VEHICLE,<a vehicles.txt line>       e.g. ADD_VEHICLE,Car,ABC123,Toyota,Corolla,2020,5
+//  ADD_CUSTOMER,<id>,<name>
+//  RENT,<plate>,<customerId>,<amount>[,<date>]
+//  RETURN,<plate>,<customerId>,<fees>[,<date>]
+//  FIND,<plate>
+//  HISTORY,<offset>,<limit>
+//  HISTORY_VEHICLE,<plate>
+//  HISTORY_CUSTOMER,<customerId>
+//  QUIT
+//
+//Replies are "OK <text>" or "ERR <reason>" on one line. Lists reply "OK <n>" followed by n lines.
+public class RentalServer implements Closeable {
+
+	private final RentalSystem system;
+	private final ServerSocket serverSocket;
+	private final ExecutorService connections = newConnectionExecutor();
+	private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+	private volatile boolean running = true;
+
+	//Listens on the loopback address only. Port 0 picks a free port.
+	public RentalServer(RentalSystem system, int port) throws IOException {
+		this.system = system;
+		this.serverSocket = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	//Starts accepting connections on a background thread and returns.
+	public void start() {
+		Thread acceptor = new Thread(this::acceptLoop, "rental-server-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	//Stops accepting, disconnects every client and waits for nothing. The rental system is left open.
+	@Override
+	public void close() throws IOException {
+		running = false;
+		serverSocket.close();
+		for (Socket client : clients) {
+			client.close();
+		}
+		connections.shutdownNow();
+	}
+
+	//One thread per connection. Virtual threads are looked up by reflection so the code still builds on Java 17.
+	private static ExecutorService newConnectionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "rental-server-client");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			try {
+				Socket client = serverSocket.accept();
+				clients.add(client);
+				connections.execute(() -> serve(client));
+			} catch (IOException e) {
+				if (running) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void serve(Socket client) {
+		try (Socket socket = client;
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+			socket.setTcpNoDelay(true);
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().equalsIgnoreCase("QUIT")) {
+					out.write("OK BYE\n");
+					out.flush();
+					break;
+				}
+				out.write(handle(line));
+				out.flush();
+			}
+		} catch (SocketException e) {
+			//The client hung up or the server is closing.
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			clients.remove(client);
+		}
+	}
+
+	//Runs one command and returns the full reply, ending in a newline.
+	String handle(String line) {
+		String[] data = line.trim().split(",", -1);
+		String command = data[0].toUpperCase();
+		try {
+			switch (command) {
+				case "PING":
+					return ok("PONG");
+				case "ADD_VEHICLE":
+					Vehicle vehicle = TextRentalStore.parseVehicle(line.substring(line.indexOf(',') + 1).trim());
+					return system.addVehicle(vehicle) ? ok(vehicle.getLicensePlate()) : error("Vehicle " + vehicle.getLicensePlate() + " is already in the system");
+				case "ADD_CUSTOMER":
+					Customer customer = new Customer(Integer.parseInt(data[1].trim()), data[2].trim());
+					return system.addCustomer(customer) ? ok(String.valueOf(customer.getCustomerId())) : error("Customer " + customer.getCustomerId() + " is already in the system");
+				case "RENT":
+				case "RETURN":
+					return rentOrReturn(command, data);
+				case "FIND":
+					Vehicle found = system.findVehicleByPlate(data[1].trim());
+					return found == null ? error("Vehicle not found") : ok(found.getInfo());
+				case "HISTORY":
+					return list(system.getRentalHistory().getPage(Integer.parseInt(data[1].trim()), Integer.parseInt(data[2].trim()), null));
+				case "HISTORY_VEHICLE":
+					return list(system.getRentalHistory().getRentalRecordsByVehicle(data[1].trim()));
+				case "HISTORY_CUSTOMER":
+					return list(system.getRentalHistory().getRentalRecordsByCustomerId(Integer.parseInt(data[1].trim())));
+				default:
+					return error("Unknown command " + data[0]);
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return error("Missing fields for " + command);
+		} catch (RuntimeException e) {
+			//Bad numbers, dates and plates all end up here.
+			return error(e.getClass().getSimpleName() + ": " + e.getMessage());
+		}
+	}
+
+	private String rentOrReturn(String command, String[] data) {
+		Vehicle vehicle = system.findVehicleByPlate(data[1].trim());
+		if (vehicle == null) {
+			return error("Vehicle not found");
+		}
+		Customer customer = system.findCustomerById(Integer.parseInt(data[2].trim()));
+		if (customer == null) {
+			return error("Customer not found");
+		}
+		double amount = Double.parseDouble(data[3].trim());
+		LocalDate date = data.length > 4 && !data[4].trim().isEmpty() ? LocalDate.parse(data[4].trim()) : LocalDate.now();
+		if (command.equals("RENT")) {
+			return system.rentVehicle(vehicle, customer, date, amount) ? ok("RENTED") : error("Vehicle is not available for renting");
+		}
+		return system.returnVehicle(vehicle, customer, date, amount) ? ok("RETURNED") : error("Vehicle is not rented");
+	}
+
+	private static String ok(String text) {
+		return "OK " + text + "\n";
+	}
+
+	private static String error(String reason) {
+		return "ERR " + reason.replace('\n', ' ') + "\n";
+	}
+
+	private static String list(List<RentalRecord> records) {
+		StringBuilder reply = new StringBuilder("OK ").append(records.size()).append('\n');
+		for (RentalRecord record : records) {
+			reply.append(record).append('\n');
+		}
+		return reply.toString();
+	}
+
+	//Serves the shared rental system on the given port (7070 by default) until the process is stopped.
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+		RentalSystem system = RentalSystem.getInstance();
+		RentalServer server = new RentalServer(system, port);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				server.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			system.close();
+		}));
+		System.out.println("Rental server listening on port " + server.getPort());
+		server.acceptLoop();
+	}
+}
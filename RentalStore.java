@@ -0,0 +1,99 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+//Where a RentalSystem keeps its vehicles, customers, rental records and reservations between runs. The system
+//hands the store each change as it is made, and at startup loads everything back through a Loader, one kind
+//at a time in the order the load methods are listed. Implementations:
+//  TextRentalStore     - the comma-separated data files, as the system has always written them
+//  BinaryRentalStore   - one length-prefixed binary log with a type tag and a checksum per entry
+//  InMemoryRentalStore - keeps everything in memory, for tests and benchmarks that shouldn't touch the disk
+public interface RentalStore extends Closeable {
+
+	//Builds the system's state from what a store loads. Lookups only see what has been loaded so far.
+	interface Loader {
+		void addVehicle(Vehicle vehicle);
+		void addCustomer(Customer customer);
+		Vehicle findVehicle(String plate);
+		Vehicle findVehicle(int plateCode);  //By PlateCodec code, without building the plate's text.
+		Customer findCustomer(int id);
+		//Replays a record: adds it to the history and, for RENT and RETURN, sets its vehicle's status. Called in the order the records were saved.
+		void addRecord(Vehicle vehicle, Customer customer, long epochDay, double amount, String recordType);
+		//Puts records a store has left on disk in front of the history, to be read when the history needs them.
+		void setLazyHistory(HistorySegment segment);
+		//Hands over records a store keeps on disk but leaves out of the history, such as those before a checkpoint,
+		//so the running totals still count them. They are counted the first time the totals are read.
+		void setEarlierRecords(EarlierRecords records);
+		void addReservation(Reservation reservation);
+		void releaseReservation(long id);
+	}
+
+	//Counts records left out of the history into the running totals.
+	interface EarlierRecords {
+		void countInto(RentalAggregates totals) throws IOException;
+	}
+
+	void loadVehicles(Loader loader) throws IOException;
+	void loadCustomers(Loader loader) throws IOException;
+	//Replays the records and restores any statuses a checkpoint saved.
+	void loadRecords(Loader loader) throws IOException;
+	void loadReservations(Loader loader) throws IOException;
+
+	void saveVehicle(Vehicle vehicle) throws IOException;
+	void saveCustomer(Customer customer) throws IOException;
+	void saveRecord(RentalRecord record) throws IOException;
+	void saveReservation(Reservation reservation) throws IOException;
+	//Saves that a reservation was cancelled or picked up.
+	void saveRelease(long reservationId) throws IOException;
+
+	//Bulk saves for imports. Everything saved before is written first, and the batch is forced to disk as one write.
+	void saveVehicles(List<Vehicle> vehicles) throws IOException;
+	void saveCustomers(List<Customer> customers) throws IOException;
+	void saveRecords(List<RentalRecord> records) throws IOException;
+
+	//Saves the status of every vehicle, so the next startup doesn't have to work them out from every record.
+	//Called with rentals and returns held off.
+	void checkpoint(List<Vehicle> fleet) throws IOException;
+
+	//Takes a checkpoint and then shrinks what the next startup has to read. Called with rentals and returns held off,
+	//and after the history has read any records left on disk.
+	void compact(List<Vehicle> fleet) throws IOException;
+
+	//Writes out anything still buffered or queued.
+	void flush() throws IOException;
+
+	//Flushes and releases the store's files. A later save opens them again.
+	@Override
+	void close() throws IOException;
+
+	//The store named by the rental.store property. A name that isn't a store is reported and text used instead,
+	//so a typo doesn't stop the system from starting.
+	static String configuredKind() {
+		String kind = System.getProperty("rental.store", "text").trim().toLowerCase(Locale.ROOT);
+		switch (kind) {
+			case "text":
+			case "binary":
+			case "memory":
+				return kind;
+			default:
+				System.out.println("Error: Unknown rental.store " + kind + ", expected text, binary or memory. Using text.");
+				return "text";
+		}
+	}
+
+	//Opens a store by name: text, binary or memory. The durability mode only applies to the text store.
+	static RentalStore open(String kind, File dataDir, PersistencePipeline.DurabilityMode durability) {
+		switch (kind.toLowerCase(Locale.ROOT)) {
+			case "text":
+				return new TextRentalStore(dataDir, durability);
+			case "binary":
+				return new BinaryRentalStore(dataDir);
+			case "memory":
+				return new InMemoryRentalStore();
+			default:
+				throw new IllegalArgumentException("Unknown rental store " + kind + ", expected text, binary or memory");
+		}
+	}
+}
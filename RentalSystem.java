@@ -1,17 +1,58 @@
 import java.util.List;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 public class RentalSystem {
 	
+	//How saves reach the disk (SYNC, GROUP or ASYNC, see PersistencePipeline) and which RentalStore keeps the data
+	//(text, binary or memory). Declared before the instance so they are set when the constructor runs.
+	private static final PersistencePipeline.DurabilityMode DURABILITY = PersistencePipeline.configuredMode();
+	private static final String STORE = RentalStore.configuredKind();
+	
+	//Number of records saved between automatic checkpoints and compactions. 0 turns them off.
+	private static final int CHECKPOINT_RECORDS = Integer.getInteger("rental.checkpoint.records", 0);
+	
+	//Number of history records read from RentalHistory at a time when writing a report.
+	private static final int REPORT_BATCH = 1024;
+	
+	//Number of striped locks guarding rentals and returns. Must be a power of two.
+	private static final int LOCK_STRIPES = 64;
+	
 	private static RentalSystem instance = new RentalSystem(); //Holds the instance of the rental system and initialises it.
 	private RentalSystem() {
+		this(RentalStore.open(STORE, new File("."), DURABILITY));  //Uses the data files in the working directory.
+		metrics.register("RentalSystem:type=Metrics");  //Only the shared instance is published over JMX.
+	}
+	
+	//Creates a rental system over the data files in the given directory.
+	RentalSystem(File dataDir) {
+		this(dataDir, DURABILITY);
+	}
+	
+	//Creates a rental system over the data files in the given directory that saves with the given durability mode.
+	RentalSystem(File dataDir, PersistencePipeline.DurabilityMode durability) {
+		this(new TextRentalStore(dataDir, durability));
+	}
+	
+	//Creates a rental system that loads from and saves to the given store, e.g. an InMemoryRentalStore for tests.
+	RentalSystem(RentalStore store) {
+		this.store = store;
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			plateLocks[i] = new ReentrantLock();
+		}
 		loadData(); //Calls the loadData method so that all the saved details are loaded.
 	}
 	
@@ -21,356 +62,941 @@ public class RentalSystem {
 	
     private List<Vehicle> vehicles = new ArrayList<>();
     private List<Customer> customers = new ArrayList<>();
-    private RentalHistory rentalHistory = new RentalHistory();
+    private NameIndex customerNames = new NameIndex();  //Customer names for prefix and substring searches.
+    private RentalHistory rentalHistory = new RentalHistory(customerNames);
+    
+    //Keyed indexes so lookups and duplicate checks don't scan the lists above. Plates are keyed by their
+    //packed PlateCodec value and ids by the plain int, and reads don't wait on the lists' locks.
+    private PlateMap<Vehicle> vehiclesByPlate = new PlateMap<>();
+    private IntObjectMap<Customer> customersById = new IntObjectMap<>();
+    
+    //The fleet split by status, so listing available or rented vehicles doesn't scan the whole fleet.
+    private StatusIndex statusIndex = new StatusIndex();
+    
+    //Open reservations, indexed per vehicle for conflict checks and per vehicle type for availability searches.
+    private ReservationBook reservations = new ReservationBook();
+    
+    //Where everything is saved and loaded from at startup.
+    private final RentalStore store;
+    
+    //Loads the store's contents into the lists and indexes above.
+    private final RentalStore.Loader loader = new StoreLoader();
+    
+    //Striped locks keyed by plate: rentals and returns of one vehicle take turns, other vehicles are not blocked.
+    private final ReentrantLock[] plateLocks = new ReentrantLock[LOCK_STRIPES];
+    
+    private AtomicInteger recordsSinceCheckpoint = new AtomicInteger();
+    
+    //Operation counters and latencies. The fleet gauges read the status index when asked.
+    private final RentalSystemMetrics metrics = new RentalSystemMetrics(() -> statusIndex.counts());
+    
+    //Told about every change as it is made, e.g. a ReplicationPrimary shipping them to followers. Null for none.
+    private volatile ChangeListener changeListener;
+    
+    //Receives the vehicles, customers, records and reservation changes the rental system saves, and through
+    //Vehicle.StatusListener every status change. Calls come from the thread making the change, after the change
+    //is visible to readers. Records come with their row in the history, since two threads can report their
+    //records in the other order to the one they were added in.
+    public interface ChangeListener extends Vehicle.StatusListener {
+    	void vehicleAdded(Vehicle vehicle);
+    	void customerAdded(Customer customer);
+    	void recordAdded(int row, RentalRecord record);
+    	void reservationChanged(String line);  //A RESERVE or RELEASE line as saved in reservations.txt.
+    }
+    
+    //Starts telling the listener about changes. Changes made before this are not reported, so it is set before the
+    //system is shared, and anything already in the system is read from it directly.
+    public void setChangeListener(ChangeListener listener) {
+    	changeListener = listener;
+    	statusIndex.forwardTo(listener);
+    }
 
     public boolean addVehicle(Vehicle vehicle) {
+    	long start = System.nanoTime();
     	
-    	//Checks for duplicate vehicle
-    	if(findVehicleByPlate(vehicle.getLicensePlate() ) != null) {
+    	//A vehicle needs a plate to be indexed and locked on.
+    	if(vehicle.getLicensePlate() == null) {
+    		System.out.println("Error: A Vehicle needs a license plate before it can be added.");
+    		metrics.record(RentalSystemMetrics.Operation.ADD_VEHICLE, start, false);
+    		return false;
+    	}
+    	
+    	//Checks for duplicate vehicle. Claiming the plate in the index makes the check and the add one step.
+    	if(vehiclesByPlate.putIfAbsent(vehicle, vehicle) != null) {
     		System.out.printf("Error: A Vehicle with number plate %s is already in the system \n",vehicle.getLicensePlate());
+    		metrics.record(RentalSystemMetrics.Operation.ADD_VEHICLE, start, false);
     		return false;
     	}
     	
     	//Adds vehicle since no duplicate found
-    	vehicles.add(vehicle);
+    	synchronized (vehicles) {
+    		vehicles.add(vehicle);
+    		statusIndex.register(vehicle);  //Registered under the list's lock so both keep the same order.
+    		reservations.register(vehicle);
+    	}
     	saveVehicle(vehicle);
+    	ChangeListener listener = changeListener;
+    	if (listener != null) {
+    		listener.vehicleAdded(vehicle);
+    	}
+    	metrics.record(RentalSystemMetrics.Operation.ADD_VEHICLE, start, true);
     	return true;
     	
     }
 
     public boolean addCustomer(Customer customer) {
-    	//Checks for duplicate customer
-    	if(findCustomerById(customer.getCustomerId()) != null) {
+    	long start = System.nanoTime();
+    	//Checks for duplicate customer. Claiming the id in the index makes the check and the add one step.
+    	if(customersById.putIfAbsent(customer.getCustomerId(), customer) != null) {
     		System.out.printf("Error:A customer with id %d is already in the system. \n",customer.getCustomerId());
+    		metrics.record(RentalSystemMetrics.Operation.ADD_CUSTOMER, start, false);
     		return false;
     	}
     	
     	//Adds the customer since no duplicate found
-        customers.add(customer);
+    	synchronized (customers) {
+    		customers.add(customer);
+    	}
+    	customerNames.add(customer);
         saveCustomer(customer); 
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+        	listener.customerAdded(customer);
+        }
+        metrics.record(RentalSystemMetrics.Operation.ADD_CUSTOMER, start, true);
         return true;
     }
 
     public boolean rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
-        if (vehicle.getStatus() == Vehicle.VehicleStatus.Available) {
-            vehicle.setStatus(Vehicle.VehicleStatus.Rented);
-            rentalHistory.addRecord(new RentalRecord(vehicle, customer, date, amount, "RENT"));
-            System.out.println("Vehicle rented to " + customer.getCustomerName());
-            saveRecord(new RentalRecord(vehicle, customer, date, amount, "RENT")); //Saves the rent record a file.
-            
-            return true;
-        }
-        else {
-            System.out.println("Vehicle is not available for renting.");
-            
-            return false;
-        }
+    	long start = System.nanoTime();
+    	ReentrantLock lock = lockFor(vehicle);
+    	lock.lock();  //Only one rent or return of this vehicle can check and change its status at a time.
+    	try {
+    		//A vehicle reserved for the rental date is kept for that reservation.
+    		if (date != null && reservations.findOn(vehicle, date) != null) {
+    			System.out.println("Vehicle is reserved on " + date + ".");
+    			metrics.record(RentalSystemMetrics.Operation.RENT, start, false);
+    			return false;
+    		}
+	        if (vehicle.getStatus() == Vehicle.VehicleStatus.Available) {
+	            vehicle.setStatus(Vehicle.VehicleStatus.Rented);
+	            RentalRecord record = new RentalRecord(vehicle, customer, date, amount, "RENT");
+	            int row = rentalHistory.addRecord(record);
+	            System.out.println("Vehicle rented to " + customer.getCustomerName());
+	            saveRecord(record); //Saves the rent record a file.
+	            recordAdded(row, record);
+	            metrics.record(RentalSystemMetrics.Operation.RENT, start, true);
+	            
+	            return true;
+	        }
+	        else {
+	            System.out.println("Vehicle is not available for renting.");
+	            metrics.record(RentalSystemMetrics.Operation.RENT, start, false);  //Counted as a rejection.
+	            
+	            return false;
+	        }
+    	} finally {
+    		lock.unlock();
+    		compactIfDue();  //Runs after unlocking since compaction takes every lock.
+    	}
     }
 
     public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
-        if (vehicle.getStatus() == Vehicle.VehicleStatus.Rented) {
-            vehicle.setStatus(Vehicle.VehicleStatus.Available);
-            rentalHistory.addRecord(new RentalRecord(vehicle, customer, date, extraFees, "RETURN"));
-            System.out.println("Vehicle returned by " + customer.getCustomerName());
-            saveRecord(new RentalRecord(vehicle, customer, date, extraFees, "RETURN")); //Saves the return record to a file.
-            
-            return true;
-        }
-        else {
-            System.out.println("Vehicle is not rented.");
-            return false;
-        }
+    	long start = System.nanoTime();
+    	ReentrantLock lock = lockFor(vehicle);
+    	lock.lock();  //Only one rent or return of this vehicle can check and change its status at a time.
+    	try {
+	        if (vehicle.getStatus() == Vehicle.VehicleStatus.Rented) {
+	        	//Goes straight on hold if a reservation starts on the return date.
+	        	boolean reserved = date != null && reservations.findOn(vehicle, date) != null;
+	            vehicle.setStatus(reserved ? Vehicle.VehicleStatus.Held : Vehicle.VehicleStatus.Available);
+	            RentalRecord record = new RentalRecord(vehicle, customer, date, extraFees, "RETURN");
+	            int row = rentalHistory.addRecord(record);
+	            System.out.println("Vehicle returned by " + customer.getCustomerName());
+	            saveRecord(record); //Saves the return record to a file.
+	            recordAdded(row, record);
+	            metrics.record(RentalSystemMetrics.Operation.RETURN, start, true);
+	            
+	            return true;
+	        }
+	        else {
+	            System.out.println("Vehicle is not rented.");
+	            metrics.record(RentalSystemMetrics.Operation.RETURN, start, false);  //Counted as a rejection.
+	            return false;
+	        }
+    	} finally {
+    		lock.unlock();
+    		compactIfDue();  //Runs after unlocking since compaction takes every lock.
+    	}
     }    
+    
+    //Reserves the vehicle for the customer from one date to another, both included. Returns null if the
+    //dates clash with another reservation of the same vehicle. A reservation that covers today puts the vehicle on hold.
+    public Reservation reserveVehicle(Vehicle vehicle, Customer customer, LocalDate from, LocalDate to) {
+    	if (from.isAfter(to)) {
+    		System.out.println("Error: A reservation can't end before it starts.");
+    		return null;
+    	}
+    	ReentrantLock lock = lockFor(vehicle);
+    	lock.lock();  //Shares the vehicle's lock with rentals and returns so the status change doesn't race them.
+    	try {
+    		if (vehicle.getStatus() == Vehicle.VehicleStatus.OutOfService) {
+    			System.out.println("Vehicle is out of service.");
+    			return null;
+    		}
+    		Reservation conflict = reservations.findConflict(vehicle, from, to);
+    		if (conflict != null) {
+    			System.out.printf("Vehicle is already reserved from %s to %s. \n", conflict.getStartDate(), conflict.getEndDate());
+    			return null;
+    		}
+    		Reservation reservation = new Reservation(reservations.nextId(), vehicle, customer, from, to);
+    		reservations.add(reservation);
+    		saveReservation(reservation);
+    		LocalDate today = LocalDate.now();
+    		if (reservation.overlaps(today, today) && vehicle.getStatus() == Vehicle.VehicleStatus.Available) {
+    			vehicle.setStatus(Vehicle.VehicleStatus.Held);
+    		}
+    		System.out.println("Vehicle reserved for " + customer.getCustomerName());
+    		return reservation;
+    	} finally {
+    		lock.unlock();
+    	}
+    }
+    
+    public boolean cancelReservation(long reservationId) {
+    	Reservation reservation = reservations.get(reservationId);
+    	if (reservation == null) {
+    		System.out.println("Error: No reservation with id " + reservationId + ".");
+    		return false;
+    	}
+    	Vehicle vehicle = reservation.getVehicle();
+    	ReentrantLock lock = lockFor(vehicle);
+    	lock.lock();
+    	try {
+    		if (reservations.remove(reservationId) == null) {
+    			System.out.println("Error: No reservation with id " + reservationId + ".");
+    			return false;  //Cancelled or picked up while this call waited for the lock.
+    		}
+    		saveRelease(reservationId);
+    		releaseHoldIfFree(vehicle, LocalDate.now());
+    		System.out.println("Reservation cancelled.");
+    		return true;
+    	} finally {
+    		lock.unlock();
+    	}
+    }
+    
+    //Rents a vehicle to the customer who reserved it, on a day inside the reservation. The reservation is used up
+    //and the rental recorded as usual.
+    public boolean rentReservedVehicle(long reservationId, LocalDate date, double amount) {
+    	long start = System.nanoTime();
+    	Reservation reservation = reservations.get(reservationId);
+    	if (reservation == null) {
+    		System.out.println("Error: No reservation with id " + reservationId + ".");
+    		metrics.record(RentalSystemMetrics.Operation.RENT, start, false);
+    		return false;
+    	}
+    	if (date.isBefore(reservation.getStartDate()) || date.isAfter(reservation.getEndDate())) {
+    		System.out.printf("Error: Reservation %d runs from %s to %s. \n", reservation.getId(), reservation.getStartDate(), reservation.getEndDate());
+    		metrics.record(RentalSystemMetrics.Operation.RENT, start, false);
+    		return false;
+    	}
+    	Vehicle vehicle = reservation.getVehicle();
+    	Customer customer = reservation.getCustomer();
+    	ReentrantLock lock = lockFor(vehicle);
+    	lock.lock();
+    	try {
+    		//A hold on the vehicle that day must be this reservation's, not another customer's.
+    		Reservation holder = reservations.findOn(vehicle, date);
+    		if (holder != null && holder != reservation) {
+    			System.out.printf("Vehicle is reserved from %s to %s by another customer. \n", holder.getStartDate(), holder.getEndDate());
+    			metrics.record(RentalSystemMetrics.Operation.RENT, start, false);
+    			return false;
+    		}
+    		Vehicle.VehicleStatus status = vehicle.getStatus();
+    		if (reservations.get(reservationId) != reservation
+    				|| (status != Vehicle.VehicleStatus.Available && status != Vehicle.VehicleStatus.Held)) {
+    			System.out.println("Vehicle is not available for renting.");
+    			metrics.record(RentalSystemMetrics.Operation.RENT, start, false);
+    			return false;
+    		}
+    		reservations.remove(reservationId);
+    		saveRelease(reservationId);
+    		vehicle.setStatus(Vehicle.VehicleStatus.Rented);
+    		RentalRecord record = new RentalRecord(vehicle, customer, date, amount, "RENT");
+    		int row = rentalHistory.addRecord(record);
+    		System.out.println("Vehicle rented to " + customer.getCustomerName());
+    		saveRecord(record);
+    		recordAdded(row, record);
+    		metrics.record(RentalSystemMetrics.Operation.RENT, start, true);
+    		return true;
+    	} finally {
+    		lock.unlock();
+    		compactIfDue();
+    	}
+    }
+    
+    //The vehicles of the given type (every type if null) that have no reservation between the two dates and
+    //aren't under maintenance or out of service. Type names match the reports: Car, Minibus, Pickup Truck.
+    public List<Vehicle> findAvailableVehicles(String vehicleType, LocalDate from, LocalDate to) {
+    	return reservations.findFreeVehicles(vehicleType, from, to, vehicle ->
+    			vehicle.getStatus() != Vehicle.VehicleStatus.UnderMaintenance && vehicle.getStatus() != Vehicle.VehicleStatus.OutOfService);
+    }
+    
+    public List<Reservation> getReservations(Vehicle vehicle) {
+    	return reservations.getReservations(vehicle);
+    }
+    
+    public Reservation findReservation(long reservationId) {
+    	return reservations.get(reservationId);
+    }
+    
+    //Puts vehicles reserved for the given day on hold and releases held vehicles with no reservation that day.
+    //Runs at startup, and can be run again each morning.
+    public void refreshHolds(LocalDate today) {
+    	for (Vehicle vehicle : vehicleSnapshot()) {
+    		ReentrantLock lock = lockFor(vehicle);
+    		lock.lock();
+    		try {
+    			if (reservations.findOn(vehicle, today) != null) {
+    				if (vehicle.getStatus() == Vehicle.VehicleStatus.Available) {
+    					vehicle.setStatus(Vehicle.VehicleStatus.Held);
+    				}
+    			} else {
+    				releaseHoldIfFree(vehicle, today);
+    			}
+    		} finally {
+    			lock.unlock();
+    		}
+    	}
+    }
+    
+    //Makes a held vehicle available again once no reservation covers the given day.
+    private void releaseHoldIfFree(Vehicle vehicle, LocalDate day) {
+    	if (vehicle.getStatus() == Vehicle.VehicleStatus.Held && reservations.findOn(vehicle, day) == null) {
+    		vehicle.setStatus(Vehicle.VehicleStatus.Available);
+    	}
+    }
+    
+    //Picks the stripe for a vehicle from its plate, so the same vehicle always maps to the same lock.
+    private ReentrantLock lockFor(Vehicle vehicle) {
+    	int code = vehicle.getPlateCode();
+    	int hash = code != PlateCodec.NO_CODE ? code * 0x9E3779B9 : Objects.hashCode(vehicle.getLicensePlate());
+    	hash ^= (hash >>> 16);
+    	return plateLocks[hash & (LOCK_STRIPES - 1)];
+    }
+    
+    //Takes every stripe in order, which blocks all rentals and returns while the log is checkpointed.
+    private void lockAll() {
+    	for (ReentrantLock lock : plateLocks) {
+    		lock.lock();
+    	}
+    }
+    
+    private void unlockAll() {
+    	for (int i = LOCK_STRIPES - 1; i >= 0; i--) {
+    		plateLocks[i].unlock();
+    	}
+    }
+    
+    //Copies the vehicle list so it can be read while other threads add vehicles.
+    private List<Vehicle> vehicleSnapshot() {
+    	synchronized (vehicles) {
+    		return new ArrayList<>(vehicles);
+    	}
+    }
 
     public void displayVehicles(Vehicle.VehicleStatus status) {
+    	displayVehicles(status, 0, Integer.MAX_VALUE);
+    }
+    
+    //The vehicles with the given status in the order they were added, or the whole fleet if status is null.
+    public List<Vehicle> getVehicles(Vehicle.VehicleStatus status) {
+    	return status == null ? vehicleSnapshot() : statusIndex.getVehicles(status);
+    }
+    
+    //The number of vehicles with the given status, without scanning the fleet.
+    public int countVehicles(Vehicle.VehicleStatus status) {
+    	return statusIndex.count(status);
+    }
+    
+    //The number of vehicles with each status.
+    public Map<Vehicle.VehicleStatus, Integer> getStatusCounts() {
+    	return statusIndex.counts();
+    }
+    
+    //The number of vehicles of each make, in the order the makes were first seen.
+    public Map<String, Integer> getMakeCounts() {
+    	return countByCode(false);
+    }
+    
+    //The number of vehicles of each model, in the order the models were first seen.
+    public Map<String, Integer> getModelCounts() {
+    	return countByCode(true);
+    }
+    
+    //Counts vehicles per dictionary code in an int array, so no String is hashed or compared per vehicle.
+    private Map<String, Integer> countByCode(boolean byModel) {
+    	MakeModelDictionary dictionary = MakeModelDictionary.shared();
+    	int[] counts = new int[dictionary.size() + 1];
+    	synchronized (vehicles) {
+    		for (Vehicle vehicle : vehicles) {
+    			int code = byModel ? vehicle.getModelCode() : vehicle.getMakeCode();
+    			if (code >= counts.length - 1) {
+    				counts = Arrays.copyOf(counts, code + 2);  //A value added since the array was sized.
+    			}
+    			counts[code + 1]++;  //NO_CODE counts in slot 0.
+    		}
+    	}
+    	Map<String, Integer> result = new LinkedHashMap<>();
+    	for (int code = MakeModelDictionary.NO_CODE; code < counts.length - 1; code++) {
+    		if (counts[code + 1] > 0) {
+    			result.put(String.valueOf(dictionary.value(code)), counts[code + 1]);
+    		}
+    	}
+    	return result;
+    }
+    
+    //Prints one page of the vehicle table: skips the first offset matching vehicles and shows up to limit of the rest.
+    public int displayVehicles(Vehicle.VehicleStatus status, int offset, int limit) {
+    	try {
+    		return writeVehicles(new OutputStreamWriter(System.out), status, offset, limit);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    		return 0;
+    	}
+    }
+    
+    //Writes the vehicle table to any Writer, such as a file for an export. Returns the number of vehicles written.
+    //The writer is flushed but not closed.
+    public int writeVehicles(Writer out, Vehicle.VehicleStatus status, int offset, int limit) throws IOException {
+    	ReportWriter report = new ReportWriter(out);
+    	
         // Display appropriate title based on status
         if (status == null) {
-            System.out.println("\n=== All Vehicles ===");
+            report.line("\n=== All Vehicles ===");
         } else {
-            System.out.println("\n=== " + status + " Vehicles ===");
+            report.line("\n=== " + status + " Vehicles ===");
         }
         
         // Header with proper column widths
-        System.out.printf("|%-16s | %-12s | %-12s | %-12s | %-6s | %-18s |%n", 
-            " Type", "Plate", "Make", "Model", "Year", "Status");
-        System.out.println("|--------------------------------------------------------------------------------------------|");
+        report.vehicleHeader();
     	  
-        boolean found = false;
-        for (Vehicle vehicle : vehicles) {
-            if (status == null || vehicle.getStatus() == status) {
-                found = true;
-                String vehicleType;
-                if (vehicle instanceof Car) {
-                    vehicleType = "Car";
-                } else if (vehicle instanceof Minibus) {
-                    vehicleType = "Minibus";
-                } else if (vehicle instanceof PickupTruck) {
-                    vehicleType = "Pickup Truck";
-                } else {
-                    vehicleType = "Unknown";
-                }
-                System.out.printf("| %-15s | %-12s | %-12s | %-12s | %-6d | %-18s |%n", 
-                    vehicleType, vehicle.getLicensePlate(), vehicle.getMake(), vehicle.getModel(), vehicle.getYear(), vehicle.getStatus().toString());
-            }
+        //Only the vehicles with the requested status are read, straight from the status index.
+        List<Vehicle> matching = getVehicles(status);
+        int written = 0;
+        for (int i = Math.max(0, offset); i < matching.size() && written < limit; i++) {
+        	report.vehicleRow(matching.get(i));
+        	written++;
         }
-        if (!found) {
+        if (matching.isEmpty()) {
             if (status == null) {
-                System.out.println("  No Vehicles found.");
+                report.line("  No Vehicles found.");
             } else {
-                System.out.println("  No vehicles with Status: " + status);
+                report.line("  No vehicles with Status: " + status);
             }
         }
-        System.out.println();
+        report.line("");
+        report.flush();
+        return written;
     }
 
     public void displayAllCustomers() {
-        for (Customer c : customers) {
+    	List<Customer> snapshot;
+    	synchronized (customers) {
+    		snapshot = new ArrayList<>(customers);
+    	}
+        for (Customer c : snapshot) {
             System.out.println("  " + c.toString());
         }
     }
     
     public void displayRentalHistory() {
-        if (rentalHistory.getRentalHistory().isEmpty()) {
-            System.out.println("  No rental history found.");
-        } else {
-            // Header with proper column widths
-            System.out.printf("|%-10s | %-12s | %-20s | %-12s | %-12s |%n", 
-                " Type", "Plate", "Customer", "Date", "Amount");
-            System.out.println("|-------------------------------------------------------------------------------|");
-            
-            for (RentalRecord record : rentalHistory.getRentalHistory()) {                
-                System.out.printf("| %-9s | %-12s | %-20s | %-12s | $%-11.2f |%n", 
-                    record.getRecordType(), 
-                    record.getVehicle().getLicensePlate(),
-                    record.getCustomer().getCustomerName(),
-                    record.getRecordDate().toString(),
-                    record.getTotalAmount()
-                );
-            }
-            System.out.println();
+    	displayRentalHistory(0, Integer.MAX_VALUE, null);
+    }
+    
+    //Prints one page of the rental history: skips the first offset records that pass the filter
+    //(null shows every record) and shows up to limit of the rest. Returns the number of records shown.
+    public int displayRentalHistory(int offset, int limit, Predicate<RentalRecord> filter) {
+    	try {
+    		return writeRentalHistory(new OutputStreamWriter(System.out), offset, limit, filter);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    		return 0;
+    	}
+    }
+    
+    //Writes the rental history table to any Writer, such as a file for an export. The records are read from
+    //the history a batch at a time, so a large export never holds the whole history in memory or keeps other
+    //counters waiting. The writer is flushed but not closed. Returns the number of records written.
+    public int writeRentalHistory(Writer out, int offset, int limit, Predicate<RentalRecord> filter) throws IOException {
+    	ReportWriter report = new ReportWriter(out);
+        if (rentalHistory.isEmpty()) {
+            report.line("  No rental history found.");
+            report.flush();
+            return 0;
         }
+        // Header with proper column widths
+        report.historyHeader();
+        
+        int row = rentalHistory.skipRecords(0, offset, filter);
+        int written = 0;
+        List<RentalRecord> batch = new ArrayList<>(REPORT_BATCH);
+        while (written < limit) {
+        	int wanted = Math.min(REPORT_BATCH, limit - written);
+        	batch.clear();
+        	row = rentalHistory.readRecords(row, wanted, filter, batch);
+        	for (RentalRecord record : batch) {
+        		report.historyRow(record);
+        	}
+        	written += batch.size();
+        	if (batch.size() < wanted) {
+        		break;  //Reached the end of the history.
+        	}
+        }
+        report.line("");
+        report.flush();
+        return written;
+    }
+    
+    public RentalSystemMetrics getMetrics() {
+    	return metrics;
+    }
+    
+    public RentalHistory getRentalHistory() {
+    	return rentalHistory;
     }
     
     public Vehicle findVehicleByPlate(String plate) {
-        for (Vehicle v : vehicles) {
-            if (v.getLicensePlate().equalsIgnoreCase(plate)) {
-                return v;
-            }
-        }
-        return null;
+        return vehiclesByPlate.get(plate);
+    }
+    
+    //Customers whose name contains the text, ignoring case, found through the name index.
+    public List<Customer> findCustomersByName(String text) {
+    	return customersFor(customerNames.findBySubstring(text));
+    }
+    
+    //Customers whose name starts with the text, ignoring case, in name order.
+    public List<Customer> findCustomersByNamePrefix(String text) {
+    	return customersFor(customerNames.findByPrefix(text));
+    }
+    
+    private List<Customer> customersFor(List<Integer> ids) {
+    	List<Customer> result = new ArrayList<>(ids.size());
+    	for (int id : ids) {
+    		Customer customer = customersById.get(id);
+    		if (customer != null) {
+    			result.add(customer);  //Customers only seen in records aren't registered, so they are left out.
+    		}
+    	}
+    	return result;
     }
     
     public Customer findCustomerById(int id) {
-        for (Customer c : customers)
-            if (c.getCustomerId() == id)
-                return c;
-        return null;
+        return customersById.get(id);
+    }
+    
+    //Adds the vehicle to both the list and the plate index so they stay in sync.
+    private void registerVehicle(Vehicle vehicle) {
+    	synchronized (vehicles) {
+    		vehicles.add(vehicle);
+    		statusIndex.register(vehicle);
+    		reservations.register(vehicle);
+    	}
+        vehiclesByPlate.putIfAbsent(vehicle, vehicle);
+    }
+    
+    //Adds the customer to both the list and the id index so they stay in sync.
+    private void registerCustomer(Customer customer) {
+    	synchronized (customers) {
+    		customers.add(customer);
+    	}
+        customersById.putIfAbsent(customer.getCustomerId(), customer);
+        customerNames.add(customer);
+    }
+    
+    //The calls below apply changes shipped from a primary to a follower's copy. Nothing is saved, and a change the
+    //copy already has is ignored, since a follower's snapshot and the changes after it can overlap.
+    
+    void replicateVehicle(Vehicle vehicle) {
+    	if (vehiclesByPlate.putIfAbsent(vehicle, vehicle) == null) {
+    		synchronized (vehicles) {
+    			vehicles.add(vehicle);
+    			statusIndex.register(vehicle);
+    			reservations.register(vehicle);
+    		}
+    	}
+    }
+    
+    void replicateCustomer(Customer customer) {
+    	if (customersById.putIfAbsent(customer.getCustomerId(), customer) == null) {
+    		synchronized (customers) {
+    			customers.add(customer);
+    		}
+    		customerNames.add(customer);
+    	}
+    }
+    
+    //Adds the record at the end of the history. Statuses are replicated on their own, so the vehicle's is left alone.
+    void replicateRecord(Vehicle vehicle, Customer customer, long epochDay, double amount, String recordType) {
+    	rentalHistory.addRecord(vehicle, customer, epochDay, amount, recordType);
+    }
+    
+    //Applies a RESERVE or RELEASE line. A reservation that is already open is kept as it is.
+    void replicateReservation(String line) {
+    	TextRentalStore.readReservation(line, loader);
+    }
+    
+    //Copies the customer list, in the order customers were added.
+    public List<Customer> getCustomers() {
+    	synchronized (customers) {
+    		return new ArrayList<>(customers);
+    	}
     }
     
     //Saves Vehicle details
     public void saveVehicle(Vehicle vehicle) {
+    	long start = System.nanoTime();
     	try {
-			BufferedWriter writer  = new BufferedWriter(new FileWriter("vehicles.txt",true)); //Writes to the vehicles.txt in append mode.
-			String type;
-			
-			if (vehicle instanceof Car) {
-                type = "Car";
-				Car car = (Car) vehicle;
-				writer.write(type + "," + vehicle.getLicensePlate() + "," + vehicle.getMake() + "," +
-								vehicle.getModel() + "," + vehicle.getYear() + "," + car.getNumSeats()
-				);
-		   }
-		   else if (vehicle instanceof Minibus) {
-                type = "Minibus";
-                Minibus minibus = (Minibus) vehicle;
-                writer.write(type + "," + vehicle.getLicensePlate() + "," +
-						vehicle.getMake() + "," + vehicle.getModel() + "," + vehicle.getYear() + "," + minibus.getIsAccessible()
-				);
-		   }
-		   else {
-			   type = "PickupTruck";
-			   
-			   PickupTruck pickupTruck = (PickupTruck) vehicle;
-			   
-			   writer.write(type + "," + vehicle.getLicensePlate() + "," + vehicle.getMake() + "," + 
-					   vehicle.getModel() + "," + vehicle.getYear() +  "," + pickupTruck.getCargoSize() +  "," + pickupTruck.hasTrailer()
-				);
-			   
-		   }
-			writer.newLine(); // creates a newline after inserting the vehicle details.
-			writer.close();
+			store.saveVehicle(vehicle);
+			metrics.record(RentalSystemMetrics.Operation.SAVE_VEHICLE, start, true);
 			
 		} catch (IOException e) {
+			metrics.record(RentalSystemMetrics.Operation.SAVE_VEHICLE, start, false);
 			e.printStackTrace();
 		}
     	
     }
-    //Saves the customers details to a file.
+    
+    //Saves a new reservation.
+    private void saveReservation(Reservation reservation) {
+    	try {
+    		store.saveReservation(reservation);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    	reservationChanged(TextRentalStore.reservationLine(reservation));
+    }
+    
+    //Saves that a reservation was cancelled or picked up.
+    private void saveRelease(long reservationId) {
+    	try {
+    		store.saveRelease(reservationId);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    	reservationChanged(TextRentalStore.releaseLine(reservationId));
+    }
+    
+    private void reservationChanged(String line) {
+    	ChangeListener listener = changeListener;
+    	if (listener != null) {
+    		listener.reservationChanged(line);
+    	}
+    }
+    
+    //Saves the customers details.
     public void saveCustomer(Customer customer) {
+    	long start = System.nanoTime();
     	try {
-			BufferedWriter writer  = new BufferedWriter(new FileWriter("customers.txt",true)); //saves the customers details to customers.txt in append mode
-			writer.write(customer.getCustomerId() + "," + customer.getCustomerName() );
-			writer.newLine(); // creates a newline after inserting the customer details.
-			writer.close();
+			store.saveCustomer(customer);
+			metrics.record(RentalSystemMetrics.Operation.SAVE_CUSTOMER, start, true);
 			
 		} catch (IOException e) {
+			metrics.record(RentalSystemMetrics.Operation.SAVE_CUSTOMER, start, false);
 			e.printStackTrace();
 		}
     	
     }
     
-    	//Saves both the rent and return records to a file
+    	//Saves both the rent and return records
      public void saveRecord(RentalRecord record) {
+    	long start = System.nanoTime();
         try {
-    		BufferedWriter writer  = new BufferedWriter(new FileWriter("rental_records.txt",true)); //saves the rental record details to rental_records in append mode.
-    		//Gets both the vehicle and customer objects
-    		Vehicle vehicle = record.getVehicle();
-    		Customer customer = record.getCustomer();
-    		
-    		//Writes to the file by using licencePlate,customer id and record details
-    		writer.write(vehicle.getLicensePlate()+ "," + customer.getCustomerId() +  "," + record.getRecordDate() +   "," +
-    			record.getTotalAmount() + "," + record.getRecordType());
-    			
-    		
-    		writer.newLine(); // creates a newline after inserting the rental details.
-    		writer.close();
+    		store.saveRecord(record);
+    		metrics.record(RentalSystemMetrics.Operation.SAVE_RECORD, start, true);
     			
     	} catch (IOException e) {
+    		metrics.record(RentalSystemMetrics.Operation.SAVE_RECORD, start, false);
     		e.printStackTrace();
     	}
-        	
+        recordsSinceCheckpoint.incrementAndGet();
      }
      
-     private void loadData() {
-     	
-     	loadVehicles();  //Calls this method so vehicles are loaded from vehicles.txt
-     	loadCustomers();  //Calls this method so customers are loaded from customer.txt
-     	loadRecords();  //Calls this method so records are loaded from rental_records.txt
+     //Tells the change listener, if there is one, about a record added at the given row of the history.
+     private void recordAdded(int row, RentalRecord record) {
+     	ChangeListener listener = changeListener;
+     	if (listener != null) {
+     		listener.recordAdded(row, record);
+     	}
+     }
+     
+     //Imports vehicles from CSV lines in the vehicles.txt format (type,plate,make,model,year,...).
+     //Plates already in the system or earlier in the same import are skipped as duplicates, and rows that
+     //can't be parsed are reported with their line number. Everything accepted is saved in one write.
+     public ImportReport importVehicles(Reader in) throws IOException {
+     	ImportReport report = new ImportReport();
+     	List<Vehicle> accepted = new ArrayList<>();
+     	readImport(in, report, (row, line) -> {
+     		Vehicle vehicle = TextRentalStore.parseVehicle(line);
+     		//Claiming the plate in the index is the duplicate check, against the fleet and the import alike.
+     		if (vehiclesByPlate.putIfAbsent(vehicle, vehicle) != null) {
+     			report.duplicate(row, line, "Plate " + vehicle.getLicensePlate() + " is already in the system");
+     			return;
+     		}
+     		accepted.add(vehicle);
+     	});
+     	synchronized (vehicles) {
+     		for (Vehicle vehicle : accepted) {
+     			vehicles.add(vehicle);
+     			statusIndex.register(vehicle);
+     			reservations.register(vehicle);
+     		}
+     	}
+     	store.saveVehicles(accepted);
+     	ChangeListener listener = changeListener;
+     	if (listener != null) {
+     		for (Vehicle vehicle : accepted) {
+     			listener.vehicleAdded(vehicle);
+     		}
+     	}
+     	report.imported(accepted.size());
+     	return report;
      }
      
-     private void loadVehicles() {
+     //Imports customers from CSV lines in the customers.txt format (id,name), skipping ids that are already taken.
+     public ImportReport importCustomers(Reader in) throws IOException {
+     	ImportReport report = new ImportReport();
+     	List<Customer> accepted = new ArrayList<>();
+     	readImport(in, report, (row, line) -> {
+     		Customer customer = TextRentalStore.parseCustomer(line);
+     		if (customersById.putIfAbsent(customer.getCustomerId(), customer) != null) {
+     			report.duplicate(row, line, "Customer id " + customer.getCustomerId() + " is already in the system");
+     			return;
+     		}
+     		accepted.add(customer);
+     	});
+     	synchronized (customers) {
+     		customers.addAll(accepted);
+     	}
+     	for (Customer customer : accepted) {
+     		customerNames.add(customer);
+     	}
+     	store.saveCustomers(accepted);
+     	ChangeListener listener = changeListener;
+     	if (listener != null) {
+     		for (Customer customer : accepted) {
+     			listener.customerAdded(customer);
+     		}
+     	}
+     	report.imported(accepted.size());
+     	return report;
+     }
+     
+     //Imports historical records from CSV lines in the rental_records.txt format (plate,customerId,date,amount,type).
+     //Their vehicles and customers must already be in the system. The records are replayed in order the same way
+     //startup replays rental_records.txt, so the last record of each vehicle decides its status.
+     public ImportReport importRecords(Reader in) throws IOException {
+     	ImportReport report = new ImportReport();
+     	List<RentalRecord> accepted = new ArrayList<>();
+     	readImport(in, report, (row, line) -> {
+     		RentalRecord record = TextRentalStore.parseRecord(line, loader);
+     		if (record == null) {
+     			report.error(row, line, "Unknown vehicle or customer");
+     		} else if (!record.getRecordType().equals("RENT") && !record.getRecordType().equals("RETURN")) {
+     			report.error(row, line, "Unknown record type " + record.getRecordType());
+     		} else {
+     			accepted.add(record);
+     		}
+     	});
+     	lockAll();  //Holds off rentals and returns so the replayed statuses and the log stay in step.
      	try {
-     		File file = new File("vehicles.txt");
-    		if (!file.exists()) {
-    		    return;  // skips the method since the file hasnt been created yet.
-    		}
-			BufferedReader reader = new BufferedReader(new FileReader(file));
- 			String line;
- 			while((line = reader.readLine()) != null) {
- 				//Moves to next line if the line is empty
- 				 if (line.trim().isEmpty()) {
- 				        continue;
- 				    }
- 				
- 				String[] data = line.split(",");   //Reads in the data of the line into any array by splitting it with a comma
- 				
- 				//Gets the necessary fields of the vehicle using the order in which they were saved.
- 				String type = data[0];  
- 				String licensePlate = data[1];
- 				String make = data[2];
- 				String model = data[3];
- 				int year =Integer.parseInt(data[4]);
- 				Vehicle vehicle = null;
- 				
- 				if(type.equals("Car")) {
- 					int numSeats = Integer.parseInt(data[5]);
- 					vehicle = new Car(make,model,year,numSeats);
- 				}
- 				else if(type.equals("Minibus")) {
- 					boolean isAccessible = Boolean.parseBoolean(data[5]);
- 					vehicle = new Minibus(make,model,year,isAccessible);
- 				}
- 				else {
- 					double cargoSize = Double.parseDouble(data[5]);
- 					boolean hasTrailer = Boolean.parseBoolean(data[6]);
- 					vehicle = new PickupTruck(make,model,year,cargoSize,hasTrailer);
- 				}
- 				
- 				if(vehicle != null) {
- 					vehicle.setLicensePlate(licensePlate);
- 					vehicles.add(vehicle); //Adds the vehicle to the list 
- 				}	
- 			}
- 			reader.close();
- 		} catch (IOException e) {
- 			e.printStackTrace();
- 		}
+     		for (RentalRecord record : accepted) {
+     			int row = rentalHistory.addRecord(record);
+     			record.getVehicle().setStatus(record.getRecordType().equals("RENT")
+     					? Vehicle.VehicleStatus.Rented : Vehicle.VehicleStatus.Available);
+     			recordAdded(row, record);
+     		}
+     		store.saveRecords(accepted);
+     		recordsSinceCheckpoint.addAndGet(accepted.size());
+     	} finally {
+     		unlockAll();
+     	}
+     	compactIfDue();
+     	report.imported(accepted.size());
+     	return report;
+     }
+     
+     //Handles one line of an import. It may throw on a malformed line, which is then reported as an error.
+     private interface ImportRow {
+     	void accept(int row, String line);
+     }
+     
+     //Reads the import line by line, skipping blank lines and reporting any line that fails to parse.
+     private void readImport(Reader in, ImportReport report, ImportRow handler) throws IOException {
+     	BufferedReader reader = new BufferedReader(in, 1 << 16);
+     	String line;
+     	int row = 0;
+     	while ((line = reader.readLine()) != null) {
+     		row++;
+     		if (line.trim().isEmpty()) {
+     			continue;
+     		}
+     		try {
+     			handler.accept(row, line);
+     		} catch (RuntimeException e) {
+     			//Missing fields, bad numbers or dates, and invalid plates all end up here.
+     			report.error(row, line, e.getClass().getSimpleName() + ": " + e.getMessage());
+     		}
+     	}
      }
-     private void loadCustomers() {
+     
+     //Compacts the log once enough records have been written since the last checkpoint.
+     private void compactIfDue() {
+     	if (CHECKPOINT_RECORDS > 0 && recordsSinceCheckpoint.get() >= CHECKPOINT_RECORDS) {
+     		compact(true);
+     	}
+     }
+     
+     //Saves the status of every vehicle, so the next startup only has to replay the records saved after this point.
+     public void checkpoint() {
+     	lockAll();  //Holds off rentals and returns so the statuses match the records saved so far.
      	try {
-     		File file = new File("customers.txt");
-    		if (!file.exists()) {
-    		    return;  // skips the method since the file hasnt been created yet.
-    		}
-			BufferedReader reader = new BufferedReader(new FileReader(file));
- 			String line;
- 			while((line = reader.readLine()) != null) {
- 				//Moves to next line if the line is empty
- 				 if (line.trim().isEmpty()) {
- 				        continue;
- 				    }
- 				//Reads in the data of the line into any array by splitting it with a comma
- 				String[] data = line.split(",");
- 				
- 				//Gets both the customer id and name details from the array
- 				int customerId = Integer.parseInt(data[0]);
- 				String customerName = data[1];
- 				
- 				Customer customer = new Customer(customerId,customerName);  //Creates a customer object using details read from the line
- 				customers.add(customer); //Adds the customer to the list
- 			}
- 			reader.close();
- 		} catch (IOException e) {
- 			e.printStackTrace();
- 		}
+     		store.checkpoint(vehicleSnapshot());
+     		recordsSinceCheckpoint.set(0);
+     	} catch (IOException e) {
+     		e.printStackTrace();
+     	} finally {
+     		unlockAll();
+     	}
      }
-     private void loadRecords() {
+     
+     //Takes a checkpoint and lets the store shrink what the next startup reads, e.g. the text store moves every
+     //record before the checkpoint into rental_records_archive.txt.
+     public void compact() {
+     	compact(false);
+     }
+     
+     //Several threads can pass the threshold together, so when onlyIfDue is set it is checked again under
+     //the locks and only the first of them compacts.
+     private void compact(boolean onlyIfDue) {
+     	rentalHistory.ensureLoaded();  //Records still on disk have to be read before the log is moved away.
+     	rentalHistory.ensureCounted();  //As do the earlier records only the totals read.
+     	lockAll();  //Holds off rentals and returns while the log is swapped out.
      	try {
-     		File file = new File("rental_records.txt");
-    		if (!file.exists()) {
-    		    return;  // skips the method since the file hasnt been created yet.
-    		}
-			BufferedReader reader = new BufferedReader(new FileReader(file));
- 			String line;
- 			while((line = reader.readLine()) != null) {
- 				//Moves to next line if the line is empty
- 			    if (line.trim().isEmpty()) {
- 			       continue;
- 			    }
- 				String[] data = line.split(",");
- 				
- 				//Finds the vehicle and customer objects using licensePlate and customerId.
- 				Vehicle vehicle = findVehicleByPlate(data[0]);
- 				Customer customer = findCustomerById(Integer.parseInt(data[1]));
- 				
- 				//Checks if either objects are null
- 				if(vehicle == null || customer == null) {
- 					continue; //Moves to next line to prevent any errors
- 				}
- 				LocalDate recordDate = LocalDate.parse(data[2]);
- 				double amount = Double.parseDouble(data[3]);
- 				String recordType = data[4];
- 				
- 				RentalRecord record =  new RentalRecord(vehicle,customer,recordDate,amount,recordType); //Creates record object using all the fields.
- 				rentalHistory.addRecord(record); //Adds record to rentalHistory
- 				
- 				//Sets the status of the vehicle depending on the recordType
- 	            if (recordType.equals("RENT")) {
- 	                vehicle.setStatus(Vehicle.VehicleStatus.Rented);
- 	            } 
- 	            else if (recordType.equals("RETURN")) {
- 	                vehicle.setStatus(Vehicle.VehicleStatus.Available);
- 	            }
- 				
- 			
- 			}
- 			reader.close();
- 		} catch (IOException e) {
- 			e.printStackTrace();
- 		}
+     		if (onlyIfDue && recordsSinceCheckpoint.get() < CHECKPOINT_RECORDS) {
+     			return;  //Another thread compacted first.
+     		}
+     		store.compact(vehicleSnapshot());
+     		recordsSinceCheckpoint.set(0);
+     	} catch (IOException e) {
+     		e.printStackTrace();
+     	} finally {
+     		unlockAll();
+     	}
      }
-    	
-    
-
-    
-}
\ No newline at end of file
+     
+     //Writes out anything still waiting in the store's queue or buffers.
+     public void flush() {
+     	try {
+     		store.flush();
+     	} catch (IOException e) {
+     		e.printStackTrace();
+     	}
+     }
+     
+     //Flushes pending saves and releases the store's files. They are reopened if anything is saved afterwards.
+     public void close() {
+     	try {
+     		store.close();
+     	} catch (IOException e) {
+     		e.printStackTrace();
+     	}
+     }
+     
+     private void loadData() {
+     	long start = System.nanoTime();
+     	
+     	try {
+     		store.loadVehicles(loader);  //Loads the saved vehicles
+     		metrics.record(RentalSystemMetrics.Operation.LOAD_VEHICLES, start, true);
+     		
+     		long phase = System.nanoTime();
+     		store.loadCustomers(loader);  //Loads the saved customers
+     		metrics.record(RentalSystemMetrics.Operation.LOAD_CUSTOMERS, phase, true);
+     		
+     		phase = System.nanoTime();
+     		store.loadRecords(loader);  //Replays the saved records, which sets the vehicle statuses
+     		metrics.record(RentalSystemMetrics.Operation.LOAD_RECORDS, phase, true);
+     		
+     		store.loadReservations(loader);  //Loads open reservations, after the records have set the statuses.
+     	} catch (IOException e) {
+     		e.printStackTrace();
+     	}
+     	//Statuses from the records or the checkpoint don't know about today's reservations.
+     	if (reservations.size() > 0 || statusIndex.count(Vehicle.VehicleStatus.Held) > 0) {
+     		refreshHolds(LocalDate.now());
+     	}
+     	
+     	metrics.setStartupMillis((System.nanoTime() - start) / 1_000_000);
+     }
+     
+     //Adds what the store loads to the lists and indexes. Records are replayed the way they were made, so the last
+     //record of each vehicle decides its status.
+     private class StoreLoader implements RentalStore.Loader {
+     	@Override
+     	public void addVehicle(Vehicle vehicle) {
+     		registerVehicle(vehicle);
+     	}
+     	
+     	@Override
+     	public void addCustomer(Customer customer) {
+     		registerCustomer(customer);
+     	}
+     	
+     	@Override
+     	public Vehicle findVehicle(String plate) {
+     		return findVehicleByPlate(plate);
+     	}
+     	
+     	@Override
+     	public Vehicle findVehicle(int plateCode) {
+     		return vehiclesByPlate.getByCode(plateCode);
+     	}
+     	
+     	@Override
+     	public Customer findCustomer(int id) {
+     		return findCustomerById(id);
+     	}
+     	
+     	@Override
+     	public void addRecord(Vehicle vehicle, Customer customer, long epochDay, double amount, String recordType) {
+     		rentalHistory.addRecord(vehicle, customer, epochDay, amount, recordType);
+     		if (recordType.equals("RENT")) {
+     			vehicle.setStatus(Vehicle.VehicleStatus.Rented);
+     		} else if (recordType.equals("RETURN")) {
+     			vehicle.setStatus(Vehicle.VehicleStatus.Available);
+     		}
+     	}
+     	
+     	@Override
+     	public void setLazyHistory(HistorySegment segment) {
+     		rentalHistory.setLazyBase(segment);
+     	}
+     	
+     	@Override
+     	public void setEarlierRecords(RentalStore.EarlierRecords records) {
+     		rentalHistory.setEarlierRecords(records);
+     	}
+     	
+     	@Override
+     	public void addReservation(Reservation reservation) {
+     		reservations.add(reservation);
+     	}
+     	
+     	@Override
+     	public void releaseReservation(long id) {
+     		reservations.remove(id);
+     	}
+     }
+}
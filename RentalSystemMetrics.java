@@ -0,0 +1,196 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.ConstructorParameters;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//Counters and latency histograms for the rental system's operations, published over JMX.
+//Recording only touches LongAdders and atomic arrays set up in advance, so it takes no locks and allocates nothing.
+//Latencies go into power-of-two nanosecond buckets, which puts each percentile within a factor of two.
+public class RentalSystemMetrics implements RentalSystemMetricsMXBean {
+
+	public enum Operation {
+		RENT, RETURN, ADD_VEHICLE, ADD_CUSTOMER, SAVE_VEHICLE, SAVE_CUSTOMER, SAVE_RECORD,
+		LOAD_VEHICLES, LOAD_CUSTOMERS, LOAD_RECORDS
+	}
+
+	//Bucket i counts latencies from 2^i up to 2^(i+1) nanoseconds.
+	private static final int BUCKETS = 64;
+
+	//Live counters for one operation.
+	private static class Counters {
+		final LongAdder successes = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		void reset() {
+			successes.reset();
+			failures.reset();
+			totalNanos.reset();
+			maxNanos.reset();
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets.set(i, 0);
+			}
+		}
+	}
+
+	//A copy of one operation's numbers, shown as composite data over JMX.
+	public static class OperationStats {
+		private final long successes;
+		private final long failures;
+		private final double meanMicros;
+		private final double p50Micros;
+		private final double p99Micros;
+		private final double maxMicros;
+
+		@ConstructorParameters({"successes", "failures", "meanMicros", "p50Micros", "p99Micros", "maxMicros"})
+		public OperationStats(long successes, long failures, double meanMicros, double p50Micros, double p99Micros, double maxMicros) {
+			this.successes = successes;
+			this.failures = failures;
+			this.meanMicros = meanMicros;
+			this.p50Micros = p50Micros;
+			this.p99Micros = p99Micros;
+			this.maxMicros = maxMicros;
+		}
+
+		public long getSuccesses() { return successes; }
+
+		public long getFailures() { return failures; }
+
+		public double getMeanMicros() { return meanMicros; }
+
+		public double getP50Micros() { return p50Micros; }
+
+		public double getP99Micros() { return p99Micros; }
+
+		public double getMaxMicros() { return maxMicros; }
+
+		@Override
+		public String toString() {
+			return String.format("ok=%d failed=%d mean=%.1fus p50<%.1fus p99<%.1fus max=%.1fus",
+					successes, failures, meanMicros, p50Micros, p99Micros, maxMicros);
+		}
+	}
+
+	private final Map<Operation, Counters> counters = new EnumMap<>(Operation.class);
+	private final Supplier<Map<Vehicle.VehicleStatus, Integer>> fleet;
+	private volatile long startupMillis;
+	private ObjectName registeredName;
+
+	public RentalSystemMetrics(Supplier<Map<Vehicle.VehicleStatus, Integer>> fleet) {
+		this.fleet = fleet;
+		for (Operation operation : Operation.values()) {
+			counters.put(operation, new Counters());
+		}
+	}
+
+	//Records one call that started at startNanos (from System.nanoTime) and has just finished.
+	public void record(Operation operation, long startNanos, boolean success) {
+		long nanos = Math.max(1, System.nanoTime() - startNanos);
+		Counters c = counters.get(operation);
+		(success ? c.successes : c.failures).increment();
+		c.totalNanos.add(nanos);
+		c.maxNanos.accumulate(nanos);
+		c.buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	void setStartupMillis(long millis) {
+		startupMillis = millis;
+	}
+
+	//Registers the metrics with the platform MBean server. Failing to register is reported but not fatal.
+	public void register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(this, objectName);
+				registeredName = objectName;
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void unregister() {
+		if (registeredName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		registeredName = null;
+	}
+
+	public OperationStats getStats(Operation operation) {
+		Counters c = counters.get(operation);
+		long successes = c.successes.sum();
+		long failures = c.failures.sum();
+		long calls = successes + failures;
+		double mean = calls == 0 ? 0 : c.totalNanos.sum() / (double) calls / 1000.0;
+		return new OperationStats(successes, failures, mean, percentile(c, 0.50), percentile(c, 0.99), c.maxNanos.get() / 1000.0);
+	}
+
+	//Returns the upper edge of the bucket the percentile falls in, in microseconds.
+	private static double percentile(Counters c, double fraction) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = c.buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.scalb(1.0, i + 1) / 1000.0;
+			}
+		}
+		return Math.scalb(1.0, BUCKETS) / 1000.0;
+	}
+
+	@Override
+	public Map<String, OperationStats> getOperations() {
+		Map<String, OperationStats> result = new LinkedHashMap<>();
+		for (Operation operation : Operation.values()) {
+			result.put(operation.name(), getStats(operation));
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Integer> getFleetByStatus() {
+		Map<String, Integer> result = new LinkedHashMap<>();
+		for (Map.Entry<Vehicle.VehicleStatus, Integer> entry : fleet.get().entrySet()) {
+			result.put(entry.getKey().name(), entry.getValue());
+		}
+		return result;
+	}
+
+	@Override
+	public long getStartupMillis() {
+		return startupMillis;
+	}
+
+	@Override
+	public void reset() {
+		for (Counters c : counters.values()) {
+			c.reset();
+		}
+	}
+}
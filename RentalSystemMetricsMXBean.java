@@ -0,0 +1,17 @@
+import java.util.Map;
+
+//Management interface for RentalSystemMetrics. The singleton rental system registers it as RentalSystem:type=Metrics.
+public interface RentalSystemMetricsMXBean {
+
+	//Counts and latencies for every measured operation, keyed by the operation's name.
+	Map<String, RentalSystemMetrics.OperationStats> getOperations();
+
+	//The number of vehicles with each status right now.
+	Map<String, Integer> getFleetByStatus();
+
+	//How long the last load of the data files took, in milliseconds.
+	long getStartupMillis();
+
+	//Clears the counters and histograms. The fleet gauges are live and not affected.
+	void reset();
+}
@@ -0,0 +1,254 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//A read-only copy of a RentalSystem kept up to date by a ReplicationPrimary, so availability searches, fleet
+//listings and history queries can be served away from the primary. The changes the primary ships are applied
+//on one background thread, in the order it made them, to a RentalSystem over an InMemoryRentalStore.
+//Reads can run at any time and see the copy as of the last change applied; getLagMillis tells how old that is.
+//A follower whose connection drops keeps serving what it has; a new follower gets a fresh snapshot.
+public class ReplicaFollower implements Closeable {
+
+	private final Socket socket;
+	private final RentalSystem replica = new RentalSystem(new InMemoryRentalStore());  //Changes are applied without saving them.
+
+	//Records that arrived before the rows in front of them, or, in the snapshot, before their vehicle. Only touched by the applying thread.
+	private final TreeMap<Integer, String> pendingRecords = new TreeMap<>();
+	private int nextRow;
+
+	//Vehicles and customers that records use but that were never added to the primary's fleet or customer list.
+	//Kept so their records share one object each, as on the primary. Only touched by the applying thread.
+	private final Map<String, Vehicle> outsideVehicles = new HashMap<>();
+	private final Map<Integer, Customer> outsideCustomers = new HashMap<>();
+
+	private volatile long appliedSequence;
+	private volatile long primaryMillis;  //The primary's clock on the newest line applied.
+	private volatile boolean live;  //The snapshot has been applied.
+	private volatile boolean connected = true;
+
+	//Connects to the primary and starts applying its snapshot and changes in the background.
+	public ReplicaFollower(String host, int port) throws IOException {
+		socket = new Socket(host, port);
+		Thread applier = new Thread(this::applyLoop, "replica-follower");
+		applier.setDaemon(true);
+		applier.start();
+	}
+
+	//How far the copy is behind the primary: the time since the primary sent the newest change or heartbeat
+	//applied here. The primary sends a heartbeat every 100ms, so an idle, connected follower stays under that.
+	//-1 until the snapshot has been applied. Both ends are expected to share a clock, as on loopback.
+	public long getLagMillis() {
+		return live ? Math.max(0, System.currentTimeMillis() - primaryMillis) : -1;
+	}
+
+	//The primary's number for the newest change applied here, to compare with ReplicationPrimary.getSequence.
+	public long getAppliedSequence() {
+		return appliedSequence;
+	}
+
+	public boolean isLive() {
+		return live;
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	//Waits until the change with the given number has been applied. Returns false if the time runs out first
+	//or the connection drops.
+	public synchronized boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!live || appliedSequence < sequence) {
+			long left = deadline - System.currentTimeMillis();
+			if (left <= 0 || !connected) {
+				return false;
+			}
+			wait(left);
+		}
+		return true;
+	}
+
+	//The read API of the copy. Vehicles and records returned belong to the copy and are only read.
+
+	public Vehicle findVehicleByPlate(String plate) {
+		return replica.findVehicleByPlate(plate);
+	}
+
+	public Customer findCustomerById(int id) {
+		return replica.findCustomerById(id);
+	}
+
+	public List<Vehicle> getVehicles(Vehicle.VehicleStatus status) {
+		return replica.getVehicles(status);
+	}
+
+	public int countVehicles(Vehicle.VehicleStatus status) {
+		return replica.countVehicles(status);
+	}
+
+	public Map<Vehicle.VehicleStatus, Integer> getStatusCounts() {
+		return replica.getStatusCounts();
+	}
+
+	public List<Vehicle> findAvailableVehicles(String vehicleType, LocalDate from, LocalDate to) {
+		return replica.findAvailableVehicles(vehicleType, from, to);
+	}
+
+	public List<Reservation> getReservations(Vehicle vehicle) {
+		return replica.getReservations(vehicle);
+	}
+
+	public List<Customer> findCustomersByName(String text) {
+		return replica.findCustomersByName(text);
+	}
+
+	public RentalHistory getRentalHistory() {
+		return replica.getRentalHistory();
+	}
+
+	//Disconnects from the primary. The copy can still be read.
+	@Override
+	public void close() throws IOException {
+		connected = false;
+		socket.close();
+		replica.close();
+	}
+
+	private void applyLoop() {
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				apply(line);
+			}
+		} catch (SocketException e) {
+			//The primary went away or this follower is closing.
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			connected = false;
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	//Applies one line from the primary. See ReplicationPrimary for the format.
+	private void apply(String line) {
+		String[] data = line.split(",", 4);
+		String payload = data.length > 3 ? data[3] : "";
+		try {
+			switch (data[0]) {
+				case "V":
+					int comma = payload.indexOf(',');
+					Vehicle vehicle = TextRentalStore.parseVehicle(payload.substring(comma + 1));
+					if (replica.findVehicleByPlate(vehicle.getLicensePlate()) == null) {
+						vehicle.setStatus(Vehicle.VehicleStatus.valueOf(payload.substring(0, comma)));
+						replica.replicateVehicle(vehicle);
+						applyPendingRecords();
+					}
+					break;
+				case "W":
+					int statusEnd = payload.indexOf(',');
+					Vehicle outside = TextRentalStore.parseVehicle(payload.substring(statusEnd + 1));
+					outside.setStatus(Vehicle.VehicleStatus.valueOf(payload.substring(0, statusEnd)));
+					outsideVehicles.putIfAbsent(outside.getLicensePlate(), outside);
+					break;
+				case "C":
+					String[] customer = payload.split(",", 2);
+					replica.replicateCustomer(new Customer(Integer.parseInt(customer[0]), customer[1]));
+					applyPendingRecords();
+					break;
+				case "S":
+					replica.replicateReservation(payload);
+					break;
+				case "R":
+					int rowEnd = payload.indexOf(',');
+					int row = Integer.parseInt(payload.substring(0, rowEnd));
+					if (row >= nextRow) {  //Rows below it came in the snapshot already.
+						pendingRecords.put(row, payload.substring(rowEnd + 1));
+						applyPendingRecords();
+					}
+					break;
+				case "T":
+					String[] status = payload.split(",");
+					Vehicle changed = replica.findVehicleByPlate(status[0]);
+					if (changed != null) {
+						changed.setStatus(Vehicle.VehicleStatus.valueOf(status[1]));
+					}
+					break;
+				case "L":
+					live = true;
+					break;
+				default:
+					break;  //H, and anything a newer primary sends that this follower doesn't know.
+			}
+		} catch (RuntimeException e) {
+			System.out.println("Error: Skipping replicated line " + line + ": " + e.getMessage());
+		}
+		primaryMillis = Long.parseLong(data[2]);
+		long sequence = Long.parseLong(data[1]);
+		if (sequence > appliedSequence) {
+			appliedSequence = sequence;
+		}
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	//Adds the waiting records to the history in row order, stopping at a gap or at a record whose vehicle hasn't
+	//arrived yet. That only happens in the snapshot, for a vehicle added after the snapshot listed the fleet, and
+	//the vehicle's V line follows. A record that can't be read is reported and its row skipped, so one bad line
+	//doesn't hold up the history for good.
+	private void applyPendingRecords() {
+		while (!pendingRecords.isEmpty() && pendingRecords.firstKey() <= nextRow) {
+			Map.Entry<Integer, String> first = pendingRecords.firstEntry();
+			if (first.getKey() < nextRow) {
+				pendingRecords.pollFirstEntry();  //Sent twice.
+				continue;
+			}
+			try {
+				if (!applyRecord(first.getValue())) {
+					return;
+				}
+			} catch (CsvTokenizer.FieldException e) {
+				System.out.println("Error: Skipping replicated record " + first.getKey() + " (" + first.getValue() + "): " + e.getMessage());
+			}
+			pendingRecords.pollFirstEntry();
+			nextRow++;
+		}
+	}
+
+	//Adds one record line (rental_records.txt fields, then the customer's name) to the history. Returns false if
+	//its vehicle hasn't arrived yet.
+	private boolean applyRecord(String line) {
+		CsvTokenizer record = CsvTokenizer.of(line);
+		String plate = record.next("plate").asString();
+		Vehicle vehicle = replica.findVehicleByPlate(plate);
+		if (vehicle == null) {
+			vehicle = outsideVehicles.get(plate);
+		}
+		if (vehicle == null) {
+			return false;
+		}
+		int customerId = record.next("customer id").asInt();
+		long day = record.next("date").asEpochDay();
+		double amount = record.next("amount").asDecimal();
+		String type = record.next("type").asString();
+		String name = record.rest("customer name").asString();
+		Customer customer = replica.findCustomerById(customerId);
+		if (customer == null) {
+			customer = outsideCustomers.computeIfAbsent(customerId, id -> new Customer(id, name));
+		}
+		replica.replicateRecord(vehicle, customer, day, amount, type.equals("RENT") ? "RENT" : type.equals("RETURN") ? "RETURN" : type);
+		return true;
+	}
+}
@@ -0,0 +1,314 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+//Ships every change made to a RentalSystem to read-only ReplicaFollowers over a socket on the loopback address.
+//A follower that connects is first sent a snapshot of the fleet, the customers, the open reservations and the
+//history, then every change made since, in the order it was made. One line per change:
+//
+//  V,<seq>,<millis>,<status>,<vehicles.txt line with plain make and model>
+//  C,<seq>,<millis>,<customers.txt line>
+//  S,<seq>,<millis>,<reservations.txt line>
+//  W,<seq>,<millis>,<status>,<vehicles.txt line>   a vehicle a record uses that isn't in the fleet, sent before the record
+//  R,<seq>,<millis>,<row>,<rental_records.txt line>,<customer name>
+//  T,<seq>,<millis>,<plate>,<status>
+//  L,<seq>,<millis>                  end of the snapshot; everything after it is live
+//  H,<seq>,<millis>                  heartbeat
+//
+//seq counts the changes made since the primary started and is 0 on snapshot lines. millis is the primary's clock
+//when the line was queued, which followers compare with their own to report how far behind they are. A change
+//made while a snapshot is being read can be sent twice, once in the snapshot and once after it, so followers
+//apply each change only once: by plate, customer id, reservation id and history row.
+//
+//Rentals and returns don't wait on the primary: a change takes the next number from a counter and is left in a
+//concurrent map under it, and one shipping thread sends the changes on in number order. Changes to one vehicle
+//are made one at a time, so their numbers follow the order they were made in.
+public class ReplicationPrimary implements RentalSystem.ChangeListener, Closeable {
+
+	//Lines a follower can fall behind by before it is disconnected instead of being queued for without limit.
+	//It can connect again for a fresh snapshot.
+	private static final int BACKLOG = 100_000;
+	private static final long HEARTBEAT_MILLIS = 100;
+	private static final int SNAPSHOT_PAGE = 4096;
+
+	private final RentalSystem system;
+	private final ServerSocket serverSocket;
+	private final Set<Follower> followers = ConcurrentHashMap.newKeySet();
+	private final AtomicLong sequence = new AtomicLong();  //The last number handed to a change.
+	private final Map<Long, String> published = new ConcurrentHashMap<>();  //Numbered changes the shipper hasn't sent yet.
+	private final Thread shipper = daemon(this::shipLoop, "replication-shipper");
+	private volatile boolean shipperIdle;  //The shipper is parked or about to park, and wants waking for the next change.
+	private volatile boolean running = true;
+
+	//Left under a change's number when nobody follows, so the shipper can move past it without a line being built.
+	private static final String UNWATCHED = new String();
+
+	//Listens on the loopback address only. Port 0 picks a free port. Changes are numbered from here on, so the
+	//primary is created before the rental system is shared.
+	public ReplicationPrimary(RentalSystem system, int port) throws IOException {
+		this.system = system;
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		shipper.start();
+		system.setChangeListener(this);
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	//The number of the latest change. A follower that has applied it is up to date.
+	public long getSequence() {
+		return sequence.get();
+	}
+
+	public int getFollowerCount() {
+		return followers.size();
+	}
+
+	//Starts accepting followers on a background thread, and returns.
+	public void start() {
+		daemon(this::acceptLoop, "replication-accept").start();
+	}
+
+	//Stops shipping changes and disconnects every follower. The rental system is left open.
+	@Override
+	public void close() throws IOException {
+		running = false;
+		LockSupport.unpark(shipper);
+		system.setChangeListener(null);
+		serverSocket.close();
+		for (Follower follower : followers) {
+			follower.disconnect();
+		}
+	}
+
+	@Override
+	public void vehicleAdded(Vehicle vehicle) {
+		//The status is read once the change has its number, so it includes every T line numbered before it.
+		publish('V', () -> vehicle.getStatus() + "," + TextRentalStore.plainVehicleLine(vehicle));
+	}
+
+	@Override
+	public void customerAdded(Customer customer) {
+		publish('C', () -> customer.getCustomerId() + "," + customer.getCustomerName());
+	}
+
+	//Records can be made for vehicles and customers that were never added, so the record carries its customer's
+	//name, and its vehicle is sent ahead of it if the fleet doesn't hold it.
+	@Override
+	public void recordAdded(int row, RentalRecord record) {
+		if (system.findVehicleByPlate(record.getVehicle().getLicensePlate()) != record.getVehicle()) {
+			publish('W', () -> outsideVehicleLine(record.getVehicle()));
+		}
+		publish('R', () -> recordPayload(row, record));
+	}
+
+	@Override
+	public void reservationChanged(String line) {
+		publish('S', () -> line);
+	}
+
+	@Override
+	public void statusChanged(Vehicle vehicle, Vehicle.VehicleStatus from, Vehicle.VehicleStatus to) {
+		if (from != null) {  //A vehicle being registered is shipped by vehicleAdded with its status.
+			publish('T', () -> vehicle.getLicensePlate() + "," + to);
+		}
+	}
+
+	private static String outsideVehicleLine(Vehicle vehicle) {
+		return vehicle.getStatus() + "," + TextRentalStore.plainVehicleLine(vehicle);
+	}
+
+	private static String recordPayload(int row, RentalRecord record) {
+		return row + "," + TextRentalStore.recordLine(record) + "," + record.getCustomer().getCustomerName();
+	}
+
+	//Numbers the change and leaves it for the shipper. The line is only built if someone follows. Followers are
+	//checked after the number is taken: one added before that sees the change live, and one added after it has
+	//the change in its snapshot.
+	private void publish(char kind, Supplier<String> payload) {
+		long seq = sequence.incrementAndGet();
+		String line = UNWATCHED;
+		try {
+			if (!followers.isEmpty()) {
+				line = kind + "," + seq + "," + System.currentTimeMillis() + "," + payload.get();
+			}
+		} finally {
+			published.put(seq, line);  //Always filled, so the shipper never waits on a number for good.
+			if (shipperIdle) {
+				LockSupport.unpark(shipper);
+			}
+		}
+	}
+
+	//Sends the changes to the followers' queues in number order, waiting for a number whose change is still being
+	//published, and queues a heartbeat every HEARTBEAT_MILLIS.
+	private void shipLoop() {
+		long next = 1;
+		long lastHeartbeat = 0;
+		while (running) {
+			String line = published.remove(next);
+			if (line != null) {
+				next++;
+				if (line != UNWATCHED) {
+					queue(line);
+				}
+			} else {
+				shipperIdle = true;
+				if (!published.containsKey(next)) {  //Checked again after flagging, so a change published meanwhile isn't slept through.
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS));
+				}
+				shipperIdle = false;
+			}
+			long now = System.currentTimeMillis();
+			if (now - lastHeartbeat >= HEARTBEAT_MILLIS) {
+				lastHeartbeat = now;
+				if (!followers.isEmpty()) {
+					queue("H," + (next - 1) + "," + now);  //Every change up to next - 1 is queued ahead of it.
+				}
+			}
+		}
+	}
+
+	private void queue(String line) {
+		for (Follower follower : followers) {
+			if (!follower.lines.offer(line)) {
+				followers.remove(follower);
+				System.out.println("Error: Disconnecting a replication follower that fell " + BACKLOG + " changes behind.");
+				follower.disconnect();
+			}
+		}
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				daemon(() -> serve(new Follower(socket)), "replication-follower").start();
+			} catch (IOException e) {
+				if (running) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	//Sends the follower its snapshot and then its queued changes until it disconnects.
+	private void serve(Follower follower) {
+		try (Socket socket = follower.socket;
+				Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+			socket.setTcpNoDelay(true);
+			long base;
+			synchronized (this) {
+				//Changes numbered from here on are queued for the follower, so everything the snapshot misses follows it.
+				followers.add(follower);
+				base = sequence.get();
+			}
+			writeSnapshot(out);
+			out.write("L," + base + "," + System.currentTimeMillis() + "\n");
+			out.flush();
+			List<String> batch = new ArrayList<>();
+			while (running && follower.connected) {
+				String first = follower.lines.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;  //Checks again whether the primary is closing or the follower was dropped.
+				}
+				batch.add(first);
+				follower.lines.drainTo(batch);
+				for (String line : batch) {
+					out.write(line);
+					out.write('\n');
+				}
+				out.flush();  //Once per batch, so a busy primary sends changes in large writes.
+				batch.clear();
+			}
+		} catch (SocketException e) {
+			//The follower hung up or the primary is closing.
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			followers.remove(follower);
+		}
+	}
+
+	//Writes the rental system as it is now. Vehicles and customers come first, since reservations and records refer to them.
+	private void writeSnapshot(Writer out) throws IOException {
+		String prefix = ",0," + System.currentTimeMillis() + ",";
+		List<Vehicle> vehicles = system.getVehicles(null);
+		for (Vehicle vehicle : vehicles) {
+			out.write("V" + prefix + vehicle.getStatus() + "," + TextRentalStore.plainVehicleLine(vehicle) + "\n");
+		}
+		for (Customer customer : system.getCustomers()) {
+			out.write("C" + prefix + customer.getCustomerId() + "," + customer.getCustomerName() + "\n");
+		}
+		for (Vehicle vehicle : vehicles) {
+			for (Reservation reservation : system.getReservations(vehicle)) {
+				out.write("S" + prefix + TextRentalStore.reservationLine(reservation) + "\n");
+			}
+		}
+		//Paged through the history so a lazily loaded one is read straight from its file.
+		RentalHistory history = system.getRentalHistory();
+		List<RentalRecord> page = new ArrayList<>(SNAPSHOT_PAGE);
+		int row = 0;
+		while (true) {
+			page.clear();
+			int next = history.readRecords(row, SNAPSHOT_PAGE, null, page);
+			if (page.isEmpty()) {
+				break;
+			}
+			for (RentalRecord record : page) {
+				if (system.findVehicleByPlate(record.getVehicle().getLicensePlate()) != record.getVehicle()) {
+					out.write("W" + prefix + outsideVehicleLine(record.getVehicle()) + "\n");
+				}
+				out.write("R" + prefix + recordPayload(row++, record) + "\n");
+			}
+			row = next;
+		}
+	}
+
+	private static Thread daemon(Runnable task, String name) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	//One connected follower and the changes waiting to be sent to it.
+	private static class Follower {
+		final Socket socket;
+		final BlockingQueue<String> lines = new LinkedBlockingQueue<>(BACKLOG);
+		volatile boolean connected = true;
+
+		Follower(Socket socket) {
+			this.socket = socket;
+		}
+
+		void disconnect() {
+			connected = false;
+			try {
+				socket.close();  //Wakes the sending thread with a SocketException once it next writes.
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
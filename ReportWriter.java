@@ -0,0 +1,171 @@
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.util.Locale;
+
+//Writes the vehicle and rental history tables through a buffered Writer. Each row is built in one
+//reused StringBuilder with the columns padded by hand, so no format string is parsed per row.
+//The output matches what the printf calls in RentalSystem used to print.
+public class ReportWriter implements Flushable {
+
+	private static final String NEWLINE = System.lineSeparator();
+
+	private static final String VEHICLE_HEADER = String.format("|%-16s | %-12s | %-12s | %-12s | %-6s | %-18s |%n",
+			" Type", "Plate", "Make", "Model", "Year", "Status")
+			+ "|--------------------------------------------------------------------------------------------|" + NEWLINE;
+
+	private static final String HISTORY_HEADER = String.format("|%-10s | %-12s | %-20s | %-12s | %-12s |%n",
+			" Type", "Plate", "Customer", "Date", "Amount")
+			+ "|-------------------------------------------------------------------------------|" + NEWLINE;
+
+	//printf formats numbers for the default locale. The hand-written digits below are only used when that
+	//locale writes plain 0-9 with a '.' separator; otherwise numbers still go through String.format.
+	private static final boolean PLAIN_NUMBERS;
+	static {
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+		PLAIN_NUMBERS = symbols.getDecimalSeparator() == '.' && symbols.getZeroDigit() == '0';
+	}
+
+	private final Writer out;
+	private final StringBuilder row = new StringBuilder(128);
+
+	public ReportWriter(Writer out) {
+		this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 64 * 1024);
+	}
+
+	public ReportWriter(OutputStream out) {
+		this(new OutputStreamWriter(out));
+	}
+
+	public void line(String text) throws IOException {
+		out.write(text);
+		out.write(NEWLINE);
+	}
+
+	public void vehicleHeader() throws IOException {
+		out.write(VEHICLE_HEADER);
+	}
+
+	public void historyHeader() throws IOException {
+		out.write(HISTORY_HEADER);
+	}
+
+	//Same layout as "| %-15s | %-12s | %-12s | %-12s | %-6d | %-18s |%n".
+	public void vehicleRow(Vehicle vehicle) throws IOException {
+		row.setLength(0);
+		row.append("| ");
+		pad(vehicleType(vehicle), 15);
+		row.append(" | ");
+		pad(vehicle.getLicensePlate(), 12);
+		row.append(" | ");
+		pad(vehicle.getMake(), 12);
+		row.append(" | ");
+		pad(vehicle.getModel(), 12);
+		row.append(" | ");
+		int start = row.length();
+		if (PLAIN_NUMBERS) {
+			row.append(vehicle.getYear());
+		} else {
+			row.append(String.format("%d", vehicle.getYear()));
+		}
+		padFrom(start, 6);
+		row.append(" | ");
+		pad(vehicle.getStatus().toString(), 18);
+		row.append(" |").append(NEWLINE);
+		out.append(row);
+	}
+
+	//Same layout as "| %-9s | %-12s | %-20s | %-12s | $%-11.2f |%n".
+	public void historyRow(RentalRecord record) throws IOException {
+		row.setLength(0);
+		row.append("| ");
+		pad(record.getRecordType(), 9);
+		row.append(" | ");
+		pad(record.getVehicle().getLicensePlate(), 12);
+		row.append(" | ");
+		pad(record.getCustomer().getCustomerName(), 20);
+		row.append(" | ");
+		int start = row.length();
+		appendDate(record.getRecordDate());
+		padFrom(start, 12);
+		row.append(" | $");
+		start = row.length();
+		appendAmount(record.getTotalAmount());
+		padFrom(start, 11);
+		row.append(" |").append(NEWLINE);
+		out.append(row);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	//The type label shown in the vehicle table.
+	public static String vehicleType(Vehicle vehicle) {
+		if (vehicle instanceof Car) {
+			return "Car";
+		} else if (vehicle instanceof Minibus) {
+			return "Minibus";
+		} else if (vehicle instanceof PickupTruck) {
+			return "Pickup Truck";
+		}
+		return "Unknown";
+	}
+
+	//Left-justifies the text in a column of the given width, like %-Ns. Longer text is not cut.
+	private void pad(String text, int width) {
+		int start = row.length();
+		row.append(text);
+		padFrom(start, width);
+	}
+
+	private void padFrom(int start, int width) {
+		for (int i = row.length() - start; i < width; i++) {
+			row.append(' ');
+		}
+	}
+
+	//Writes yyyy-MM-dd without building a String, matching LocalDate.toString() for four-digit years.
+	private void appendDate(LocalDate date) {
+		int year = date.getYear();
+		if (year < 1000 || year > 9999) {
+			row.append(date);
+			return;
+		}
+		row.append(year).append('-');
+		twoDigits(date.getMonthValue());
+		row.append('-');
+		twoDigits(date.getDayOfMonth());
+	}
+
+	private void twoDigits(int value) {
+		if (value < 10) {
+			row.append('0');
+		}
+		row.append(value);
+	}
+
+	//Writes the amount with two decimals like %.2f. Amounts that are a whole number of cents,
+	//which is nearly all of them, are written from the cents directly; anything else goes through
+	//String.format so the rounding stays exactly the same.
+	private void appendAmount(double amount) {
+		double cents = amount * 100;
+		if (PLAIN_NUMBERS && cents == Math.rint(cents) && Math.abs(cents) < 1e15) {
+			long value = (long) cents;
+			if (value < 0 || Double.doubleToRawLongBits(amount) < 0) {
+				row.append('-');  //Also covers -0.0, which %.2f prints as -0.00.
+				value = -value;
+			}
+			row.append(value / 100).append('.');
+			twoDigits((int) (value % 100));
+			return;
+		}
+		row.append(String.format("%.2f", amount));
+	}
+}
@@ -0,0 +1,39 @@
+import java.time.LocalDate;
+
+//A hold on one vehicle for a customer from the start date to the end date, both included.
+public class Reservation {
+	private final long id;
+	private final Vehicle vehicle;
+	private final Customer customer;
+	private final LocalDate startDate;
+	private final LocalDate endDate;
+
+	public Reservation(long id, Vehicle vehicle, Customer customer, LocalDate startDate, LocalDate endDate) {
+		this.id = id;
+		this.vehicle = vehicle;
+		this.customer = customer;
+		this.startDate = startDate;
+		this.endDate = endDate;
+	}
+
+	public long getId() { return id; }
+
+	public Vehicle getVehicle() { return vehicle; }
+
+	public Customer getCustomer() { return customer; }
+
+	public LocalDate getStartDate() { return startDate; }
+
+	public LocalDate getEndDate() { return endDate; }
+
+	//Whether the reservation shares at least one day with the window.
+	public boolean overlaps(LocalDate from, LocalDate to) {
+		return !startDate.isAfter(to) && !endDate.isBefore(from);
+	}
+
+	@Override
+	public String toString() {
+		return "Reservation " + id + " | Plate: " + vehicle.getLicensePlate() + " | Customer: " + customer.getCustomerName() +
+				" | From: " + startDate + " | To: " + endDate;
+	}
+}
@@ -0,0 +1,112 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+//Every open reservation, indexed two ways. Each vehicle has a TreeMap of its reservations by start day,
+//which never overlap, so a conflict check only looks at the one reservation starting closest before the
+//window ends. Each vehicle type has a ReservationTree of all its reservations, so finding the vehicles
+//that are free for a window only visits the reservations that overlap it.
+public class ReservationBook {
+
+	private final PlateMap<TreeMap<Integer, Reservation>> byVehicle = new PlateMap<>();
+	private final Map<String, ReservationTree> byType = new HashMap<>();
+	private final Map<String, List<Vehicle>> vehiclesByType = new LinkedHashMap<>();
+	private final Map<Long, Reservation> byId = new HashMap<>();
+	private long nextId = 1;
+
+	//Adds a vehicle to its type's list, in the order vehicles join the fleet.
+	public synchronized void register(Vehicle vehicle) {
+		vehiclesByType.computeIfAbsent(ReportWriter.vehicleType(vehicle), key -> new ArrayList<>()).add(vehicle);
+	}
+
+	public synchronized long nextId() {
+		return nextId++;
+	}
+
+	//Returns the vehicle's reservation that overlaps the window, or null if the window is free.
+	public synchronized Reservation findConflict(Vehicle vehicle, LocalDate from, LocalDate to) {
+		TreeMap<Integer, Reservation> reservations = byVehicle.get(vehicle);
+		if (reservations == null) {
+			return null;
+		}
+		//A vehicle's reservations don't overlap, so the last one starting by the window's end is the only candidate.
+		Map.Entry<Integer, Reservation> entry = reservations.floorEntry((int) to.toEpochDay());
+		return entry != null && !entry.getValue().getEndDate().isBefore(from) ? entry.getValue() : null;
+	}
+
+	//Adds the reservation unless it overlaps another one on the same vehicle.
+	public synchronized boolean add(Reservation reservation) {
+		Vehicle vehicle = reservation.getVehicle();
+		if (findConflict(vehicle, reservation.getStartDate(), reservation.getEndDate()) != null) {
+			return false;
+		}
+		byVehicle.computeIfAbsent(vehicle, TreeMap::new).put((int) reservation.getStartDate().toEpochDay(), reservation);
+		byType.computeIfAbsent(ReportWriter.vehicleType(vehicle), key -> new ReservationTree()).add(reservation);
+		byId.put(reservation.getId(), reservation);
+		nextId = Math.max(nextId, reservation.getId() + 1);  //Keeps new ids clear of the ones loaded from the file.
+		return true;
+	}
+
+	//Removes and returns the reservation, or returns null if there is none with that id.
+	public synchronized Reservation remove(long id) {
+		Reservation reservation = byId.remove(id);
+		if (reservation == null) {
+			return null;
+		}
+		Vehicle vehicle = reservation.getVehicle();
+		byVehicle.get(vehicle).remove((int) reservation.getStartDate().toEpochDay());
+		byType.get(ReportWriter.vehicleType(vehicle)).remove(reservation);
+		return reservation;
+	}
+
+	public synchronized Reservation get(long id) {
+		return byId.get(id);
+	}
+
+	//The vehicle's reservation that covers the given day, if there is one.
+	public synchronized Reservation findOn(Vehicle vehicle, LocalDate day) {
+		return findConflict(vehicle, day, day);
+	}
+
+	//The vehicle's reservations in date order.
+	public synchronized List<Reservation> getReservations(Vehicle vehicle) {
+		TreeMap<Integer, Reservation> reservations = byVehicle.get(vehicle);
+		return reservations == null ? Collections.emptyList() : new ArrayList<>(reservations.values());
+	}
+
+	public synchronized int size() {
+		return byId.size();
+	}
+
+	//The vehicles of the given type (every type if null) with no reservation during [from, to] that pass
+	//the usable check. Only the reservations overlapping the window are looked at.
+	public synchronized List<Vehicle> findFreeVehicles(String vehicleType, LocalDate from, LocalDate to, Predicate<Vehicle> usable) {
+		int fromDay = (int) from.toEpochDay();
+		int toDay = (int) to.toEpochDay();
+		Set<Vehicle> busy = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<Vehicle> result = new ArrayList<>();
+		for (Map.Entry<String, List<Vehicle>> entry : vehiclesByType.entrySet()) {
+			if (vehicleType != null && !vehicleType.equalsIgnoreCase(entry.getKey())) {
+				continue;
+			}
+			ReservationTree tree = byType.get(entry.getKey());
+			if (tree != null) {
+				tree.forEachOverlapping(fromDay, toDay, reservation -> busy.add(reservation.getVehicle()));
+			}
+			for (Vehicle vehicle : entry.getValue()) {
+				if (!busy.contains(vehicle) && usable.test(vehicle)) {
+					result.add(vehicle);
+				}
+			}
+		}
+		return result;
+	}
+}
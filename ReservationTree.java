@@ -0,0 +1,121 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+//Interval tree of reservations: a treap ordered by start day (then id), where each node also keeps the
+//latest end day in its subtree. Finding the reservations that overlap a window skips every subtree that
+//ends before the window and everything that starts after it, so it costs O(log n + matches).
+//Not thread-safe; ReservationBook guards it.
+public class ReservationTree {
+
+	private static class Node {
+		final Reservation reservation;
+		final int start;
+		final int end;
+		final long id;
+		final int priority = ThreadLocalRandom.current().nextInt();
+		int maxEnd;
+		Node left;
+		Node right;
+
+		Node(Reservation reservation) {
+			this.reservation = reservation;
+			this.start = (int) reservation.getStartDate().toEpochDay();
+			this.end = (int) reservation.getEndDate().toEpochDay();
+			this.id = reservation.getId();
+			this.maxEnd = end;
+		}
+	}
+
+	private Node root;
+	private int size;
+
+	public int size() {
+		return size;
+	}
+
+	public void add(Reservation reservation) {
+		Node node = new Node(reservation);
+		Node[] parts = split(root, node.start, node.id);
+		root = merge(merge(parts[0], node), parts[1]);
+		size++;
+	}
+
+	public boolean remove(Reservation reservation) {
+		int start = (int) reservation.getStartDate().toEpochDay();
+		Node[] before = split(root, start, reservation.getId());
+		Node[] after = split(before[1], start, reservation.getId() + 1);
+		boolean removed = after[0] != null;
+		root = merge(before[0], after[1]);
+		if (removed) {
+			size--;
+		}
+		return removed;
+	}
+
+	//Passes every reservation that shares a day with [from, to] to the consumer, in start order.
+	public void forEachOverlapping(int from, int to, Consumer<Reservation> consumer) {
+		visit(root, from, to, consumer);
+	}
+
+	private static void visit(Node node, int from, int to, Consumer<Reservation> consumer) {
+		if (node == null || node.maxEnd < from) {
+			return;  //Everything below ends before the window.
+		}
+		visit(node.left, from, to, consumer);
+		if (node.start > to) {
+			return;  //This node and its right subtree start after the window.
+		}
+		if (node.end >= from) {
+			consumer.accept(node.reservation);
+		}
+		visit(node.right, from, to, consumer);
+	}
+
+	//Splits the tree into the nodes ordered before (start, id) and the rest.
+	private static Node[] split(Node node, int start, long id) {
+		if (node == null) {
+			return new Node[2];
+		}
+		if (node.start < start || (node.start == start && node.id < id)) {
+			Node[] parts = split(node.right, start, id);
+			node.right = parts[0];
+			update(node);
+			parts[0] = node;
+			return parts;
+		}
+		Node[] parts = split(node.left, start, id);
+		node.left = parts[1];
+		update(node);
+		parts[1] = node;
+		return parts;
+	}
+
+	//Joins two trees where every node of the first comes before every node of the second.
+	private static Node merge(Node first, Node second) {
+		if (first == null) {
+			return second;
+		}
+		if (second == null) {
+			return first;
+		}
+		if (first.priority > second.priority) {
+			first.right = merge(first.right, second);
+			update(first);
+			return first;
+		}
+		second.left = merge(first, second.left);
+		update(second);
+		return second;
+	}
+
+	private static void update(Node node) {
+		int maxEnd = node.end;
+		if (node.left != null) {
+			maxEnd = Math.max(maxEnd, node.left.maxEnd);
+		}
+		if (node.right != null) {
+			maxEnd = Math.max(maxEnd, node.right.maxEnd);
+		}
+		node.maxEnd = maxEnd;
+	}
+}
@@ -0,0 +1,451 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+//Splits the fleet over several independent RentalSystems, each with its own folder of data files, indexes,
+//locks and background writer, so rentals of vehicles in different shards never wait on each other or on one
+//log. A vehicle lives in the shard its plate hashes to. Customers are copied to every shard rather than given
+//a home of their own: any vehicle can be rented to any customer, and each shard has to find the customers of
+//its records by id when it loads its files without asking the others. Fleet-wide queries ask every shard at
+//once and combine the answers.
+//
+//The shard count is written to shards.txt the first time and must stay the same, or plates would hash to other
+//shards than the ones holding their vehicles.
+public class ShardedRentalSystem {
+
+	private static final Comparator<RentalRecord> BY_DATE = Comparator.comparing(RentalRecord::getRecordDate);
+
+	private final RentalSystem[] shards;
+	//Adds of the same customer id take turns, so two customers can't each win the id in different shards.
+	//Adds of other ids seldom share a stripe and go ahead side by side.
+	private final Object[] customerLocks = new Object[64];
+
+	//Opens or creates the shards in shard-0 to shard-(count - 1) under the base folder.
+	public ShardedRentalSystem(File baseDir, int shardCount) throws IOException {
+		this(baseDir, shardCount, PersistencePipeline.configuredMode());
+	}
+
+	public ShardedRentalSystem(File baseDir, int shardCount, PersistencePipeline.DurabilityMode durability) throws IOException {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("A sharded rental system needs at least one shard.");
+		}
+		baseDir.mkdirs();
+		File countFile = new File(baseDir, "shards.txt");
+		if (countFile.exists()) {
+			int saved = Integer.parseInt(new String(Files.readAllBytes(countFile.toPath()), StandardCharsets.UTF_8).trim());
+			if (saved != shardCount) {
+				throw new IllegalArgumentException(baseDir + " was created with " + saved + " shards, not " + shardCount + ".");
+			}
+		} else {
+			Files.write(countFile.toPath(), String.valueOf(shardCount).getBytes(StandardCharsets.UTF_8));
+		}
+		//Each shard loads its own files, so they all start up at the same time.
+		List<ForkJoinTask<RentalSystem>> loading = new ArrayList<>();
+		for (int i = 0; i < shardCount; i++) {
+			File dir = new File(baseDir, "shard-" + i);
+			dir.mkdirs();
+			loading.add(ForkJoinPool.commonPool().submit(() -> new RentalSystem(dir, durability)));
+		}
+		for (int i = 0; i < customerLocks.length; i++) {
+			customerLocks[i] = new Object();
+		}
+		shards = new RentalSystem[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = loading.get(i).join();
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	public RentalSystem getShard(int index) {
+		return shards[index];
+	}
+
+	//The shard a plate belongs to. Packed plates are spread by their code and others by their upper case text.
+	public int shardFor(String plate) {
+		String text = plate.trim().toUpperCase();
+		int code = PlateCodec.encode(text);
+		return Math.floorMod(mix(code != PlateCodec.NO_CODE ? code : text.hashCode()), shards.length);
+	}
+
+	public int shardFor(Vehicle vehicle) {
+		int code = vehicle.getPlateCode();
+		return code != PlateCodec.NO_CODE ? Math.floorMod(mix(code), shards.length) : shardFor(vehicle.getLicensePlate());
+	}
+
+	//Scrambles the bits so plates that differ in a regular pattern don't all land in the same few shards.
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		return hash ^ (hash >>> 16);
+	}
+
+	private RentalSystem shard(Vehicle vehicle) {
+		return shards[shardFor(vehicle)];
+	}
+
+	//Runs the query on every shard at once and returns the answers in shard order.
+	private <T> List<T> gather(Function<RentalSystem, T> query) {
+		List<ForkJoinTask<T>> tasks = new ArrayList<>();
+		for (int i = 1; i < shards.length; i++) {
+			RentalSystem shard = shards[i];
+			tasks.add(ForkJoinPool.commonPool().submit(() -> query.apply(shard)));
+		}
+		List<T> results = new ArrayList<>();
+		results.add(query.apply(shards[0]));  //The calling thread takes the first shard itself.
+		for (ForkJoinTask<T> task : tasks) {
+			results.add(task.join());
+		}
+		return results;
+	}
+
+	private <T> List<T> gatherLists(Function<RentalSystem, List<T>> query) {
+		List<T> result = new ArrayList<>();
+		for (List<T> part : gather(query)) {
+			result.addAll(part);
+		}
+		return result;
+	}
+
+	//Combines the shards' records in date order. Records on the same date keep their shard's order.
+	private List<RentalRecord> gatherRecords(Function<RentalSystem, List<RentalRecord>> query) {
+		List<RentalRecord> result = gatherLists(query);
+		result.sort(BY_DATE);
+		return result;
+	}
+
+	public boolean addVehicle(Vehicle vehicle) {
+		return shard(vehicle).addVehicle(vehicle);
+	}
+
+	//Saves the customer in every shard. Returns false if the id is already taken.
+	public boolean addCustomer(Customer customer) {
+		synchronized (customerLocks[Math.floorMod(customer.getCustomerId(), customerLocks.length)]) {
+			boolean added = false;
+			for (boolean shardAdded : gather(shard -> shard.addCustomer(customer))) {
+				added |= shardAdded;  //A shard that missed the customer before, e.g. after a crash, catches up.
+			}
+			return added;
+		}
+	}
+
+	public boolean rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+		return shard(vehicle).rentVehicle(vehicle, customer, date, amount);
+	}
+
+	public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+		return shard(vehicle).returnVehicle(vehicle, customer, date, extraFees);
+	}
+
+	public Vehicle findVehicleByPlate(String plate) {
+		return plate == null ? null : shards[shardFor(plate)].findVehicleByPlate(plate);
+	}
+
+	//Every shard holds every customer, so customer lookups only ask the first.
+	public Customer findCustomerById(int id) {
+		return shards[0].findCustomerById(id);
+	}
+
+	public List<Customer> findCustomersByName(String text) {
+		return shards[0].findCustomersByName(text);
+	}
+
+	public List<Customer> findCustomersByNamePrefix(String text) {
+		return shards[0].findCustomersByNamePrefix(text);
+	}
+
+	public void displayAllCustomers() {
+		shards[0].displayAllCustomers();
+	}
+
+	//Reservation ids are handed out by each shard, so the id callers see also carries the shard:
+	//shard-local id * shard count + shard.
+	public Reservation reserveVehicle(Vehicle vehicle, Customer customer, LocalDate from, LocalDate to) {
+		int index = shardFor(vehicle);
+		return withGlobalId(shards[index].reserveVehicle(vehicle, customer, from, to), index);
+	}
+
+	public boolean cancelReservation(long reservationId) {
+		return shardOf(reservationId).cancelReservation(localId(reservationId));
+	}
+
+	public boolean rentReservedVehicle(long reservationId, LocalDate date, double amount) {
+		return shardOf(reservationId).rentReservedVehicle(localId(reservationId), date, amount);
+	}
+
+	public Reservation findReservation(long reservationId) {
+		return withGlobalId(shardOf(reservationId).findReservation(localId(reservationId)), shardIndexOf(reservationId));
+	}
+
+	public List<Reservation> getReservations(Vehicle vehicle) {
+		int index = shardFor(vehicle);
+		List<Reservation> result = new ArrayList<>();
+		for (Reservation reservation : shards[index].getReservations(vehicle)) {
+			result.add(withGlobalId(reservation, index));
+		}
+		return result;
+	}
+
+	public List<Vehicle> findAvailableVehicles(String vehicleType, LocalDate from, LocalDate to) {
+		return gatherLists(shard -> shard.findAvailableVehicles(vehicleType, from, to));
+	}
+
+	public void refreshHolds(LocalDate today) {
+		gather(shard -> {
+			shard.refreshHolds(today);
+			return null;
+		});
+	}
+
+	private Reservation withGlobalId(Reservation reservation, int shard) {
+		if (reservation == null) {
+			return null;
+		}
+		return new Reservation(reservation.getId() * shards.length + shard, reservation.getVehicle(), reservation.getCustomer(),
+				reservation.getStartDate(), reservation.getEndDate());
+	}
+
+	private RentalSystem shardOf(long reservationId) {
+		return shards[shardIndexOf(reservationId)];
+	}
+
+	private int shardIndexOf(long reservationId) {
+		return (int) Math.floorMod(reservationId, (long) shards.length);
+	}
+
+	private long localId(long reservationId) {
+		return Math.floorDiv(reservationId, shards.length);
+	}
+
+	//The vehicles with the given status, or the whole fleet if status is null, one shard after another.
+	public List<Vehicle> getVehicles(Vehicle.VehicleStatus status) {
+		return gatherLists(shard -> shard.getVehicles(status));
+	}
+
+	public int countVehicles(Vehicle.VehicleStatus status) {
+		int count = 0;
+		for (int shardCount : gather(shard -> shard.countVehicles(status))) {
+			count += shardCount;
+		}
+		return count;
+	}
+
+	public Map<Vehicle.VehicleStatus, Integer> getStatusCounts() {
+		Map<Vehicle.VehicleStatus, Integer> counts = new EnumMap<>(Vehicle.VehicleStatus.class);
+		for (Map<Vehicle.VehicleStatus, Integer> shardCounts : gather(RentalSystem::getStatusCounts)) {
+			shardCounts.forEach((status, count) -> counts.merge(status, count, Integer::sum));
+		}
+		return counts;
+	}
+
+	public Map<String, Integer> getMakeCounts() {
+		return sumCounts(gather(RentalSystem::getMakeCounts));
+	}
+
+	public Map<String, Integer> getModelCounts() {
+		return sumCounts(gather(RentalSystem::getModelCounts));
+	}
+
+	private static Map<String, Integer> sumCounts(List<Map<String, Integer>> parts) {
+		Map<String, Integer> counts = new LinkedHashMap<>();
+		for (Map<String, Integer> part : parts) {
+			part.forEach((value, count) -> counts.merge(value, count, Integer::sum));
+		}
+		return counts;
+	}
+
+	public void displayVehicles(Vehicle.VehicleStatus status) {
+		displayVehicles(status, 0, Integer.MAX_VALUE);
+	}
+
+	public int displayVehicles(Vehicle.VehicleStatus status, int offset, int limit) {
+		try {
+			return writeVehicles(new OutputStreamWriter(System.out), status, offset, limit);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	//Writes the same table as RentalSystem.writeVehicles, with the shards' vehicles one shard after another.
+	public int writeVehicles(Writer out, Vehicle.VehicleStatus status, int offset, int limit) throws IOException {
+		ReportWriter report = new ReportWriter(out);
+		report.line(status == null ? "\n=== All Vehicles ===" : "\n=== " + status + " Vehicles ===");
+		report.vehicleHeader();
+		List<Vehicle> matching = getVehicles(status);
+		int written = 0;
+		for (int i = Math.max(0, offset); i < matching.size() && written < limit; i++) {
+			report.vehicleRow(matching.get(i));
+			written++;
+		}
+		if (matching.isEmpty()) {
+			report.line(status == null ? "  No Vehicles found." : "  No vehicles with Status: " + status);
+		}
+		report.line("");
+		report.flush();
+		return written;
+	}
+
+	public void displayRentalHistory() {
+		displayRentalHistory(0, Integer.MAX_VALUE, null);
+	}
+
+	public int displayRentalHistory(int offset, int limit, Predicate<RentalRecord> filter) {
+		try {
+			return writeRentalHistory(new OutputStreamWriter(System.out), offset, limit, filter);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	//Writes the history table across every shard in date order, records of the same date shard by shard.
+	//A shard's records are only in date order when they arrived that way, so each shard is read through its
+	//date cursor and the cursors are merged. Every record before the end of the page is read once, from
+	//whichever shard holds it, rather than the first offset + limit records of every shard.
+	public int writeRentalHistory(Writer out, int offset, int limit, Predicate<RentalRecord> filter) throws IOException {
+		ReportWriter report = new ReportWriter(out);
+		int skip = Math.max(0, offset);
+		int batch = (int) Math.max(16, Math.min(512, (long) skip + Math.max(0, limit)));
+		List<DateCursor> cursors = gather(shard -> new DateCursor(shard.getRentalHistory(), filter, batch));
+		PriorityQueue<DateCursor> heads = new PriorityQueue<>(Comparator.comparing(DateCursor::head, BY_DATE).thenComparingInt(cursor -> cursor.shard));
+		for (int i = 0; i < cursors.size(); i++) {
+			cursors.get(i).shard = i;
+			if (cursors.get(i).hasNext()) {
+				heads.add(cursors.get(i));
+			}
+		}
+		List<RentalRecord> page = new ArrayList<>();
+		while (page.size() < limit && !heads.isEmpty()) {
+			DateCursor cursor = heads.poll();
+			RentalRecord record = cursor.next();
+			if (skip > 0) {
+				skip--;
+			} else {
+				page.add(record);
+			}
+			if (cursor.hasNext()) {
+				heads.add(cursor);
+			}
+		}
+		if (page.isEmpty() && getHistorySize() == 0) {
+			report.line("  No rental history found.");
+			report.flush();
+			return 0;
+		}
+		report.historyHeader();
+		for (RentalRecord record : page) {
+			report.historyRow(record);
+		}
+		report.line("");
+		report.flush();
+		return page.size();
+	}
+	
+	//One shard's history in date order, read a batch at a time as the merge gets to it.
+	private static final class DateCursor {
+		private final RentalHistory history;
+		private final Predicate<RentalRecord> filter;
+		private final int batchSize;
+		private final List<RentalRecord> batch = new ArrayList<>();
+		private int next;
+		private long position = RentalHistory.FIRST_BY_DATE;
+		private int shard;
+		
+		DateCursor(RentalHistory history, Predicate<RentalRecord> filter, int batchSize) {
+			this.history = history;
+			this.filter = filter;
+			this.batchSize = batchSize;
+			hasNext();  //Reads the first batch on the shard's own thread.
+		}
+		
+		boolean hasNext() {
+			if (next == batch.size() && position != RentalHistory.END_BY_DATE) {
+				batch.clear();
+				next = 0;
+				position = history.readRecordsByDate(position, batchSize, filter, batch);
+			}
+			return next < batch.size();
+		}
+		
+		RentalRecord head() {
+			return batch.get(next);
+		}
+		
+		RentalRecord next() {
+			return batch.get(next++);
+		}
+	}
+
+	public int getHistorySize() {
+		int size = 0;
+		for (int shardSize : gather(shard -> shard.getRentalHistory().size())) {
+			size += shardSize;
+		}
+		return size;
+	}
+
+	public List<RentalRecord> getRentalRecordsByVehicle(String licensePlate) {
+		return shards[shardFor(licensePlate)].getRentalHistory().getRentalRecordsByVehicle(licensePlate);
+	}
+
+	public List<RentalRecord> getRentalRecordsByCustomerId(int customerId) {
+		return gatherRecords(shard -> shard.getRentalHistory().getRentalRecordsByCustomerId(customerId));
+	}
+
+	public List<RentalRecord> getRentalRecordsByCustomer(String customerName) {
+		return gatherRecords(shard -> shard.getRentalHistory().getRentalRecordsByCustomer(customerName));
+	}
+
+	public List<RentalRecord> getRentalRecordsBetween(LocalDate from, LocalDate to) {
+		return gatherRecords(shard -> shard.getRentalHistory().getRentalRecordsBetween(from, to));
+	}
+
+	public double getTotalAmount(String recordType) {
+		double total = 0;
+		for (double shardTotal : gather(shard -> shard.getRentalHistory().getTotalAmount(recordType))) {
+			total += shardTotal;
+		}
+		return total;
+	}
+
+	public void flush() {
+		gather(shard -> {
+			shard.flush();
+			return null;
+		});
+	}
+
+	public void checkpoint() {
+		gather(shard -> {
+			shard.checkpoint();
+			return null;
+		});
+	}
+
+	public void close() {
+		gather(shard -> {
+			shard.close();
+			return null;
+		});
+	}
+}
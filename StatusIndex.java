@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Splits the fleet by status so listing the vehicles with one status, or counting them, only touches those vehicles.
+//Vehicles report their own status changes through Vehicle.StatusListener, so every path that changes a status
+//keeps the index up to date. Within a status, vehicles stay in the order they were registered.
+//
+//Status changes are filed without a lock over the index. Each vehicle gets a listener of its own that knows the
+//vehicle's registration number, and the lists and counts per status are safe to update from many threads at once,
+//so rentals and returns of different vehicles never wait on each other here.
+public class StatusIndex {
+
+	private final Map<Vehicle.VehicleStatus, ConcurrentSkipListMap<Integer, Vehicle>> byStatus = new EnumMap<>(Vehicle.VehicleStatus.class);
+	private final Map<Vehicle.VehicleStatus, LongAdder> counts = new EnumMap<>(Vehicle.VehicleStatus.class);
+	private final Map<Vehicle, Integer> sequence = new IdentityHashMap<>();  //Registration order of each vehicle, guarded by this.
+	private int nextSequence;
+	private volatile Vehicle.StatusListener forward;  //Passed each change once it is filed, e.g. to replicate it.
+
+	public StatusIndex() {
+		for (Vehicle.VehicleStatus status : Vehicle.VehicleStatus.values()) {
+			byStatus.put(status, new ConcurrentSkipListMap<>());
+			counts.put(status, new LongAdder());
+		}
+	}
+
+	//Files the status changes of one registered vehicle. Called by the vehicle while it holds its own lock, so
+	//changes to one vehicle arrive in order.
+	private final class Entry implements Vehicle.StatusListener {
+		private final int seq;
+
+		Entry(int seq) {
+			this.seq = seq;
+		}
+
+		@Override
+		public void statusChanged(Vehicle vehicle, Vehicle.VehicleStatus from, Vehicle.VehicleStatus to) {
+			if (from != null && byStatus.get(from).remove(seq) != null) {
+				counts.get(from).decrement();
+			}
+			if (to != null && byStatus.get(to).put(seq, vehicle) == null) {
+				counts.get(to).increment();
+			}
+			Vehicle.StatusListener listener = forward;
+			if (listener != null) {
+				listener.statusChanged(vehicle, from, to);
+			}
+		}
+	}
+
+	//Adds a vehicle under its current status and starts following its status changes.
+	public void register(Vehicle vehicle) {
+		int seq;
+		synchronized (this) {
+			if (sequence.containsKey(vehicle)) {
+				return;
+			}
+			seq = nextSequence++;
+			sequence.put(vehicle, seq);
+		}
+		//The vehicle's status can't change while it is registering, so it can't be filed under the wrong one.
+		vehicle.setStatusListener(new Entry(seq));
+	}
+
+	//Passes every later status change of the registered vehicles on to the listener, in the order they are filed.
+	public void forwardTo(Vehicle.StatusListener listener) {
+		this.forward = listener;
+	}
+
+	//Copies the vehicles with the given status, in registration order.
+	public List<Vehicle> getVehicles(Vehicle.VehicleStatus status) {
+		return new ArrayList<>(byStatus.get(status).values());
+	}
+
+	public int count(Vehicle.VehicleStatus status) {
+		return counts.get(status).intValue();
+	}
+
+	//The number of vehicles with each status. A vehicle changing status while the counts are read may be
+	//counted under both its old and new status, or under neither.
+	public Map<Vehicle.VehicleStatus, Integer> counts() {
+		Map<Vehicle.VehicleStatus, Integer> result = new EnumMap<>(Vehicle.VehicleStatus.class);
+		for (Map.Entry<Vehicle.VehicleStatus, LongAdder> entry : counts.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().intValue());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,660 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//The comma-separated data files the rental system has always used:
+//  vehicles.txt                  type,plate,make,model,year,... with "#DICT,code,value" lines for makes and models
+//  customers.txt                 id,name
+//  rental_records.txt            plate,customerId,date,amount,RENT|RETURN
+//  reservations.txt              RESERVE,id,plate,customerId,from,to and RELEASE,id
+//  rental_checkpoint.txt         every vehicle's status and the offset in rental_records.txt it was taken at
+//  rental_records_archive.txt    the records compaction has moved out of rental_records.txt, read back only for totals
+//Saves reach the files through a PersistencePipeline, so the durability mode decides how long a save waits.
+//The line formats are also used by imports and replication, through the static methods here.
+public class TextRentalStore implements RentalStore {
+
+	//Group commit settings: lines are written out every COMMIT_RECORDS records or COMMIT_MILLIS milliseconds.
+	//The defaults write every record straight through, like opening and closing the file each time did.
+	private static final int COMMIT_RECORDS = Integer.getInteger("rental.commit.records", 1);
+	private static final long COMMIT_MILLIS = Long.getLong("rental.commit.millis", 0L);
+
+	//How many lines may queue up for the background writer before savers have to wait.
+	private static final int QUEUE_CAPACITY = Integer.getInteger("rental.queue.capacity", 8192);
+
+	//When set, startup only works out the vehicle statuses from rental_records.txt and leaves the records on disk
+	//until the history is queried, so the first prompt doesn't wait for the whole history to be parsed.
+	private static final boolean LAZY_HISTORY = Boolean.getBoolean("rental.history.lazy");
+
+	//Records parsed into one batch before the batch grows.
+	private static final int RECORD_BATCH = 1024;
+
+	private final File vehicleFile;
+	private final File customerFile;
+	private final File recordFile;
+	private final File checkpointFile;
+	private final File archiveFile;
+	private final File reservationFile;
+
+	//Long-lived append channels for the data files.
+	private final AppendLog vehicleLog;
+	private final AppendLog customerLog;
+	private final AppendLog recordLog;
+	private final AppendLog reservationLog;
+
+	//The make and model codes vehicles.txt uses, read from its #DICT lines and extended as new values are saved.
+	private final MakeModelDictionary.FileCodes vehicleCodes = new MakeModelDictionary.FileCodes(MakeModelDictionary.shared());
+
+	//Carries saved lines to the logs, either on the saving thread or on a background writer.
+	private final PersistencePipeline pipeline;
+
+	private final boolean lazyHistory;
+
+	//Uses the data files in the given directory, saving with the given durability mode.
+	public TextRentalStore(File dataDir, PersistencePipeline.DurabilityMode durability) {
+		this(dataDir, durability, LAZY_HISTORY);
+	}
+
+	//Same, with the history left on disk at startup or not whatever rental.history.lazy says.
+	TextRentalStore(File dataDir, PersistencePipeline.DurabilityMode durability, boolean lazyHistory) {
+		this.lazyHistory = lazyHistory;
+		vehicleFile = new File(dataDir, "vehicles.txt");
+		customerFile = new File(dataDir, "customers.txt");
+		recordFile = new File(dataDir, "rental_records.txt");
+		checkpointFile = new File(dataDir, "rental_checkpoint.txt");
+		archiveFile = new File(dataDir, "rental_records_archive.txt");
+		reservationFile = new File(dataDir, "reservations.txt");
+
+		vehicleLog = new AppendLog(vehicleFile, COMMIT_RECORDS, COMMIT_MILLIS);
+		customerLog = new AppendLog(customerFile, COMMIT_RECORDS, COMMIT_MILLIS);
+		recordLog = new AppendLog(recordFile, COMMIT_RECORDS, COMMIT_MILLIS);
+		reservationLog = new AppendLog(reservationFile, COMMIT_RECORDS, COMMIT_MILLIS);
+		pipeline = new PersistencePipeline(durability, QUEUE_CAPACITY);
+	}
+
+	@Override
+	public void saveVehicle(Vehicle vehicle) throws IOException {
+		pipeline.submit(vehicleLog, vehicleLine(vehicle));
+	}
+
+	@Override
+	public void saveCustomer(Customer customer) throws IOException {
+		pipeline.submit(customerLog, customerLine(customer));
+	}
+
+	@Override
+	public void saveRecord(RentalRecord record) throws IOException {
+		pipeline.submit(recordLog, recordLine(record));
+	}
+
+	@Override
+	public void saveReservation(Reservation reservation) throws IOException {
+		pipeline.submit(reservationLog, reservationLine(reservation));
+	}
+
+	@Override
+	public void saveRelease(long reservationId) throws IOException {
+		pipeline.submit(reservationLog, releaseLine(reservationId));
+	}
+
+	@Override
+	public void saveVehicles(List<Vehicle> vehicles) throws IOException {
+		List<String> lines = new ArrayList<>(vehicles.size());
+		for (Vehicle vehicle : vehicles) {
+			lines.add(vehicleLine(vehicle));  //Any #DICT line goes through the pipeline, so it is drained below first.
+		}
+		pipeline.drain();  //Anything still queued goes first.
+		vehicleLog.appendAll(lines);
+	}
+
+	@Override
+	public void saveCustomers(List<Customer> customers) throws IOException {
+		List<String> lines = new ArrayList<>(customers.size());
+		for (Customer customer : customers) {
+			lines.add(customerLine(customer));
+		}
+		pipeline.drain();
+		customerLog.appendAll(lines);
+	}
+
+	@Override
+	public void saveRecords(List<RentalRecord> records) throws IOException {
+		List<String> lines = new ArrayList<>(records.size());
+		for (RentalRecord record : records) {
+			lines.add(recordLine(record));
+		}
+		pipeline.drain();
+		recordLog.appendAll(lines);
+	}
+
+	//Builds the line a vehicle is saved as in vehicles.txt. Make and model are written as dictionary references,
+	//and the #DICT line for a value the file hasn't seen yet is saved first.
+	private String vehicleLine(Vehicle vehicle) {
+		String make = vehicleCodes.reference(vehicle.getMakeCode(), this::saveDictionaryLine);
+		String model = vehicleCodes.reference(vehicle.getModelCode(), this::saveDictionaryLine);
+		return vehicleLine(vehicle, make, model);
+	}
+
+	//Builds a vehicles.txt line with plain make and model values, which parseVehicle(String) reads back.
+	static String plainVehicleLine(Vehicle vehicle) {
+		return vehicleLine(vehicle, vehicle.getMake(), vehicle.getModel());
+	}
+
+	private static String vehicleLine(Vehicle vehicle, String make, String model) {
+		if (vehicle instanceof Car) {
+			Car car = (Car) vehicle;
+			return "Car," + vehicle.getLicensePlate() + "," + make + "," + model + "," + vehicle.getYear() + "," + car.getNumSeats();
+		}
+		if (vehicle instanceof Minibus) {
+			Minibus minibus = (Minibus) vehicle;
+			return "Minibus," + vehicle.getLicensePlate() + "," + make + "," + model + "," + vehicle.getYear() + "," + minibus.getIsAccessible();
+		}
+		PickupTruck pickupTruck = (PickupTruck) vehicle;
+		return "PickupTruck," + vehicle.getLicensePlate() + "," + make + "," + model + "," + vehicle.getYear() + "," +
+				pickupTruck.getCargoSize() + "," + pickupTruck.hasTrailer();
+	}
+
+	//Saves one make or model definition to vehicles.txt.
+	private void saveDictionaryLine(String line) {
+		try {
+			pipeline.submit(vehicleLog, line);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	static String customerLine(Customer customer) {
+		return customer.getCustomerId() + "," + customer.getCustomerName();
+	}
+
+	//Builds the line a record is saved as in rental_records.txt.
+	static String recordLine(RentalRecord record) {
+		return record.getVehicle().getLicensePlate() + "," + record.getCustomer().getCustomerId() + "," + record.getRecordDate() + "," +
+				record.getTotalAmount() + "," + record.getRecordType();
+	}
+
+	//The RESERVE line a reservation is saved as in reservations.txt.
+	static String reservationLine(Reservation reservation) {
+		return "RESERVE," + reservation.getId() + "," + reservation.getVehicle().getLicensePlate() + "," +
+				reservation.getCustomer().getCustomerId() + "," + reservation.getStartDate() + "," + reservation.getEndDate();
+	}
+
+	static String releaseLine(long reservationId) {
+		return "RELEASE," + reservationId;
+	}
+
+	//Writes the status of every vehicle along with the current end of rental_records.txt,
+	//so the next startup only has to replay the records written after this point.
+	@Override
+	public void checkpoint(List<Vehicle> fleet) throws IOException {
+		pipeline.drain();  //Queued records belong before the checkpoint offset.
+		recordLog.flush();
+		writeCheckpoint(checkpointLines(recordFile.length(), null, fleet));
+	}
+
+	//Takes a checkpoint and then moves every record before it into rental_records_archive.txt,
+	//leaving rental_records.txt with only the records written after the checkpoint. The archive is only
+	//read back for the running totals, so the moved records drop out of the history after a restart.
+	@Override
+	public void compact(List<Vehicle> fleet) throws IOException {
+		pipeline.drain();
+		recordLog.close();
+		long offset = recordFile.length();
+		if (offset == 0) {
+			writeCheckpoint(checkpointLines(0, null, fleet));
+			return;  //Nothing to archive yet.
+		}
+		//The checkpoint notes how long the archive and the log are before anything moves, so a startup after
+		//a crash part way through finishes the move instead of replaying or archiving the records twice.
+		long archiveLength = archiveFile.length();
+		List<String> lines = checkpointLines(offset, "ARCHIVING," + archiveLength + "," + offset, fleet);
+		writeCheckpoint(lines);
+		finishArchiving(archiveLength, offset, lines);
+	}
+
+	//Copies the first logLength bytes of rental_records.txt onto the end of the archive as it was at archiveLength,
+	//empties the log and writes the checkpoint again with its offset at the start of the log and without the note.
+	//Every step can be redone: the archive is cut back to archiveLength before the copy, so a copy a crash broke
+	//off is replaced rather than added to, and a log that is already empty means the copy before it finished.
+	private void finishArchiving(long archiveLength, long logLength, List<String> checkpoint) throws IOException {
+		if (recordFile.length() >= logLength) {
+			try (FileChannel log = FileChannel.open(recordFile.toPath(), StandardOpenOption.READ);
+					FileChannel archive = FileChannel.open(archiveFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				archive.truncate(archiveLength);
+				archive.position(archiveLength);
+				for (long copied = 0; copied < logLength; ) {
+					copied += log.transferTo(copied, logLength - copied, archive);
+				}
+				archive.force(true);
+			}
+			try (FileChannel log = FileChannel.open(recordFile.toPath(), StandardOpenOption.WRITE)) {
+				log.truncate(0);
+				log.force(true);
+			}
+		}
+		List<String> lines = new ArrayList<>();
+		for (String line : checkpoint) {
+			if (line.startsWith("OFFSET,")) {
+				lines.add("OFFSET,0");
+			} else if (!line.startsWith("ARCHIVING,")) {
+				lines.add(line);
+			}
+		}
+		writeCheckpoint(lines);
+	}
+
+	//The lines of a checkpoint: the offset, a note of an archive move if one is under way, then every vehicle's status.
+	private static List<String> checkpointLines(long offset, String archiving, List<Vehicle> fleet) {
+		List<String> lines = new ArrayList<>();
+		lines.add("OFFSET," + offset);
+		if (archiving != null) {
+			lines.add(archiving);
+		}
+		for (Vehicle vehicle : fleet) {
+			lines.add(vehicle.getLicensePlate() + "," + vehicle.getStatus());
+		}
+		return lines;
+	}
+
+	//Writes the checkpoint to a temporary file first and then swaps it in, so a crash never leaves half a checkpoint.
+	//The file is forced to disk before the swap, since the steps of a compaction rely on their order.
+	private void writeCheckpoint(List<String> lines) throws IOException {
+		File temp = new File(checkpointFile.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp);
+				BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out))) {
+			for (String line : lines) {
+				writer.write(line);
+				writer.newLine();
+			}
+			writer.flush();
+			out.getFD().sync();
+		}
+		Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	//Restores the vehicle statuses from the checkpoint and returns the offset to replay rental_records.txt from.
+	private long loadCheckpoint(RentalStore.Loader loader) {
+		if (!checkpointFile.exists()) {
+			return 0;  //No checkpoint yet, so the whole log is replayed.
+		}
+		long offset = 0;
+		try {
+			List<String> lines = new ArrayList<>();
+			try (BufferedReader reader = new BufferedReader(new FileReader(checkpointFile))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lines.add(line);
+				}
+			}
+			String[] archiving = null;
+			for (String line : lines) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				String[] data = line.split(",");
+				if (data[0].equals("OFFSET")) {
+					offset = Long.parseLong(data[1]);
+					continue;
+				}
+				if (data[0].equals("ARCHIVING")) {
+					archiving = data;
+					continue;
+				}
+				Vehicle vehicle = loader.findVehicle(data[0]);
+				if (vehicle != null) {
+					vehicle.setStatus(Vehicle.VehicleStatus.valueOf(data[1]));
+				}
+			}
+			if (archiving != null) {
+				//A compaction stopped part way through. It is finished before anything reads the log.
+				finishArchiving(Long.parseLong(archiving[1]), Long.parseLong(archiving[2]), lines);
+				offset = 0;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		//A log shorter than the offset has been replaced since the checkpoint, so it is replayed from the start.
+		return offset <= recordFile.length() ? offset : 0;
+	}
+
+	//Writes out any lines still waiting in the persistence queue or the group commit buffers.
+	@Override
+	public void flush() throws IOException {
+		pipeline.drain();  //Lines still queued for the background writer come first.
+		vehicleLog.flush();
+		customerLog.flush();
+		recordLog.flush();
+		reservationLog.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		pipeline.close();  //Drains the queue and stops the background writer.
+		vehicleLog.close();
+		customerLog.close();
+		recordLog.close();
+		reservationLog.close();
+	}
+
+	@Override
+	public void loadVehicles(RentalStore.Loader loader) throws IOException {
+		if (!vehicleFile.exists()) {
+			return;  //Nothing has been saved yet.
+		}
+		//Parses the file in parallel chunks straight from the bytes, then adds the vehicles in the order they were saved.
+		//#DICT lines are read as they are met; a line whose make or model is defined in a chunk that hasn't got that
+		//far yet is kept as text and parsed once every chunk is done.
+		List<String> errors = new ArrayList<>();
+		List<List<Object>> chunks = ParallelFileLoader.loadLines(vehicleFile, 0, ArrayList::new, this::readVehicleLine, errors);
+		for (List<Object> chunk : chunks) {
+			for (Object item : chunk) {
+				Vehicle vehicle;
+				try {
+					vehicle = item instanceof Vehicle ? (Vehicle) item : parseDeferredVehicle((String) item);
+				} catch (CsvTokenizer.FieldException e) {
+					errors.add("line \"" + item + "\": " + e.getMessage());  //Its line number is gone by now, so the line is shown.
+					continue;
+				}
+				if (vehicle != null) {
+					loader.addVehicle(vehicle);
+				}
+			}
+		}
+		reportLoadErrors(vehicleFile, errors);
+	}
+
+	//Reads one line of vehicles.txt into the chunk: a #DICT line goes into the file's codes, a vehicle is added to
+	//the chunk, or the line's text if it uses a code that isn't defined yet.
+	private void readVehicleLine(List<Object> chunk, CsvTokenizer line) {
+		if (line.next("type").is("#DICT")) {
+			int fileCode = line.next("code").asInt();
+			vehicleCodes.define(fileCode, line.next("value").asString());
+			return;
+		}
+		Vehicle vehicle = parseVehicle(line, vehicleCodes);
+		chunk.add(vehicle != null ? vehicle : line.line());
+	}
+
+	//Parses a vehicle line kept back while loading, now that every #DICT line has been read.
+	private Vehicle parseDeferredVehicle(String line) {
+		CsvTokenizer tokenizer = CsvTokenizer.of(line);
+		tokenizer.next("type");
+		Vehicle vehicle = parseVehicle(tokenizer, vehicleCodes);
+		if (vehicle == null) {
+			System.out.println("Error: Skipping a vehicle with an undefined make or model code: " + line);
+		}
+		return vehicle;
+	}
+
+	//Builds a vehicle from a line in the vehicles.txt format with plain make and model values.
+	static Vehicle parseVehicle(String line) {
+		CsvTokenizer tokenizer = CsvTokenizer.of(line);
+		tokenizer.next("type");
+		return parseVehicle(tokenizer, null);
+	}
+
+	//Builds a vehicle from one line of vehicles.txt whose type field has just been read, looking up "@code" makes and
+	//models in the file's codes. Returns null if a code isn't defined yet.
+	private static Vehicle parseVehicle(CsvTokenizer line, MakeModelDictionary.FileCodes codes) {
+		//Gets the necessary fields of the vehicle using the order in which they were saved.
+		boolean car = line.is("Car");
+		boolean minibus = line.is("Minibus");
+		int plateCode = line.next("plate").asPlateCode();
+		String licensePlate = plateCode == PlateCodec.NO_CODE ? line.asString() : null;  //Only plates that can't be packed are kept as text.
+		line.next("make");
+		String make = codes != null && line.startsWith('@') ? codes.resolve(line.asInt(1)) : line.asString();
+		line.next("model");
+		String model = codes != null && line.startsWith('@') ? codes.resolve(line.asInt(1)) : line.asString();
+		if (make == null || model == null) {
+			return null;
+		}
+		int year = line.next("year").asInt();
+		Vehicle vehicle;
+
+		if (car) {
+			int numSeats = line.next("seats").asInt();
+			vehicle = new Car(make, model, year, numSeats);
+		} else if (minibus) {
+			boolean isAccessible = line.next("accessible").asBoolean();
+			vehicle = new Minibus(make, model, year, isAccessible);
+		} else {
+			double cargoSize = line.next("cargo size").asDecimal();
+			boolean hasTrailer = line.next("trailer").asBoolean();
+			vehicle = new PickupTruck(make, model, year, cargoSize, hasTrailer);
+		}
+
+		if (licensePlate == null) {
+			vehicle.setPlateCode(plateCode);
+		} else {
+			try {
+				vehicle.setLicensePlate(licensePlate);
+			} catch (IllegalArgumentException e) {
+				throw new CsvTokenizer.FieldException(2, "field 2 (plate) should be three letters and three digits but was \"" + licensePlate + "\"");
+			}
+		}
+		return vehicle;
+	}
+
+	//Prints the lines a loader had to skip, e.g. "vehicles.txt line 7: field 5 (year) should be a whole number".
+	private static void reportLoadErrors(File file, List<String> errors) {
+		for (String error : errors) {
+			System.out.println("Error: Skipped " + file.getName() + " " + error);
+		}
+	}
+
+	@Override
+	public void loadCustomers(RentalStore.Loader loader) throws IOException {
+		if (!customerFile.exists()) {
+			return;
+		}
+		List<String> errors = new ArrayList<>();
+		List<List<Customer>> chunks = ParallelFileLoader.loadLines(customerFile, 0, ArrayList::new, (chunk, line) -> chunk.add(parseCustomer(line)), errors);
+		for (List<Customer> chunk : chunks) {
+			for (Customer customer : chunk) {
+				loader.addCustomer(customer);
+			}
+		}
+		reportLoadErrors(customerFile, errors);
+	}
+
+	//Builds a customer from one line of customers.txt.
+	static Customer parseCustomer(String line) {
+		return parseCustomer(CsvTokenizer.of(line));
+	}
+
+	private static Customer parseCustomer(CsvTokenizer line) {
+		int customerId = line.next("customer id").asInt();
+		String customerName = line.next("name").asString();
+		return new Customer(customerId, customerName);
+	}
+
+	@Override
+	public void loadRecords(RentalStore.Loader loader) throws IOException {
+		long offset = loadCheckpoint(loader);  //Restores the checkpointed statuses and gets the offset to replay from.
+		if (offset > 0 || archiveFile.exists()) {
+			loader.setEarlierRecords(totals -> countEarlierRecords(totals, offset, loader));
+		}
+		if (!recordFile.exists()) {
+			return;
+		}
+		if (lazyHistory) {
+			//One pass checks every line the way the full load would and sets the statuses, but keeps only where
+			//the records start. Lines it turned down are turned down again when the records are read later.
+			List<String> errors = new ArrayList<>();
+			RecordBatch scanned = new RecordBatch(1);
+			loader.setLazyHistory(HistorySegment.scan(recordFile, offset, line -> scanRecordStatus(line, scanned, loader, errors), line -> parseScannedRecord(line, loader)));
+			reportLoadErrors(recordFile, errors);
+			return;
+		}
+		//Records are parsed in parallel from the checkpoint offset into column batches, but replayed in file order
+		//since each vehicle's status depends on the order of its RENT and RETURN records.
+		List<String> errors = new ArrayList<>();
+		List<RecordBatch> batches = ParallelFileLoader.loadLines(recordFile, offset, () -> new RecordBatch(RECORD_BATCH),
+				(batch, line) -> readRecord(batch, line, loader), errors);
+		for (RecordBatch batch : batches) {
+			for (int i = 0; i < batch.size; i++) {
+				loader.addRecord(batch.vehicles[i], batch.customers[i], batch.days[i], batch.amounts[i], batch.types[i]);
+			}
+		}
+		if (!errors.isEmpty()) {
+			System.out.println("Line numbers below count from byte " + offset + " of " + recordFile.getName() + ", where the checkpoint ends.");
+		}
+		reportLoadErrors(recordFile, errors);
+	}
+
+	//Counts the records before the checkpoint, those compaction archived and then those still at the start of
+	//rental_records.txt, into the totals. The startup that first read them has reported their bad lines already.
+	private void countEarlierRecords(RentalAggregates totals, long offset, RentalStore.Loader loader) throws IOException {
+		if (archiveFile.exists()) {
+			countRecords(totals, archiveFile, Long.MAX_VALUE, loader);
+		}
+		if (offset > 0) {
+			countRecords(totals, recordFile, offset, loader);
+		}
+	}
+
+	private static void countRecords(RentalAggregates totals, File file, long limit, RentalStore.Loader loader) throws IOException {
+		List<RecordBatch> batches = ParallelFileLoader.loadLines(file, 0, limit, () -> new RecordBatch(RECORD_BATCH),
+				(batch, line) -> readRecord(batch, line, loader), new ArrayList<>());
+		for (RecordBatch batch : batches) {
+			for (int i = 0; i < batch.size; i++) {
+				totals.add(batch.vehicles[i], batch.customers[i], batch.days[i], batch.amounts[i], batch.types[i]);
+			}
+		}
+	}
+
+	//Applies one line of rental_records.txt to its vehicle's status without building a record. The line goes
+	//through the same checks as in a full load, into a one-row batch the scan reuses, and a bad line is noted
+	//in errors. Returns whether parseRecord would turn the line into a record.
+	private static boolean scanRecordStatus(String line, RecordBatch scanned, RentalStore.Loader loader, List<String> errors) {
+		scanned.size = 0;
+		try {
+			readRecord(scanned, CsvTokenizer.of(line), loader);
+		} catch (CsvTokenizer.FieldException e) {
+			errors.add("line \"" + line + "\": " + e.getMessage());
+			return false;
+		}
+		if (scanned.size == 0) {
+			return false;
+		}
+		if ("RENT".equals(scanned.types[0])) {
+			scanned.vehicles[0].setStatus(Vehicle.VehicleStatus.Rented);
+		} else if ("RETURN".equals(scanned.types[0])) {
+			scanned.vehicles[0].setStatus(Vehicle.VehicleStatus.Available);
+		}
+		return true;
+	}
+
+	//parseRecord for the lines of a lazy startup, where the scan has already reported the bad ones.
+	private static RentalRecord parseScannedRecord(String line, RentalStore.Loader loader) {
+		try {
+			return parseRecord(line, loader);
+		} catch (CsvTokenizer.FieldException e) {
+			return null;  //Turned down by the scan too, so it isn't counted as a row.
+		}
+	}
+
+	//Builds a record from one line of rental_records.txt, or returns null if its vehicle or customer is unknown.
+	static RentalRecord parseRecord(String line, RentalStore.Loader loader) {
+		RecordBatch batch = new RecordBatch(1);
+		readRecord(batch, CsvTokenizer.of(line), loader);
+		return batch.size == 0 ? null : batch.record(0);
+	}
+
+	//Adds one line of rental_records.txt to the batch, unless its vehicle or customer is unknown.
+	//Vehicles and customers are already loaded by this point, so the lookups are safe from the worker threads.
+	private static void readRecord(RecordBatch batch, CsvTokenizer line, RentalStore.Loader loader) {
+		int plateCode = line.next("plate").asPlateCode();
+		Vehicle vehicle = plateCode != PlateCodec.NO_CODE ? loader.findVehicle(plateCode) : loader.findVehicle(line.asString());
+		Customer customer = loader.findCustomer(line.next("customer id").asInt());
+		if (vehicle == null || customer == null) {
+			return;  //Skips the line to prevent any errors
+		}
+		long recordDay = line.next("date").asEpochDay();
+		double amount = line.next("amount").asDecimal();
+		line.next("type");
+		String recordType = line.is("RENT") ? "RENT" : line.is("RETURN") ? "RETURN" : line.asString();  //Shares the two usual values.
+		batch.add(vehicle, customer, recordDay, amount, recordType);
+	}
+
+	//Records read from one chunk of rental_records.txt, kept as columns so loading builds no RentalRecord or LocalDate.
+	private static class RecordBatch {
+		Vehicle[] vehicles;
+		Customer[] customers;
+		long[] days;
+		double[] amounts;
+		String[] types;
+		int size;
+
+		RecordBatch(int capacity) {
+			vehicles = new Vehicle[capacity];
+			customers = new Customer[capacity];
+			days = new long[capacity];
+			amounts = new double[capacity];
+			types = new String[capacity];
+		}
+
+		void add(Vehicle vehicle, Customer customer, long day, double amount, String type) {
+			if (size == vehicles.length) {
+				int capacity = size * 2;
+				vehicles = Arrays.copyOf(vehicles, capacity);
+				customers = Arrays.copyOf(customers, capacity);
+				days = Arrays.copyOf(days, capacity);
+				amounts = Arrays.copyOf(amounts, capacity);
+				types = Arrays.copyOf(types, capacity);
+			}
+			vehicles[size] = vehicle;
+			customers[size] = customer;
+			days[size] = day;
+			amounts[size] = amount;
+			types[size] = type;
+			size++;
+		}
+
+		RentalRecord record(int i) {
+			return new RentalRecord(vehicles[i], customers[i], LocalDate.ofEpochDay(days[i]), amounts[i], types[i]);
+		}
+	}
+
+	@Override
+	public void loadReservations(RentalStore.Loader loader) throws IOException {
+		if (!reservationFile.exists()) {
+			return;
+		}
+		try (BufferedReader reader = new BufferedReader(new FileReader(reservationFile))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					readReservation(line, loader);
+				}
+			}
+		}
+	}
+
+	//Applies one RESERVE or RELEASE line of reservations.txt.
+	static void readReservation(String line, RentalStore.Loader loader) {
+		String[] data = line.split(",");
+		if (data[0].equals("RELEASE")) {
+			loader.releaseReservation(Long.parseLong(data[1]));
+			return;
+		}
+		//RESERVE,id,plate,customerId,from,to
+		Vehicle vehicle = loader.findVehicle(data[2]);
+		Customer customer = loader.findCustomer(Integer.parseInt(data[3]));
+		if (vehicle == null || customer == null) {
+			return;  //Skips the line to prevent any errors
+		}
+		loader.addReservation(new Reservation(Long.parseLong(data[1]), vehicle, customer, LocalDate.parse(data[4]), LocalDate.parse(data[5])));
+	}
+}
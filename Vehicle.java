@@ -1,16 +1,24 @@
 
 public abstract class Vehicle {
-    private String licensePlate;
-    private String make;
-    private String model;
+    private String licensePlate;  //The plate's text. For a packed plate it is decoded from plateCode the first time it is asked for.
+    private int plateCode = PlateCodec.NO_CODE;
+    private int makeCode;  //Codes in MakeModelDictionary.shared(), so each make and model String is held once.
+    private int modelCode;
     private int year;
-    private VehicleStatus status;
+    private volatile VehicleStatus status;  //Volatile so a status change is seen right away by other threads.
+    private StatusListener statusListener;  //Told about every status change, e.g. the rental system's StatusIndex.
 
     public enum VehicleStatus { Available, Held, Rented, UnderMaintenance, OutOfService }
+    
+    //Receives a vehicle's status changes. from is null when the listener is first attached.
+    public interface StatusListener {
+    	void statusChanged(Vehicle vehicle, VehicleStatus from, VehicleStatus to);
+    }
+    
     public Vehicle(String make, String model, int year) {
     	
-    	this.make = capitalize(make);
-    	this.model = capitalize(model);
+    	this.makeCode = MakeModelDictionary.shared().encode(make);  //Capitalized by the dictionary.
+    	this.modelCode = MakeModelDictionary.shared().encode(model);
     	
         this.year = year;
         this.status = VehicleStatus.Available;
@@ -18,14 +26,6 @@ public abstract class Vehicle {
         
     }
     
-    private String capitalize(String input) {
-    	//Checks if input is null or empty
-    	if(input == null || input.isEmpty()) 
-    		return null;
-    	else
-    		return input.substring(0, 1).toUpperCase() + input.substring(1).toLowerCase(); //Returns the capitalized input
-    }
-
     public Vehicle() {
         this(null, null, 0);
     }
@@ -33,7 +33,9 @@ public abstract class Vehicle {
     public void setLicensePlate(String plate) {
     	//Throws exception if the plate is not valid 
     	if(isValid(plate)) { 
-    		 this.licensePlate = plate == null ? null : plate.toUpperCase();
+    		 String upper = plate.toUpperCase();
+    		 this.plateCode = PlateCodec.encode(upper);
+    		 this.licensePlate = upper;
     	}else {
     		throw new IllegalArgumentException("Invalid License Plate entered.");  //Throws exception since plate is not valid .
     	}
@@ -63,22 +65,59 @@ public abstract class Vehicle {
     	return true;  //Returns true since the plate is valid 
     }
 
-    public void setStatus(VehicleStatus status) {
+    //Synchronized so the change and the listener call happen together and listeners see each vehicle's changes in order.
+    public synchronized void setStatus(VehicleStatus status) {
+    	VehicleStatus previous = this.status;
     	this.status = status;
+    	if (statusListener != null && previous != status) {
+    		statusListener.statusChanged(this, previous, status);
+    	}
+    }
+    
+    //Attaches the listener and reports the current status to it. A vehicle belongs to one rental system, so it has one listener.
+    synchronized void setStatusListener(StatusListener listener) {
+    	this.statusListener = listener;
+    	if (listener != null) {
+    		listener.statusChanged(this, null, status);
+    	}
     }
 
-    public String getLicensePlate() { return licensePlate; }
+    public String getLicensePlate() {
+    	String plate = licensePlate;
+    	if (plate == null && plateCode != PlateCodec.NO_CODE) {
+    		plate = PlateCodec.decode(plateCode);
+    		licensePlate = plate;  //A race only decodes the same plate twice.
+    	}
+    	return plate;
+    }
+
+    //Sets the plate from its PlateCodec code, which is always a valid plate, without building the text first.
+    void setPlateCode(int code) {
+    	if (code < 0 || code >= PlateCodec.CODES) {
+    		throw new IllegalArgumentException("Invalid License Plate code.");
+    	}
+    	this.plateCode = code;
+    	this.licensePlate = null;
+    }
+
+    //The packed plate, or PlateCodec.NO_CODE if there is no plate or it can't be packed.
+    public int getPlateCode() { return plateCode; }
+
+    public String getMake() { return MakeModelDictionary.shared().value(makeCode); }
+
+    public String getModel() { return MakeModelDictionary.shared().value(modelCode); }
 
-    public String getMake() { return make; }
+    //The make's code in MakeModelDictionary.shared(), or MakeModelDictionary.NO_CODE if there is no make.
+    public int getMakeCode() { return makeCode; }
 
-    public String getModel() { return model;}
+    public int getModelCode() { return modelCode; }
 
     public int getYear() { return year; }
 
     public VehicleStatus getStatus() { return status; }
 
     public String getInfo() {
-        return "| " + licensePlate + " | " + make + " | " + model + " | " + year + " | " + status + " |";
+        return "| " + getLicensePlate() + " | " + getMake() + " | " + getModel() + " | " + year + " | " + status + " |";
     }
 
 }
@@ -2,6 +2,8 @@ import java.util.Scanner;
 import java.time.LocalDate;
 
 public class VehicleRentalApp {
+	private static final int HISTORY_PAGE_SIZE = 20; //Rental history rows shown per page.
+	
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
         RentalSystem rentalSystem = RentalSystem.getInstance(); //Gets the rentalsystem instance using the static method.
@@ -144,11 +146,29 @@ public class VehicleRentalApp {
                     break;
                 
                 case 6:
-                    rentalSystem.displayRentalHistory();
+                	//Shows the history a page at a time so a long history doesn't flood the screen.
+                	//A short page is the last one. size() only counts the rows, so a lazily loaded history stays on disk.
+                	int shown = 0;
+                	while (true) {
+                		int onPage = rentalSystem.displayRentalHistory(shown, HISTORY_PAGE_SIZE, null);
+                		shown += onPage;
+                		if (onPage < HISTORY_PAGE_SIZE || shown >= rentalSystem.getRentalHistory().size()) {
+                			break;  //That was the last page.
+                		}
+                		System.out.print("Press Enter for the next page, or q to stop: ");
+                		if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                			break;
+                		}
+                	}
+                	if (rentalSystem.getRentalHistory().hasEarlierRecords()) {
+                		//Records from before a checkpoint, or moved to the archive by compaction, are only read back for the totals.
+                		System.out.println("  Records saved before the last checkpoint count in the totals but aren't listed.");
+                	}
                     break;
                     
                 case 0:
                 	scanner.close();
+                	rentalSystem.close(); //Writes out any batched lines before exiting.
                     System.exit(0);
             }
         }
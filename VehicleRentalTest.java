@@ -1,9 +1,38 @@
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import java.io.StringWriter;
+import java.time.YearMonth;
+import java.util.Random;
+import java.util.Arrays;
+import java.util.Map;
+import java.io.StringReader;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import java.lang.reflect.Constructor ;
 import java.lang.reflect.Modifier;
 
@@ -87,6 +116,1412 @@ class VehicleRentalTest {
 		
 		
 	}
+	@Test
+	public void testConcurrentRentalsNeverDoubleRent(@TempDir File dataDir) throws Exception {
+		
+		//Uses its own rental system over a temporary folder so the real data files are left alone.
+		RentalSystem system = new RentalSystem(dataDir);
+		Vehicle vehicle = new Car("Honda","Civic",2022,4);
+		vehicle.setLicensePlate("RUN001");
+		assertTrue(system.addVehicle(vehicle));
+		
+		int threads = 8;
+		int rounds = 200;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			for (int round = 0; round < rounds; round++) {
+				CyclicBarrier start = new CyclicBarrier(threads);  //Releases all the threads together so they race for the vehicle.
+				AtomicInteger rented = new AtomicInteger();
+				List<Future<?>> results = new ArrayList<>();
+				for (int t = 0; t < threads; t++) {
+					Customer customer = new Customer(t, "Clerk" + t);
+					results.add(pool.submit(() -> {
+						start.await();
+						if (system.rentVehicle(vehicle, customer, LocalDate.now(), 100)) {
+							rented.incrementAndGet();
+						}
+						return null;
+					}));
+				}
+				for (Future<?> result : results) {
+					result.get();
+				}
+				assertEquals(1, rented.get());   //Asserts that exactly one of the racing threads got the vehicle.
+				assertTrue(system.returnVehicle(vehicle, new Customer(0, "Clerk0"), LocalDate.now(), 0));
+			}
+		} finally {
+			pool.shutdown();
+			system.close();
+		}
+		
+		assertEquals(rounds * 2, system.getRentalHistory().getRentalHistory().size());  //One rent and one return per round.
+	}
+	@Test
+	public void testConcurrentRentalsOfDifferentVehicles(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		int threads = 8;
+		int cycles = 500;
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				//Each thread rents and returns its own vehicle, so none of them should ever be turned away.
+				Vehicle vehicle = new Minibus("Ford","Transit",2020,true);
+				vehicle.setLicensePlate("BUS10" + t);
+				assertTrue(system.addVehicle(vehicle));
+				Customer customer = new Customer(t, "Driver" + t);
+				assertTrue(system.addCustomer(customer));
+				results.add(pool.submit(() -> {
+					int completed = 0;
+					for (int i = 0; i < cycles; i++) {
+						if (system.rentVehicle(vehicle, customer, LocalDate.now(), 50)
+								&& system.returnVehicle(vehicle, customer, LocalDate.now(), 0)) {
+							completed++;
+						}
+					}
+					return completed;
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertEquals(cycles, result.get());
+			}
+		} finally {
+			pool.shutdown();
+			system.close();
+		}
+		
+		//Asserts that no record was lost and every vehicle ended up back in the lot.
+		assertEquals(threads * cycles * 2, system.getRentalHistory().getRentalHistory().size());
+		for (int t = 0; t < threads; t++) {
+			assertEquals(Vehicle.VehicleStatus.Available, system.findVehicleByPlate("BUS10" + t).getStatus());
+		}
+		
+		//Asserts that a fresh load of the saved records agrees with the statuses in memory.
+		RentalSystem reloaded = new RentalSystem(dataDir);
+		assertEquals(threads * cycles * 2, reloaded.getRentalHistory().getRentalHistory().size());
+		reloaded.close();
+	}
+	@Test
+	public void testPlatesPackIntoCodesAndBack(@TempDir File dataDir) throws Exception {
+		
+		//Asserts the ends of the code range, case folding, and plates that can't be packed.
+		assertEquals(0, PlateCodec.encode("AAA000"));
+		assertEquals(PlateCodec.CODES - 1, PlateCodec.encode("ZZZ999"));
+		assertEquals(1000, PlateCodec.encode("AAB000"));
+		assertEquals(PlateCodec.encode("QRS456"), PlateCodec.encode("qrs456"));
+		for (String plate : new String[] { "AAA000", "AAA999", "ABZ001", "ZAA000", "ZZZ999" }) {
+			assertEquals(plate, PlateCodec.decode(PlateCodec.encode(plate)));
+		}
+		assertEquals(PlateCodec.NO_CODE, PlateCodec.encode(null));
+		assertEquals(PlateCodec.NO_CODE, PlateCodec.encode("ABC12"));
+		assertEquals(PlateCodec.NO_CODE, PlateCodec.encode("AB1234"));
+		assertEquals(PlateCodec.NO_CODE, PlateCodec.encode("\u00c4BC123"));
+		assertEquals(PlateCodec.NO_CODE, PlateCodec.encode("ABC\u0661\u0662\u0663"));
+		assertThrows(IllegalArgumentException.class, () -> PlateCodec.decode(PlateCodec.CODES));
+		assertThrows(IllegalArgumentException.class, () -> PlateCodec.decode(-1));
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Vehicle packed = new Car("Mazda","3",2022,5);
+		packed.setLicensePlate("mzd300");
+		Vehicle unpacked = new Car("Mazda","6",2022,5);
+		unpacked.setLicensePlate("\u00e4BC123");
+		assertTrue(system.addVehicle(packed));
+		assertTrue(system.addVehicle(unpacked));
+		
+		//Asserts that lookups ignore case like the plate checks, but don't trim, and that the plate text is kept.
+		assertSame(packed, system.findVehicleByPlate("MZD300"));
+		assertSame(unpacked, system.findVehicleByPlate("\u00c4bc123"));
+		assertNull(system.findVehicleByPlate(" MZD300"));
+		assertSame(packed.getLicensePlate(), packed.getLicensePlate());
+		assertEquals(PlateCodec.NO_CODE, unpacked.getPlateCode());
+		
+		//Asserts that a vehicle without a plate is turned away, since it couldn't be indexed, locked on or loaded back.
+		assertFalse(system.addVehicle(new Car("Mazda","2",2022,5)));
+		system.close();
+		
+		RentalSystem reloaded = new RentalSystem(dataDir);
+		assertEquals("MZD300", reloaded.findVehicleByPlate("mzd300").getLicensePlate());
+		assertSame(reloaded.findVehicleByPlate("mzd300").getLicensePlate(), reloaded.findVehicleByPlate("mzd300").getLicensePlate());
+		reloaded.close();
+	}
+	@Test
+	public void testHistoryGivesBackTheCustomerEachRecordWasAddedWith() {
+		
+		RentalHistory history = new RentalHistory();
+		Vehicle vehicle = new Car("Seat","Ibiza",2021,5);
+		vehicle.setLicensePlate("IDS100");
+		Customer first = new Customer(40, "First Name");
+		Customer renamed = new Customer(40, "Second Name");  //Same id, e.g. a counter that typed the name differently.
+		history.addRecord(vehicle, first, LocalDate.of(2025, 1, 1).toEpochDay(), 10, "RENT");
+		history.addRecord(vehicle, renamed, LocalDate.of(2025, 1, 2).toEpochDay(), 0, "RETURN");
+		
+		//Asserts that each record keeps its own customer object, while the id index still groups them.
+		List<RentalRecord> records = history.getRentalHistory();
+		assertSame(first, records.get(0).getCustomer());
+		assertSame(renamed, records.get(1).getCustomer());
+		assertEquals(2, history.getRentalRecordsByCustomerId(40).size());
+		assertSame(renamed, history.getRentalRecordsByCustomerId(40).get(1).getCustomer());
+	}
+	@Test
+	public void testRunningTotalsStayExactOverAnyDateRange() {
+		
+		RentalHistory history = new RentalHistory();
+		Vehicle vehicle = new Car("Seat","Ibiza",2021,5);
+		vehicle.setLicensePlate("SUM100");
+		Customer customer = new Customer(16, "Summed");
+		//Two records centuries away from the rest, with amounts far apart in size.
+		history.addRecord(vehicle, customer, LocalDate.of(202, 3, 4).toEpochDay(), 1000000000.01, "RENT");
+		history.addRecord(vehicle, customer, LocalDate.of(9999, 12, 31).toEpochDay(), 0.01, "RETURN");
+		Random random = new Random(16);
+		for (int i = 0; i < 500; i++) {
+			LocalDate date = LocalDate.of(2023, 1, 1).plusDays(random.nextInt(1100));
+			history.addRecord(vehicle, customer, date.toEpochDay(), random.nextInt(100000) / 100.0, i % 2 == 0 ? "RENT" : "RETURN");
+		}
+		for (int i = 0; i < 10; i++) {
+			history.addRecord(vehicle, customer, LocalDate.of(2030, 1, 1).toEpochDay(), 0.1, "RENT");
+		}
+		RentalAggregates totals = history.getAggregates();
+		List<RentalRecord> records = history.getRentalHistory();
+		
+		//Asserts that ranges from a day to thousands of years add up to exactly the cents of the records in them.
+		for (int i = 0; i < 300; i++) {
+			LocalDate from = i % 10 == 0 ? LocalDate.of(100, 1, 1).plusDays(random.nextInt(800000)) : LocalDate.of(2022, 6, 1).plusDays(random.nextInt(1500));
+			LocalDate to = from.plusDays(random.nextInt(i % 3 == 0 ? 3000000 : 400));
+			long rentCents = 0;
+			long returnCents = 0;
+			long rentals = 0;
+			for (RentalRecord record : records) {
+				if (!record.getRecordDate().isBefore(from) && !record.getRecordDate().isAfter(to)) {
+					if (record.getRecordType().equals("RENT")) {
+						rentCents += Math.round(record.getTotalAmount() * 100);
+						rentals++;
+					} else {
+						returnCents += Math.round(record.getTotalAmount() * 100);
+					}
+				}
+			}
+			RentalAggregates.Totals between = totals.getTotalsBetween(from, to);
+			assertEquals(rentCents / 100.0, between.getRentAmount(), from + " to " + to);
+			assertEquals(returnCents / 100.0, between.getReturnFees(), from + " to " + to);
+			assertEquals(rentals, between.getRentals(), from + " to " + to);
+		}
+		assertEquals(0.01, totals.getTotalsBetween(LocalDate.of(2500, 1, 1), LocalDate.MAX).getReturnFees());
+		assertEquals(1000000000.01, totals.getMonthTotals(YearMonth.of(202, 3)).getRentAmount());
+		assertEquals(1.0, totals.getDayTotals(LocalDate.of(2030, 1, 1)).getRentAmount());
+		assertEquals(RentalAggregates.Totals.NONE, totals.getTotalsBetween(LocalDate.of(2030, 1, 2), LocalDate.of(2030, 1, 1)));
+	}
+	@Test
+	public void testTotalsCountRecordsBeforeACheckpointAfterRestart(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Customer customer = new Customer(3, "Counted");
+		system.addCustomer(customer);
+		Vehicle vehicle = new Car("Kia","Rio",2022,5);
+		vehicle.setLicensePlate("TOT100");
+		system.addVehicle(vehicle);
+		for (int i = 0; i < 6; i++) {
+			assertTrue(system.rentVehicle(vehicle, customer, LocalDate.of(2025, 1, 1).plusDays(2 * i), 10.10));
+			assertTrue(system.returnVehicle(vehicle, customer, LocalDate.of(2025, 1, 2).plusDays(2 * i), 0.25));
+			if (i == 1) {
+				system.compact();  //The first four records go to the archive.
+			} else if (i == 3) {
+				system.checkpoint();  //The next four stay in the log, before the checkpoint.
+			}
+		}
+		RentalAggregates.Totals before = system.getRentalHistory().getAggregates().getTotals();
+		assertEquals(60.6, before.getRentAmount());
+		system.close();
+		
+		//Asserts that the archived and checkpointed records count in the totals, though only the last four are replayed.
+		RentalSystem reloaded = new RentalSystem(dataDir);
+		assertEquals(4, reloaded.getRentalHistory().size());
+		assertTrue(reloaded.getRentalHistory().hasEarlierRecords());
+		assertFalse(system.getRentalHistory().hasEarlierRecords());
+		assertEquals(before.toString(), reloaded.getRentalHistory().getAggregates().getTotals().toString());
+		assertEquals(0.25, reloaded.getRentalHistory().getAggregates().getDayTotals(LocalDate.of(2025, 1, 2)).getReturnFees());
+		assertEquals(1.5, reloaded.getRentalHistory().getTotalAmount("RETURN"));
+		
+		//Asserts that compacting after a restart neither loses nor double counts them.
+		reloaded.compact();
+		assertEquals(before.toString(), reloaded.getRentalHistory().getAggregates().getTotals().toString());
+		reloaded.close();
+		RentalSystem again = new RentalSystem(dataDir);
+		assertEquals(before.toString(), again.getRentalHistory().getAggregates().getTotals().toString());
+		again.close();
+	}
+	@Test
+	public void testCompactionStoppedPartWayIsFinishedAtStartup(@TempDir File dataDir) throws Exception {
+		
+		//0: the archive copy was cut short, 1: the copy finished, 2: the log was emptied too, each before the last checkpoint.
+		for (int crash = 0; crash < 3; crash++) {
+			File dir = new File(dataDir, "crash" + crash);
+			dir.mkdirs();
+			RentalSystem system = new RentalSystem(dir);
+			Customer customer = new Customer(5, "Archived");
+			system.addCustomer(customer);
+			Vehicle vehicle = new Car("Opel","Corsa",2020,5);
+			vehicle.setLicensePlate("CRS100");
+			system.addVehicle(vehicle);
+			system.rentVehicle(vehicle, customer, LocalDate.of(2025, 1, 1), 30);
+			system.returnVehicle(vehicle, customer, LocalDate.of(2025, 1, 2), 0);
+			system.compact();
+			system.rentVehicle(vehicle, customer, LocalDate.of(2025, 2, 1), 40);
+			system.returnVehicle(vehicle, customer, LocalDate.of(2025, 2, 2), 5);
+			system.close();
+			
+			//Leaves the files the way a compaction that stopped at this point would.
+			File log = new File(dir, "rental_records.txt");
+			File archive = new File(dir, "rental_records_archive.txt");
+			byte[] logBytes = Files.readAllBytes(log.toPath());
+			byte[] archiveBytes = Files.readAllBytes(archive.toPath());
+			Files.write(new File(dir, "rental_checkpoint.txt").toPath(), List.of("OFFSET," + logBytes.length,
+					"ARCHIVING," + archiveBytes.length + "," + logBytes.length, "CRS100,Available"));
+			Files.write(archive.toPath(), crash == 0 ? Arrays.copyOf(logBytes, logBytes.length / 2) : logBytes, StandardOpenOption.APPEND);
+			if (crash == 2) {
+				Files.write(log.toPath(), new byte[0]);
+			}
+			
+			//Asserts that startup finishes the move: every record is in the archive once, the log is empty and the totals count each once.
+			RentalSystem reloaded = new RentalSystem(dir);
+			byte[] expected = Arrays.copyOf(archiveBytes, archiveBytes.length + logBytes.length);
+			System.arraycopy(logBytes, 0, expected, archiveBytes.length, logBytes.length);
+			assertArrayEquals(expected, Files.readAllBytes(archive.toPath()), "crash " + crash);
+			assertEquals(0, log.length());
+			assertFalse(new String(Files.readAllBytes(new File(dir, "rental_checkpoint.txt").toPath())).contains("ARCHIVING"));
+			assertEquals(0, reloaded.getRentalHistory().size());
+			assertEquals(2, reloaded.getRentalHistory().getAggregates().getTotals().getRentals());
+			assertEquals(75.0, reloaded.getRentalHistory().getAggregates().getTotals().getRevenue());
+			Vehicle reloadedVehicle = reloaded.findVehicleByPlate("CRS100");
+			assertTrue(reloaded.rentVehicle(reloadedVehicle, reloaded.findCustomerById(5), LocalDate.of(2025, 3, 1), 50));
+			reloaded.compact();
+			reloaded.close();
+			
+			RentalSystem again = new RentalSystem(dir);
+			assertEquals(5, Files.readAllLines(archive.toPath()).size());
+			assertEquals(3, again.getRentalHistory().getAggregates().getTotals().getRentals());
+			assertEquals(Vehicle.VehicleStatus.Rented, again.findVehicleByPlate("CRS100").getStatus());
+			again.close();
+		}
+	}
+	@Test
+	public void testQueuedDurabilityModesKeepEveryRecord(@TempDir File dataDir) throws Exception {
+		
+		for (PersistencePipeline.DurabilityMode mode : new PersistencePipeline.DurabilityMode[] {
+				PersistencePipeline.DurabilityMode.GROUP, PersistencePipeline.DurabilityMode.ASYNC }) {
+			File dir = new File(dataDir, mode.name());
+			dir.mkdirs();
+			RentalSystem system = new RentalSystem(dir, mode);
+			Vehicle vehicle = new Car("Honda","Civic",2021,5);
+			vehicle.setLicensePlate("CIV100");
+			assertTrue(system.addVehicle(vehicle));
+			Customer customer = new Customer(1, "Queued");
+			assertTrue(system.addCustomer(customer));
+			for (int i = 0; i < 200; i++) {
+				assertTrue(system.rentVehicle(vehicle, customer, LocalDate.now(), 10));
+				assertTrue(system.returnVehicle(vehicle, customer, LocalDate.now(), 0));
+			}
+			assertTrue(system.rentVehicle(vehicle, customer, LocalDate.now(), 10));
+			system.close();  //Drains whatever the background writer has not written yet.
+			
+			//Asserts that every queued line reached the files and replays to the same state.
+			RentalSystem reloaded = new RentalSystem(dir, mode);
+			assertEquals(401, reloaded.getRentalHistory().size());
+			assertEquals(Vehicle.VehicleStatus.Rented, reloaded.findVehicleByPlate("CIV100").getStatus());
+			reloaded.close();
+		}
+	}
+	@Test
+	public void testPipelineClosesWhileSaversWaitForRoom(@TempDir File dataDir) throws Exception {
+		
+		AppendLog log = new AppendLog(new File(dataDir, "queued.txt"), 1, 0);
+		PersistencePipeline pipeline = new PersistencePipeline(PersistencePipeline.DurabilityMode.ASYNC, 2);
+		ExecutorService savers = Executors.newFixedThreadPool(5);
+		List<Future<?>> saved = new ArrayList<>();
+		Future<?> closed;
+		synchronized (log) {  //Holds the writer up in its first append, so the queue fills and the savers wait for room.
+			for (int t = 0; t < 4; t++) {
+				int saver = t;
+				saved.add(savers.submit(() -> {
+					for (int i = 0; i < 25; i++) {
+						pipeline.submit(log, saver + "," + i);
+					}
+					return null;
+				}));
+			}
+			Thread.sleep(100);
+			closed = savers.submit(() -> {
+				pipeline.close();
+				return null;
+			});
+			Thread.sleep(100);
+		}
+		
+		//Asserts that the close and every waiting saver finish, and nothing queued is lost.
+		closed.get(10, TimeUnit.SECONDS);
+		for (Future<?> saver : saved) {
+			saver.get(10, TimeUnit.SECONDS);
+		}
+		pipeline.close();  //Lines queued after the first close's marker may have started a new writer.
+		log.close();
+		savers.shutdown();
+		assertEquals(100, Files.readAllLines(new File(dataDir, "queued.txt").toPath()).size());
+		
+		//Asserts that a misspelt rental.durability falls back to SYNC instead of failing.
+		System.setProperty("rental.durability", "fastest");
+		try {
+			assertEquals(PersistencePipeline.DurabilityMode.SYNC, PersistencePipeline.configuredMode());
+		} finally {
+			System.clearProperty("rental.durability");
+		}
+	}
+	@Test
+	public void testReservationsBlockOverlappingWindows(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Vehicle first = new Car("Kia","Rio",2022,5);
+		first.setLicensePlate("RES100");
+		Vehicle second = new Car("Kia","Rio",2022,5);
+		second.setLicensePlate("RES200");
+		Vehicle bus = new Minibus("Ford","Transit",2020,true);
+		bus.setLicensePlate("RES300");
+		assertTrue(system.addVehicle(first));
+		assertTrue(system.addVehicle(second));
+		assertTrue(system.addVehicle(bus));
+		Customer customer = new Customer(5, "Planner");
+		assertTrue(system.addCustomer(customer));
+		
+		LocalDate start = LocalDate.now().plusDays(10);
+		Reservation reservation = system.reserveVehicle(first, customer, start, start.plusDays(4));
+		assertNotNull(reservation);
+		//Asserts that any window touching the reservation is refused and a window next to it is accepted.
+		assertNull(system.reserveVehicle(first, customer, start.plusDays(4), start.plusDays(6)));
+		assertNull(system.reserveVehicle(first, customer, start.minusDays(3), start));
+		assertNotNull(system.reserveVehicle(first, customer, start.plusDays(5), start.plusDays(6)));
+		
+		assertEquals(List.of(second), system.findAvailableVehicles("Car", start.plusDays(1), start.plusDays(2)));
+		assertEquals(List.of(first, second), system.findAvailableVehicles("Car", start.minusDays(5), start.minusDays(1)));
+		assertFalse(system.rentVehicle(first, customer, start.plusDays(2), 40));  //Reserved on that date.
+		
+		//Asserts that a reservation covering today holds the vehicle until it is picked up.
+		Reservation today = system.reserveVehicle(second, customer, LocalDate.now(), LocalDate.now().plusDays(1));
+		assertEquals(Vehicle.VehicleStatus.Held, second.getStatus());
+		system.close();
+		
+		RentalSystem reloaded = new RentalSystem(dataDir);
+		Vehicle reloadedSecond = reloaded.findVehicleByPlate("RES200");
+		assertEquals(Vehicle.VehicleStatus.Held, reloadedSecond.getStatus());
+		assertEquals(2, reloaded.getReservations(reloaded.findVehicleByPlate("RES100")).size());
+		assertTrue(reloaded.rentReservedVehicle(today.getId(), LocalDate.now(), 60));
+		assertEquals(Vehicle.VehicleStatus.Rented, reloadedSecond.getStatus());
+		assertTrue(reloaded.cancelReservation(reservation.getId()));
+		assertEquals(List.of(reloaded.findVehicleByPlate("RES100"), reloadedSecond), reloaded.findAvailableVehicles("Car", start, start.plusDays(4)));
+		reloaded.close();
+	}
+	@Test
+	public void testNameIndexFindsCustomersByPartOfTheirName() throws Exception {
+		
+		NameIndex index = new NameIndex();
+		index.add(new Customer(1, "Ada Lovelace"));
+		index.add(new Customer(2, "Grace Hopper"));
+		index.add(new Customer(3, "Adam Smith"));
+		index.add(new Customer(4, null));
+		index.add(new Customer(1, "Someone Else"));  //Same id, so the first name stays.
+		
+		//Asserts substring search through the trigrams, short searches, case folding and prefixes in name order.
+		assertEquals(List.of(2), index.findBySubstring("HOPP"));
+		assertEquals(List.of(1, 3), sorted(index.findBySubstring("ad")));
+		assertEquals(List.of(1), index.findBySubstring("love"));
+		assertTrue(index.findBySubstring("else").isEmpty());
+		assertTrue(index.findBySubstring("zzz").isEmpty());
+		assertEquals(List.of(1, 3), index.findByPrefix("ADA"));
+		assertEquals(List.of(3), index.findByPrefix("adam "));
+		assertEquals(4, index.size());
+		assertTrue(index.contains(4));
+		
+		//Asserts that history searches fold case the same way as the index under a locale with its own rules.
+		Locale before = Locale.getDefault();
+		Locale.setDefault(Locale.forLanguageTag("tr"));
+		try {
+			RentalSystem system = new RentalSystem(new InMemoryRentalStore());
+			Vehicle vehicle = new Car("Fiat","Egea",2023,5);
+			vehicle.setLicensePlate("TUR001");
+			system.addVehicle(vehicle);
+			Customer customer = new Customer(12, "TITAN");
+			system.addCustomer(customer);
+			system.rentVehicle(vehicle, customer, LocalDate.of(2025, 6, 1), 40);
+			assertEquals(1, system.getRentalHistory().getRentalRecordsByCustomer("titan").size());
+			assertEquals(1, system.getRentalHistory().getRentalRecordsByCustomer("12 | Name: titan").size());
+			//Asserts that text matching the labels of the whole record still finds it, as before the index.
+			assertEquals(1, system.getRentalHistory().getRentalRecordsByCustomer("name").size());
+			assertEquals(1, system.getRentalHistory().getRentalRecordsByCustomer("Customer").size());
+			assertEquals(1, system.getRentalHistory().getRentalRecordsByCustomer(" titan").size());
+			assertTrue(system.getRentalHistory().getRentalRecordsByCustomer("nametitan").isEmpty());
+			assertEquals(List.of(12), system.findCustomersByName("tit").stream().map(Customer::getCustomerId).toList());
+		} finally {
+			Locale.setDefault(before);
+		}
+	}
+	
+	private static List<Integer> sorted(List<Integer> ids) {
+		List<Integer> copy = new ArrayList<>(ids);
+		copy.sort(null);
+		return copy;
+	}
+	@Test
+	public void testServerHandlesManyClientsOverLoopback(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Vehicle contested = new Car("Mazda","3",2023,5);
+		contested.setLicensePlate("RAC001");
+		assertTrue(system.addVehicle(contested));
+		RentalServer server = new RentalServer(system, 0);
+		server.start();
+		int clients = 2000;  //Thousands of connections open at once, each on its own server thread.
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		CyclicBarrier start = new CyclicBarrier(clients);
+		AtomicInteger wonRace = new AtomicInteger();
+		List<Future<?>> results = new ArrayList<>();
+		for (int c = 0; c < clients; c++) {
+			int id = c + 1;
+			results.add(pool.submit(() -> {
+				try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+						BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+						PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+					start.await();
+					String plate = String.format("N%cT%03d", 'A' + id / 1000, id % 1000);  //Plates have room for 1000 per letter.
+					out.println("ADD_VEHICLE,Car," + plate + ",Mazda,3,2023,5");
+					assertEquals("OK " + plate, in.readLine());
+					out.println("ADD_CUSTOMER," + id + ",Client " + id);
+					assertEquals("OK " + id, in.readLine());
+					out.println("RENT," + plate + "," + id + ",30");
+					assertEquals("OK RENTED", in.readLine());
+					out.println("RETURN," + plate + "," + id + ",5");
+					assertEquals("OK RETURNED", in.readLine());
+					out.println("FIND," + plate);
+					assertTrue(in.readLine().startsWith("OK "));
+					out.println("HISTORY_VEHICLE," + plate);
+					assertEquals("OK 2", in.readLine());
+					in.readLine();
+					in.readLine();
+					//Every client races for the same vehicle; only one may win it.
+					out.println("RENT,RAC001," + id + ",30");
+					if (in.readLine().equals("OK RENTED")) {
+						wonRace.incrementAndGet();
+					}
+					out.println("QUIT");
+					assertEquals("OK BYE", in.readLine());
+				}
+				return null;
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+		pool.shutdown();
+		
+		//Asserts that the shared system saw every client's records and exactly one winner of the race.
+		assertEquals(1, wonRace.get());
+		assertEquals(clients * 2 + 1, system.getRentalHistory().size());
+		assertEquals("ERR Unknown command NOPE\n", server.handle("NOPE"));
+		server.close();
+		system.close();
+	}
+	@Test
+	public void testMakeAndModelAreSavedThroughTheDictionary(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Vehicle first = new Car("toyota","corolla",2020,5);
+		first.setLicensePlate("DIC100");
+		Vehicle second = new PickupTruck("TOYOTA","Hilux",2021,500,true);
+		second.setLicensePlate("DIC200");
+		Vehicle third = new Minibus("Ford","COROLLA",2019,false);
+		third.setLicensePlate("DIC300");
+		assertTrue(system.addVehicle(first));
+		assertTrue(system.addVehicle(second));
+		assertTrue(system.addVehicle(third));
+		
+		//Asserts that differently cased values share one capitalized instance.
+		assertEquals("Toyota", first.getMake());
+		assertSame(first.getMake(), second.getMake());
+		assertSame(first.getModel(), third.getModel());
+		assertEquals(2, system.getMakeCounts().get("Toyota"));
+		system.close();
+		
+		//Asserts that each value is defined once in the file and the vehicles load back from the references.
+		List<String> lines = Files.readAllLines(new File(dataDir, "vehicles.txt").toPath());
+		assertEquals(4, lines.stream().filter(line -> line.startsWith("#DICT,")).count());
+		assertTrue(lines.contains("Car,DIC100,@0,@1,2020,5"));
+		RentalSystem reloaded = new RentalSystem(dataDir);
+		assertEquals(first.getInfo(), reloaded.findVehicleByPlate("DIC100").getInfo());
+		assertEquals(third.getInfo(), reloaded.findVehicleByPlate("DIC300").getInfo());
+		Vehicle fourth = new Car("Kia","Corolla",2022,4);
+		fourth.setLicensePlate("DIC400");
+		assertTrue(reloaded.addVehicle(fourth));
+		reloaded.close();
+		List<String> after = Files.readAllLines(new File(dataDir, "vehicles.txt").toPath());
+		assertEquals("#DICT,4,Kia", after.get(after.size() - 2));
+		assertEquals("Car,DIC400,@4,@1,2022,4", after.get(after.size() - 1));
+	}
+	@Test
+	public void testBadVehicleLineWaitingForItsMakeIsSkipped(@TempDir File dataDir) throws Exception {
+		
+		//Both vehicles use codes defined further down, so they are parsed after the rest of the file.
+		Files.write(new File(dataDir, "vehicles.txt").toPath(), List.of(
+				"Car,DEF100,@0,@1,20x0,5",
+				"Car,DEF200,@0,@1,2021,5",
+				"#DICT,0,Kia",
+				"#DICT,1,Rio",
+				"Car,DEF300,@0,@1,2022,4"));
+		PrintStream console = System.out;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(output, true));
+		RentalSystem system;
+		try {
+			system = new RentalSystem(dataDir);
+		} finally {
+			System.setOut(console);
+		}
+		
+		//Asserts that the bad line is reported and skipped like any other, and the lines around it still load.
+		assertNull(system.findVehicleByPlate("DEF100"));
+		assertEquals("Rio", system.findVehicleByPlate("DEF200").getModel());
+		assertEquals(2022, system.findVehicleByPlate("DEF300").getYear());
+		assertTrue(output.toString().contains("Error: Skipped vehicles.txt line \"Car,DEF100,@0,@1,20x0,5\": field 5 (year)"));
+		system.close();
+	}
+	@Test
+	public void testLazyHistorySkipsBadRecordLinesLikeAFullLoad(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem setup = new RentalSystem(dataDir);
+		for (int i = 1; i <= 3; i++) {
+			Vehicle vehicle = new Car("Fiat","Panda",2020,4);
+			vehicle.setLicensePlate("LZY00" + i);
+			setup.addVehicle(vehicle);
+		}
+		setup.addCustomer(new Customer(1, "Lazy"));
+		setup.close();
+		//Each vehicle is rented and returned in turn, with a bad line after every hundred good ones,
+		//so the bad lines fall inside several strides of the history's offset index.
+		String[] bad = {"LZY001,x1,2024-01-01,5.0,RENT", "LZY001,1,2024-13-40,5.0,RENT", "LZY001,1,2024-01-01,5.x,RENT", "LZY001"};
+		List<String> lines = new ArrayList<>();
+		for (int row = 0; row < 2400; row++) {
+			lines.add("LZY00" + (row % 3 + 1) + ",1," + LocalDate.of(2024, 1, 1).plusDays(row) + "," + row + ".0," + (row / 3 % 2 == 0 ? "RENT" : "RETURN"));
+			if (row % 100 == 99) {
+				lines.add(bad[row / 100 % bad.length]);
+			}
+		}
+		lines.add("LZY002,1,2031-01-01,oops,RENT");
+		Files.write(new File(dataDir, "rental_records.txt").toPath(), lines);
+		PrintStream console = System.out;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(output, true));
+		RentalSystem system;
+		try {
+			system = new RentalSystem(new TextRentalStore(dataDir, PersistencePipeline.DurabilityMode.SYNC, true));
+		} finally {
+			System.setOut(console);
+		}
+		
+		//Asserts that the startup scan reports the bad lines and counts and pages only the good ones, without parsing the history.
+		assertTrue(output.toString().contains("Error: Skipped rental_records.txt line \"LZY001,1,2024-13-40,5.0,RENT\": field 3 (date)"));
+		assertTrue(output.toString().contains("Error: Skipped rental_records.txt line \"LZY002,1,2031-01-01,oops,RENT\": field 4 (amount)"));
+		assertEquals(Vehicle.VehicleStatus.Available, system.findVehicleByPlate("LZY002").getStatus());
+		assertEquals(2400, system.getRentalHistory().size());
+		List<RentalRecord> page = system.getRentalHistory().getPage(2047, 3, null);
+		assertEquals(LocalDate.of(2024, 1, 1).plusDays(2047), page.get(0).getRecordDate());
+		assertEquals(2049.0, page.get(2).getTotalAmount());
+		
+		//Asserts that a rental made before the history is parsed stays after the records on disk once they are.
+		Vehicle late = system.findVehicleByPlate("LZY003");
+		assertTrue(system.rentVehicle(late, system.findCustomerById(1), LocalDate.of(2020, 1, 1), 7));
+		assertEquals(2401, system.getRentalHistory().getRentalRecordsByCustomerId(1).size());
+		assertEquals(2401, system.getRentalHistory().size());
+		assertEquals(late, system.getRentalHistory().getPage(2400, 1, null).get(0).getVehicle());
+		assertEquals(1, system.getRentalHistory().getRentalRecordsBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 1)).size());
+		assertEquals(1201, system.getRentalHistory().getAggregates().getTotals().getRentals());
+		system.close();
+	}
+	@Test
+	public void testLoadersParseFieldsAndSkipBadLines(@TempDir File dataDir) throws Exception {
+		
+		Files.write(new File(dataDir, "vehicles.txt").toPath(), List.of(
+				"Car,CSV100,Toyota,Corolla,2020,5",
+				"Car,CSV200,Toyota,Corolla,20x0,5",
+				"PickupTruck,csv300,Ford,Ranger,2021,1.25E3,TRUE"));
+		Files.write(new File(dataDir, "customers.txt").toPath(), List.of("1,Parser", "two,Broken"));
+		Files.write(new File(dataDir, "rental_records.txt").toPath(), List.of(
+				"CSV100,1,2024-02-29,1.2345678E7,RENT",
+				"CSV100,1,2024-02-30,10.0,RETURN",
+				"CSV300,1,2023-12-31,0.1,RENT\r"));
+		RentalSystem system = new RentalSystem(dataDir);
+		
+		//Asserts that each bad line is skipped on its own and the rest load with the same values the old parsing gave.
+		assertNull(system.findVehicleByPlate("CSV200"));
+		assertEquals("| CSV300 | Ford | Ranger | 2021 | Rented | | Cargo Size: 1250.0 | Has Trailer: Yes", system.findVehicleByPlate("CSV300").getInfo());
+		assertNull(system.findCustomerById(2));
+		List<RentalRecord> records = system.getRentalHistory().getRentalHistory();
+		assertEquals(2, records.size());
+		assertEquals(LocalDate.of(2024, 2, 29), records.get(0).getRecordDate());
+		assertEquals(1.2345678E7, records.get(0).getTotalAmount());
+		assertEquals(0.1, records.get(1).getTotalAmount());
+		system.close();
+		
+		//Asserts that amounts parse the same as Double.parseDouble, including ones with spaces around them.
+		for (String amount : new String[] { "0.1", "2.675", "-0.0", "9007199254740993", "1.0E-5", "123456789012345678901.5", "NaN", "12.50 ", " 7", "1e3 ", "2.5d" }) {
+			CsvTokenizer line = CsvTokenizer.of("x," + amount);
+			line.next("name");
+			assertEquals(Double.parseDouble(amount), line.next("amount").asDecimal(), amount);
+		}
+		assertThrows(CsvTokenizer.FieldException.class, () -> CsvTokenizer.of("12.5x").next("amount").asDecimal());
+		assertThrows(CsvTokenizer.FieldException.class, () -> CsvTokenizer.of("1e").next("amount").asDecimal());
+		CsvTokenizer.FieldException error = assertThrows(CsvTokenizer.FieldException.class, () -> CsvTokenizer.of("AAA111,abc").next("plate").next("customer id").asInt());
+		assertEquals("field 2 (customer id) should be a whole number but was \"abc\"", error.getMessage());
+	}
+	@Test
+	public void testShardedSystemRoutesByPlateAndGathersQueries(@TempDir File dataDir) throws Exception {
+		
+		ShardedRentalSystem system = new ShardedRentalSystem(dataDir, 4);
+		Customer customer = new Customer(7, "Spread");
+		assertTrue(system.addCustomer(customer));
+		assertFalse(system.addCustomer(new Customer(7, "Again")));
+		for (int i = 0; i < 40; i++) {
+			Vehicle vehicle = new Car("Seat","Ibiza",2022,5);
+			vehicle.setLicensePlate(String.format("SHD%03d", i));
+			assertTrue(system.addVehicle(vehicle));
+			assertTrue(system.rentVehicle(vehicle, customer, LocalDate.of(2025, 1, 1).plusDays(i), 10));
+		}
+		
+		//Asserts that every shard got part of the fleet and the fleet-wide answers add the shards together.
+		for (int i = 0; i < 4; i++) {
+			assertTrue(system.getShard(i).getVehicles(null).size() > 0);
+			assertNotNull(system.getShard(i).findCustomerById(7));
+		}
+		assertEquals(40, system.countVehicles(Vehicle.VehicleStatus.Rented));
+		List<RentalRecord> history = system.getRentalRecordsByCustomerId(7);
+		assertEquals(40, history.size());
+		assertEquals(LocalDate.of(2025, 1, 1), history.get(0).getRecordDate());
+		assertEquals(LocalDate.of(2025, 2, 9), history.get(39).getRecordDate());
+		
+		Vehicle returned = system.findVehicleByPlate("shd005");
+		assertTrue(system.returnVehicle(returned, customer, LocalDate.of(2025, 3, 1), 0));
+		Reservation reservation = system.reserveVehicle(returned, customer, LocalDate.of(2030, 1, 1), LocalDate.of(2030, 1, 3));
+		assertEquals(system.shardFor(returned), reservation.getId() % 4);
+		assertEquals(returned, system.findReservation(reservation.getId()).getVehicle());
+		system.close();
+		
+		ShardedRentalSystem reloaded = new ShardedRentalSystem(dataDir, 4);
+		assertEquals(41, reloaded.getHistorySize());
+		assertEquals(Vehicle.VehicleStatus.Available, reloaded.findVehicleByPlate("SHD005").getStatus());
+		assertTrue(reloaded.cancelReservation(reservation.getId()));
+		reloaded.close();
+		assertThrows(IllegalArgumentException.class, () -> new ShardedRentalSystem(dataDir, 8));
+	}
+	@Test
+	public void testShardedHistoryPagesMergeByDateAndCustomersReachEveryShard(@TempDir File dataDir) throws Exception {
+		
+		ShardedRentalSystem system = new ShardedRentalSystem(dataDir, 3);
+		Customer customer = new Customer(1, "Merged");
+		assertTrue(system.addCustomer(customer));
+		//A customer saved in one shard before a crash is added to the rest when added again.
+		Customer halfAdded = new Customer(2, "Half Added");
+		assertTrue(system.getShard(0).addCustomer(halfAdded));
+		assertTrue(system.addCustomer(halfAdded));
+		assertFalse(system.addCustomer(new Customer(2, "Taken")));
+		//Dates go back and forth, so no shard holds its records in date order.
+		for (int i = 0; i < 30; i++) {
+			Vehicle vehicle = new Car("Seat","Leon",2021,5);
+			vehicle.setLicensePlate(String.format("MRG%03d", i));
+			assertTrue(system.addVehicle(vehicle));
+			assertTrue(system.rentVehicle(vehicle, i % 2 == 0 ? customer : halfAdded, LocalDate.of(2025, 1, 1).plusDays(i * 7 % 11), 10));
+		}
+		
+		//Asserts that every page is the matching slice of the whole history in date order, records of the same date shard by shard.
+		List<RentalRecord> byDate = system.getRentalRecordsBetween(LocalDate.of(2000, 1, 1), LocalDate.of(2100, 1, 1));
+		assertEquals(30, byDate.size());
+		for (int offset = 0; offset < 35; offset += 4) {
+			StringWriter page = new StringWriter();
+			assertEquals(Math.max(0, Math.min(4, 30 - offset)), system.writeRentalHistory(page, offset, 4, null));
+			StringWriter expected = new StringWriter();
+			ReportWriter report = new ReportWriter(expected);
+			report.historyHeader();
+			for (RentalRecord record : byDate.subList(Math.min(30, offset), Math.min(30, offset + 4))) {
+				report.historyRow(record);
+			}
+			report.line("");
+			report.flush();
+			assertEquals(expected.toString(), page.toString());
+		}
+		StringWriter halfAddedPage = new StringWriter();
+		assertEquals(15, system.writeRentalHistory(halfAddedPage, 0, 100, record -> record.getCustomer().getCustomerId() == 2));
+		assertFalse(halfAddedPage.toString().contains("Merged"));
+		system.close();
+		
+		//Asserts that each shard loads every customer back from its own files.
+		ShardedRentalSystem reloaded = new ShardedRentalSystem(dataDir, 3);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("Half Added", reloaded.getShard(i).findCustomerById(2).getCustomerName());
+			assertNotNull(reloaded.getShard(i).findCustomerById(1));
+		}
+		assertEquals(30, reloaded.getHistorySize());
+		reloaded.close();
+	}
+	@Test
+	public void testWorkloadDriverRunsEveryOperation(@TempDir File dataDir) throws Exception {
+		
+		WorkloadDriver driver = new WorkloadDriver("dir=" + dataDir, "vehicles=200", "customers=50", "ops=4000", "warmup=0", "threads=2");
+		WorkloadDriver.Report report = driver.run(new PrintStream(OutputStream.nullOutputStream()));
+		
+		//Asserts that every measured operation is counted and lookups of existing vehicles always succeed.
+		assertEquals(4000, report.getOperations());
+		assertEquals(0, report.getRejected(WorkloadDriver.Operation.FIND));
+		assertTrue(report.getLatencies(WorkloadDriver.Operation.RENT).count() > 0);
+		assertTrue(report.getLatencies(WorkloadDriver.Operation.RENT).percentile(50) <= report.getLatencies(WorkloadDriver.Operation.RENT).percentile(99));
+		assertEquals("AAB000", WorkloadDriver.plate(1000));
+	}
+	@Test
+	public void testFollowerReplaysPrimaryWhileRentalsContinue(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		ReplicationPrimary primary = new ReplicationPrimary(system, 0);
+		primary.start();
+		Customer customer = new Customer(3, "Copy");
+		system.addCustomer(customer);
+		Vehicle[] fleet = new Vehicle[8];
+		for (int i = 0; i < fleet.length; i++) {
+			fleet[i] = new Car("Kia","Rio",2021,5);
+			fleet[i].setLicensePlate(String.format("REP%03d", i));
+			system.addVehicle(fleet[i]);
+		}
+		system.rentVehicle(fleet[0], customer, LocalDate.of(2025, 1, 1), 50);
+		
+		//Rentals and returns keep going while the follower takes its snapshot, so the snapshot and the changes after it overlap.
+		Thread[] clerks = new Thread[4];
+		for (int t = 0; t < clerks.length; t++) {
+			Vehicle vehicle = fleet[t + 1];
+			clerks[t] = new Thread(() -> {
+				for (int i = 0; i < 200; i++) {
+					system.rentVehicle(vehicle, customer, LocalDate.of(2025, 2, 1), 10);
+					system.returnVehicle(vehicle, customer, LocalDate.of(2025, 2, 2), 0);
+				}
+			});
+			clerks[t].start();
+		}
+		ReplicaFollower follower = new ReplicaFollower("localhost", primary.getPort());
+		for (Thread clerk : clerks) {
+			clerk.join();
+		}
+		system.rentVehicle(fleet[5], customer, LocalDate.of(2025, 3, 1), 70);
+		system.reserveVehicle(fleet[6], customer, LocalDate.of(2030, 5, 1), LocalDate.of(2030, 5, 3));
+		
+		//Asserts that the follower ends up with the primary's statuses, history and reservations, and reports its lag.
+		assertTrue(follower.awaitSequence(primary.getSequence(), 10_000));
+		assertEquals(system.getRentalHistory().size(), follower.getRentalHistory().size());
+		assertEquals(1 + 1600 + 1, follower.getRentalHistory().size());
+		assertEquals(system.getStatusCounts(), follower.getStatusCounts());
+		assertEquals(Vehicle.VehicleStatus.Rented, follower.findVehicleByPlate("REP005").getStatus());
+		assertEquals(400, follower.getRentalHistory().getRentalRecordsByVehicle("REP002").size());
+		assertEquals(1, follower.getReservations(follower.findVehicleByPlate("REP006")).size());
+		assertEquals("Copy", follower.findCustomerById(3).getCustomerName());
+		assertTrue(follower.getLagMillis() >= 0);
+		
+		follower.close();
+		primary.close();
+		system.close();
+	}
+	@Test
+	public void testFollowerKeepsUpPastUnregisteredAndBadRecords(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(new InMemoryRentalStore());
+		ReplicationPrimary primary = new ReplicationPrimary(system, 0);
+		primary.start();
+		Vehicle fleetCar = new Car("Kia","Rio",2021,5);
+		fleetCar.setLicensePlate("OUT100");
+		system.addVehicle(fleetCar);
+		Customer regular = new Customer(1, "Regular");
+		system.addCustomer(regular);
+		Vehicle walkIn = new Car("Opel","Corsa",2019,5);  //Rented without ever being added, as the counter allows.
+		walkIn.setLicensePlate("OUT200");
+		Customer stranger = new Customer(2, "Stranger, Jr");
+		system.rentVehicle(walkIn, regular, LocalDate.of(2025, 1, 1), 20);  //In the follower's snapshot.
+		
+		ReplicaFollower follower = new ReplicaFollower("localhost", primary.getPort());
+		system.rentVehicle(fleetCar, stranger, LocalDate.of(2025, 1, 2), 30);  //Shipped live.
+		system.returnVehicle(walkIn, stranger, LocalDate.of(2025, 1, 3), 0);
+		system.returnVehicle(fleetCar, regular, LocalDate.of(2025, 1, 4), 0);
+		
+		//Asserts that records for a vehicle and a customer the primary never added don't hold the rest back.
+		assertTrue(follower.awaitSequence(primary.getSequence(), 10_000));
+		assertEquals(4, follower.getRentalHistory().size());
+		assertEquals("Stranger, Jr", follower.getRentalHistory().getRentalHistory().get(1).getCustomer().getCustomerName());
+		assertEquals(2, follower.getRentalHistory().getRentalRecordsByVehicle("OUT200").size());
+		assertNull(follower.findVehicleByPlate("OUT200"));
+		assertNull(follower.findCustomerById(2));
+		follower.close();
+		primary.close();
+		system.close();
+		
+		//Asserts that a record line that can't be read is skipped and the rows after it still apply.
+		try (ServerSocket fakePrimary = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			ReplicaFollower reader = new ReplicaFollower("localhost", fakePrimary.getLocalPort());
+			try (Socket socket = fakePrimary.accept(); PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+				long now = System.currentTimeMillis();
+				out.println("V,0," + now + ",Available,Car,BAD100,Kia,Rio,2021,5");
+				out.println("C,0," + now + ",1,Reader");
+				out.println("L,0," + now);
+				out.println("R,1," + now + ",0,BAD100,1,null,10.0,RENT,Reader");
+				out.println("R,2," + now + ",1,BAD100,1,2025-01-02,10.0,RENT,Reader");
+				assertTrue(reader.awaitSequence(2, 10_000));
+			}
+			assertEquals(1, reader.getRentalHistory().size());
+			assertEquals(LocalDate.of(2025, 1, 2), reader.getRentalHistory().getRentalHistory().get(0).getRecordDate());
+			reader.close();
+		}
+	}
+	@Test
+	public void testEveryStoreLoadsBackWhatItSaved(@TempDir File dataDir) throws Exception {
+		
+		InMemoryRentalStore memory = new InMemoryRentalStore();
+		File binaryDir = new File(dataDir, "binary");
+		File textDir = new File(dataDir, "text");
+		binaryDir.mkdirs();
+		textDir.mkdirs();
+		RentalStore[] stores = { memory, new BinaryRentalStore(binaryDir), RentalStore.open("text", textDir, PersistencePipeline.DurabilityMode.SYNC) };
+		for (RentalStore store : stores) {
+			RentalSystem system = new RentalSystem(store);
+			Customer customer = new Customer(8, "Stored");
+			system.addCustomer(customer);
+			Vehicle car = new Car("Audi","A4",2022,5);
+			car.setLicensePlate("STO001");
+			Vehicle truck = new PickupTruck("Ford","F150",2020,6.5,true);
+			truck.setLicensePlate("STO002");
+			system.addVehicle(car);
+			system.addVehicle(truck);
+			system.rentVehicle(car, customer, LocalDate.of(2025, 4, 1), 90);
+			system.rentVehicle(truck, customer, LocalDate.of(2025, 4, 2), 60);
+			system.returnVehicle(truck, customer, LocalDate.of(2025, 4, 5), 5);
+			Reservation kept = system.reserveVehicle(truck, customer, LocalDate.of(2030, 1, 1), LocalDate.of(2030, 1, 3));
+			Reservation cancelled = system.reserveVehicle(truck, customer, LocalDate.of(2030, 2, 1), LocalDate.of(2030, 2, 3));
+			system.cancelReservation(cancelled.getId());
+			system.close();
+			
+			//Asserts that a new system over the same store gets back the statuses, history and open reservations.
+			RentalSystem reopened = new RentalSystem(store == memory ? memory : store instanceof BinaryRentalStore ?
+					new BinaryRentalStore(binaryDir) : RentalStore.open("text", textDir, PersistencePipeline.DurabilityMode.SYNC));
+			assertEquals(Vehicle.VehicleStatus.Rented, reopened.findVehicleByPlate("STO001").getStatus());
+			assertEquals(Vehicle.VehicleStatus.Available, reopened.findVehicleByPlate("STO002").getStatus());
+			assertEquals(6.5, ((PickupTruck) reopened.findVehicleByPlate("STO002")).getCargoSize(), 0.0001);
+			assertEquals(3, reopened.getRentalHistory().size());
+			assertEquals(60, reopened.getRentalHistory().getRentalRecordsByVehicle("STO002").get(0).getTotalAmount(), 0.0001);
+			assertEquals("Stored", reopened.findCustomerById(8).getCustomerName());
+			assertEquals(1, reopened.getReservations(reopened.findVehicleByPlate("STO002")).size());
+			assertEquals(kept.getId(), reopened.getReservations(reopened.findVehicleByPlate("STO002")).get(0).getId());
+			reopened.compact();
+			reopened.close();
+			
+			//Asserts that compacting keeps the statuses and drops only the cancelled reservation.
+			RentalSystem compacted = new RentalSystem(store == memory ? memory : store instanceof BinaryRentalStore ?
+					new BinaryRentalStore(binaryDir) : RentalStore.open("text", textDir, PersistencePipeline.DurabilityMode.SYNC));
+			assertEquals(Vehicle.VehicleStatus.Rented, compacted.findVehicleByPlate("STO001").getStatus());
+			assertEquals(1, compacted.getReservations(compacted.findVehicleByPlate("STO002")).size());
+			compacted.close();
+		}
+		
+		//Asserts that a binary log cut off mid-entry loads up to the last whole entry and takes new saves after it.
+		File log = new File(binaryDir, "rentals.bin");
+		long length = log.length();
+		Files.write(log.toPath(), new byte[] { 0, 0, 0, 40, 3, 1, 2 }, StandardOpenOption.APPEND);
+		RentalSystem torn = new RentalSystem(new BinaryRentalStore(binaryDir));
+		assertEquals(3, torn.getRentalHistory().size());
+		assertEquals(1, torn.getReservations(torn.findVehicleByPlate("STO002")).size());
+		torn.addCustomer(new Customer(9, "After"));
+		torn.close();
+		assertTrue(log.length() > length);
+		assertEquals("After", new RentalSystem(new BinaryRentalStore(binaryDir)).findCustomerById(9).getCustomerName());
+		
+		//Asserts that a misspelt rental.store falls back to the text store instead of failing, and names are read in any case.
+		System.setProperty("rental.store", "binray");
+		try {
+			assertEquals("text", RentalStore.configuredKind());
+			System.setProperty("rental.store", "MEMORY");
+			assertEquals("memory", RentalStore.configuredKind());
+		} finally {
+			System.clearProperty("rental.store");
+		}
+		assertEquals("text", RentalStore.configuredKind());
+	}
+	@Test
+	public void testStatusIndexFollowsEveryStatusChange(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Customer customer = new Customer(1, "Status");
+		system.addCustomer(customer);
+		Vehicle[] fleet = new Vehicle[6];
+		for (int i = 0; i < fleet.length; i++) {
+			fleet[i] = new Car("Honda","Civic",2021,5);
+			fleet[i].setLicensePlate("STA" + (100 + i));
+			assertTrue(system.addVehicle(fleet[i]));
+		}
+		fleet[1].setStatus(Vehicle.VehicleStatus.UnderMaintenance);
+		fleet[2].setStatus(Vehicle.VehicleStatus.OutOfService);
+		fleet[3].setStatus(Vehicle.VehicleStatus.Held);
+		assertTrue(system.rentVehicle(fleet[4], customer, LocalDate.now(), 50));
+		
+		//Asserts that each status lists its vehicles in the order they were added, whatever path changed the status.
+		assertEquals(List.of(fleet[0], fleet[5]), system.getVehicles(Vehicle.VehicleStatus.Available));
+		assertEquals(List.of(fleet[1]), system.getVehicles(Vehicle.VehicleStatus.UnderMaintenance));
+		assertEquals(List.of(fleet[2]), system.getVehicles(Vehicle.VehicleStatus.OutOfService));
+		assertEquals(List.of(fleet[3]), system.getVehicles(Vehicle.VehicleStatus.Held));
+		assertEquals(List.of(fleet[4]), system.getVehicles(Vehicle.VehicleStatus.Rented));
+		assertTrue(system.returnVehicle(fleet[4], customer, LocalDate.now(), 0));
+		fleet[1].setStatus(Vehicle.VehicleStatus.Available);
+		assertEquals(List.of(fleet[0], fleet[1], fleet[4], fleet[5]), system.getVehicles(Vehicle.VehicleStatus.Available));
+		assertEquals(0, system.countVehicles(Vehicle.VehicleStatus.Rented));
+		
+		//Asserts that rentals and returns from several threads at once leave the counts matching the fleet.
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		List<Future<?>> counters = new ArrayList<>();
+		for (int i : new int[] { 0, 1, 5 }) {
+			counters.add(pool.submit(() -> {
+				for (int k = 0; k < 500; k++) {
+					assertTrue(system.rentVehicle(fleet[i], customer, LocalDate.now(), 10));
+					assertTrue(system.returnVehicle(fleet[i], customer, LocalDate.now(), 0));
+				}
+				return null;
+			}));
+		}
+		for (Future<?> counter : counters) {
+			counter.get(30, TimeUnit.SECONDS);
+		}
+		pool.shutdown();
+		Map<Vehicle.VehicleStatus, Integer> counts = system.getStatusCounts();
+		assertEquals(4, counts.get(Vehicle.VehicleStatus.Available));
+		assertEquals(0, counts.get(Vehicle.VehicleStatus.Rented));
+		assertEquals(1, counts.get(Vehicle.VehicleStatus.Held));
+		assertEquals(1, counts.get(Vehicle.VehicleStatus.OutOfService));
+		assertEquals(0, counts.get(Vehicle.VehicleStatus.UnderMaintenance));
+		assertEquals(List.of(fleet[0], fleet[1], fleet[4], fleet[5]), system.getVehicles(Vehicle.VehicleStatus.Available));
+		system.close();
+	}
+	@Test
+	public void testRunningTotalsStayExactUnderConcurrentAdds() throws Exception {
+		
+		RentalAggregates totals = new RentalAggregates();
+		Vehicle car = new Car("Honda","Civic",2021,5);
+		car.setLicensePlate("AGG100");
+		Customer customer = new Customer(1, "Totals");
+		long day = LocalDate.of(2024, 6, 30).toEpochDay();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		CyclicBarrier start = new CyclicBarrier(4);
+		List<Future<?>> adders = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			adders.add(pool.submit(() -> {
+				start.await();
+				for (int i = 0; i < 10000; i++) {
+					totals.add(car, customer, day + i % 2, 0.05, i % 2 == 0 ? "RENT" : "RETURN");
+				}
+				return null;
+			}));
+		}
+		for (Future<?> adder : adders) {
+			adder.get(30, TimeUnit.SECONDS);
+		}
+		pool.shutdown();
+		
+		//Asserts that adds racing on the same vehicle, customer and days are all counted, to the cent.
+		assertEquals(20000, totals.getTotals().getRentals());
+		assertEquals(20000, totals.getTotals().getReturns());
+		assertEquals(2000.0, totals.getTotals().getRevenue(), 0.0);
+		assertEquals(2000.0, totals.getVehicleTotals("AGG100").getRevenue(), 0.0);
+		assertEquals(1000.0, totals.getCustomerTotals(1, YearMonth.of(2024, 6)).getRevenue(), 0.0);
+		assertEquals(1000.0, totals.getDayTotals(LocalDate.of(2024, 7, 1)).getRevenue(), 0.0);
+		assertEquals(2000.0, totals.getTypeTotals("Car").getRevenue(), 0.0);
+		assertEquals(2000.0, totals.getTotalsBetween(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31)).getRevenue(), 0.0);
+	}
+	@Test
+	public void testConcurrentHistoryAddsKeepEveryRowAndTotal() throws Exception {
+		
+		RentalHistory history = new RentalHistory();
+		int threads = 8;
+		int perThread = 5000;
+		Vehicle[] vehicles = new Vehicle[threads];
+		Customer[] customers = new Customer[threads];
+		for (int t = 0; t < threads; t++) {
+			vehicles[t] = new Car("Honda","Civic",2021,5);
+			vehicles[t].setLicensePlate("CON" + (100 + t));
+			customers[t] = new Customer(t, "Counter" + t);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+		CyclicBarrier start = new CyclicBarrier(threads + 1);
+		List<Future<int[]>> adders = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			adders.add(pool.submit(() -> {
+				start.await();
+				int[] rows = new int[perThread];
+				for (int i = 0; i < perThread; i++) {
+					rows[i] = history.addRecord(vehicles[thread], customers[thread], LocalDate.of(2024, 1, 1).plusDays(i % 366).toEpochDay(),
+							1.25, i % 2 == 0 ? "RENT" : "RETURN");
+				}
+				return rows;
+			}));
+		}
+		//Queries the indexes while the adds are going on, so rows get filed part way through.
+		Future<?> reader = pool.submit(() -> {
+			start.await();
+			for (int i = 0; i < 200; i++) {
+				List<RentalRecord> records = history.getRentalRecordsByVehicle("CON100");
+				for (RentalRecord record : records) {
+					assertSame(customers[0], record.getCustomer());
+				}
+			}
+			return null;
+		});
+		boolean[] seen = new boolean[threads * perThread];
+		for (Future<int[]> adder : adders) {
+			for (int row : adder.get(30, TimeUnit.SECONDS)) {
+				assertFalse(seen[row]);  //Asserts that no two adds were given the same row.
+				seen[row] = true;
+			}
+		}
+		reader.get(30, TimeUnit.SECONDS);
+		pool.shutdown();
+		
+		//Asserts that every row was published and counted once in the indexes and the totals.
+		assertEquals(threads * perThread, history.size());
+		for (int t = 0; t < threads; t++) {
+			List<RentalRecord> records = history.getRentalRecordsByVehicle(vehicles[t].getLicensePlate());
+			assertEquals(perThread, records.size());
+			assertEquals(perThread, history.getRentalRecordsByCustomerId(t).size());
+			assertEquals("RENT", records.get(0).getRecordType());
+			assertEquals(LocalDate.of(2024, 1, 1), records.get(0).getRecordDate());
+			assertEquals(LocalDate.of(2024, 1, 2), records.get(1).getRecordDate());
+		}
+		RentalAggregates.Totals totals = history.getAggregates().getTotals();
+		assertEquals(threads * perThread / 2, totals.getRentals());
+		assertEquals(threads * perThread / 2, totals.getReturns());
+		assertEquals(threads * perThread * 1.25, totals.getRevenue(), 0.0);
+		assertEquals(perThread * 1.25, history.getAggregates().getCustomerTotals(3).getRevenue(), 0.0);
+		assertEquals(threads * 1.25 * 14, history.getAggregates().getDayTotals(LocalDate.of(2024, 1, 1)).getRevenue(), 0.0);
+		assertEquals(threads * perThread, history.getRentalHistory().size());
+	}
+	@Test
+	public void testHistoryIndexesFindRecordsAddedAfterEarlierQueries() {
+		
+		RentalHistory history = new RentalHistory();
+		Vehicle first = new Car("Honda","Civic",2021,5);
+		first.setLicensePlate("IDX100");
+		Vehicle second = new Car("Mazda","3",2019,5);
+		second.setLicensePlate("IDX200");
+		Customer ann = new Customer(1, "Ann Index");
+		Customer bob = new Customer(2, "Bob Index");
+		history.addRecord(new RentalRecord(first, ann, LocalDate.of(2024, 5, 3), 10, "RENT"));
+		history.addRecord(new RentalRecord(second, bob, LocalDate.of(2024, 5, 1), 20, "RENT"));
+		assertEquals(1, history.getRentalRecordsByVehicle("IDX100").size());
+		assertEquals(1, history.getRentalRecordsByCustomerId(2).size());
+		
+		//Asserts that records added after a query show up in the next one, in the order they were added.
+		history.addRecord(new RentalRecord(first, ann, LocalDate.of(2024, 5, 4), 5, "RETURN"));
+		history.addRecord(new RentalRecord(first, bob, LocalDate.of(2024, 5, 2), 30, "RENT"));
+		List<RentalRecord> byVehicle = history.getRentalRecordsByVehicle("IDX100");
+		assertEquals(3, byVehicle.size());
+		assertEquals(LocalDate.of(2024, 5, 3), byVehicle.get(0).getRecordDate());
+		assertEquals(LocalDate.of(2024, 5, 2), byVehicle.get(2).getRecordDate());
+		assertEquals(2, history.getRentalRecordsByCustomerId(1).size());
+		assertEquals(2, history.getRentalRecordsByCustomer("bob").size());
+		assertTrue(history.getRentalRecordsByVehicle("IDX999").isEmpty());
+		assertTrue(history.getRentalRecordsByVehicle(null).isEmpty());
+		assertTrue(history.getRentalRecordsByCustomerId(3).isEmpty());
+		
+		//Asserts that a date range comes back in date order with both ends included.
+		List<RentalRecord> between = history.getRentalRecordsBetween(LocalDate.of(2024, 5, 2), LocalDate.of(2024, 5, 4));
+		assertEquals(3, between.size());
+		assertEquals(LocalDate.of(2024, 5, 2), between.get(0).getRecordDate());
+		assertEquals(LocalDate.of(2024, 5, 3), between.get(1).getRecordDate());
+		assertEquals(LocalDate.of(2024, 5, 4), between.get(2).getRecordDate());
+		assertTrue(history.getRentalRecordsBetween(LocalDate.of(2024, 5, 4), LocalDate.of(2024, 5, 2)).isEmpty());
+		assertEquals(4, history.getRentalRecordsBetween(LocalDate.MIN, LocalDate.MAX).size());
+	}
+	@Test
+	public void testImportsReportEveryRowTheySkip(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Vehicle existing = new Car("Honda","Civic",2021,5);
+		existing.setLicensePlate("IMP100");
+		assertTrue(system.addVehicle(existing));
+		assertTrue(system.addCustomer(new Customer(1, "Existing")));
+		
+		ImportReport vehicles = system.importVehicles(new StringReader(String.join("\n",
+				"Car,IMP200,Toyota,Corolla,2020,5",
+				"Car,IMP100,Toyota,Corolla,2020,5",
+				"",
+				"Car,IMP200,Mazda,3,2019,5",
+				"Car,IMP300,Toyota,Corolla,20x0,5",
+				"Car,NOTAPLATE,Toyota,Corolla,2020,5",
+				"Minibus,IMP400,Ford,Transit,2022,true")));
+		//Asserts that the report counts the rows that went in and names each skipped row by its line number,
+		//blank lines included, so a clerk can find it in the file they imported.
+		assertEquals(2, vehicles.getImported());
+		assertEquals(2, vehicles.getDuplicates().size());
+		assertEquals(2, vehicles.getDuplicates().get(0).getRow());  //Already in the system.
+		assertEquals(4, vehicles.getDuplicates().get(1).getRow());  //Earlier in the same import.
+		assertEquals("Car,IMP200,Mazda,3,2019,5", vehicles.getDuplicates().get(1).getLine());
+		assertEquals(2, vehicles.getErrors().size());
+		assertEquals(5, vehicles.getErrors().get(0).getRow());
+		assertEquals(6, vehicles.getErrors().get(1).getRow());
+		assertTrue(vehicles.hasProblems());
+		assertEquals("2 imported, 2 duplicates, 2 errors", vehicles.toString());
+		assertEquals("Toyota", system.findVehicleByPlate("IMP200").getMake());  //The first of two rows with one plate wins.
+		assertNull(system.findVehicleByPlate("IMP300"));
+		
+		ImportReport customers = system.importCustomers(new StringReader("2,Imported\n1,Again\nthree,Broken\n"));
+		assertEquals(1, customers.getImported());
+		assertEquals(2, customers.getDuplicates().get(0).getRow());
+		assertEquals(3, customers.getErrors().get(0).getRow());
+		
+		ImportReport records = system.importRecords(new StringReader(String.join("\n",
+				"IMP200,2,2024-03-01,50.0,RENT",
+				"ZZZ999,2,2024-03-01,50.0,RENT",
+				"IMP200,9,2024-03-01,50.0,RENT",
+				"IMP400,2,2024-03-01,50.0,LOST",
+				"IMP400,2,2024-02-30,50.0,RENT")));
+		assertEquals(1, records.getImported());
+		assertEquals(Arrays.asList(2, 3, 4, 5), records.getErrors().stream().map(ImportReport.RowProblem::getRow).collect(Collectors.toList()));
+		assertEquals("Unknown vehicle or customer", records.getErrors().get(0).getMessage());
+		assertEquals("Unknown record type LOST", records.getErrors().get(2).getMessage());
+		assertEquals(Vehicle.VehicleStatus.Rented, system.findVehicleByPlate("IMP200").getStatus());
+		assertEquals(Vehicle.VehicleStatus.Available, system.findVehicleByPlate("IMP400").getStatus());
+		system.close();
+		
+		//Asserts that only the accepted rows were saved.
+		RentalSystem reloaded = new RentalSystem(dataDir);
+		assertEquals(3, reloaded.getVehicles(null).size());
+		assertEquals("Imported", reloaded.findCustomerById(2).getCustomerName());
+		assertEquals(1, reloaded.getRentalHistory().size());
+		assertEquals(Vehicle.VehicleStatus.Rented, reloaded.findVehicleByPlate("IMP200").getStatus());
+		reloaded.close();
+	}
+	@Test
+	public void testLookupsFindVehiclesAndCustomersByKeyAndRejectDuplicates(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Vehicle car = new Car("Honda","Civic",2021,5);
+		car.setLicensePlate("LUK100");
+		assertTrue(system.addVehicle(car));
+		Vehicle sameCar = new Car("Mazda","3",2019,5);
+		sameCar.setLicensePlate("LUK100");
+		Vehicle noPlate = new Car("Mazda","3",2019,5);
+		Customer customer = new Customer(4, "Lookup");
+		assertTrue(system.addCustomer(customer));
+		
+		//Asserts that a plate or id already taken is rejected, and that the index hands back the first object.
+		assertFalse(system.addVehicle(sameCar));
+		assertFalse(system.addVehicle(noPlate));
+		assertFalse(system.addCustomer(new Customer(4, "Other")));
+		assertSame(car, system.findVehicleByPlate("LUK100"));
+		assertSame(customer, system.findCustomerById(4));
+		assertNull(system.findVehicleByPlate("LUK101"));
+		assertNull(system.findCustomerById(5));
+		assertEquals(1, system.getVehicles(null).size());
+		system.close();
+		
+		//Asserts that the loaded fleet is indexed the same way.
+		RentalSystem reloaded = new RentalSystem(dataDir);
+		assertEquals("Honda", reloaded.findVehicleByPlate("LUK100").getMake());
+		assertEquals("Lookup", reloaded.findCustomerById(4).getCustomerName());
+		assertFalse(reloaded.addVehicle(sameCar));
+		reloaded.close();
+	}
+	@Test
+	public void testAppendLogWritesLinesInGroups(@TempDir File dataDir) throws Exception {
+		
+		File file = new File(dataDir, "grouped.txt");
+		AppendLog log = new AppendLog(file, 3, 0);
+		log.append("one");
+		log.append("two");
+		
+		//Asserts that lines wait in the buffer until the group is full or the log is flushed.
+		assertFalse(file.exists() && file.length() > 0);
+		log.append("three");
+		assertEquals(List.of("one", "two", "three"), Files.readAllLines(file.toPath()));
+		log.append("four");
+		assertEquals(3, Files.readAllLines(file.toPath()).size());
+		log.flush();
+		assertEquals(4, Files.readAllLines(file.toPath()).size());
+		
+		//Asserts that a closed log reopens on the next line and appends after what is already there.
+		log.close();
+		log.append("five");
+		log.close();
+		assertEquals(List.of("one", "two", "three", "four", "five"), Files.readAllLines(file.toPath()));
+		log.appendAll(List.of("six", "seven"));
+		assertEquals(7, Files.readAllLines(file.toPath()).size());
+		log.close();
+		
+		//Asserts that a log with a time window writes a lone line once the window has passed.
+		File timed = new File(dataDir, "timed.txt");
+		AppendLog timedLog = new AppendLog(timed, 1000, 20);
+		timedLog.append("late");
+		long deadline = System.currentTimeMillis() + 5000;
+		while (timed.length() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(List.of("late"), Files.readAllLines(timed.toPath()));
+		timedLog.close();
+	}
+	@Test
+	public void testParallelLoaderKeepsFileOrderAcrossChunks(@TempDir File dataDir) throws Exception {
+		
+		//Big enough to be cut into several chunks, with blank lines, Windows line endings and lines the parser drops.
+		File file = new File(dataDir, "ordered.txt");
+		int lines = 400000;
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			text.append(i).append(i % 7 == 0 ? ",skip" : ",keep").append(i % 5 == 0 ? "\r\n" : "\n");
+			if (i % 1000 == 0) {
+				text.append("\n");
+			}
+		}
+		text.setLength(text.length() - 1);  //Last line without a newline.
+		Files.write(file.toPath(), text.toString().getBytes());
+		assertTrue(file.length() > (3 << 20));
+		
+		List<Integer> loaded = ParallelFileLoader.load(file, 0, line -> line.endsWith(",skip") ? null : Integer.parseInt(line.substring(0, line.indexOf(','))));
+		
+		//Asserts that the chunks come back in file order with every kept line once.
+		int expected = 0;
+		for (int value : loaded) {
+			while (expected % 7 == 0) {
+				expected++;
+			}
+			assertEquals(expected++, value);
+		}
+		assertEquals(lines - (lines + 6) / 7, loaded.size());
+		
+		//Asserts that loading from an offset and up to a limit keeps to the lines between them.
+		long offset = text.indexOf("1003,keep");
+		long limit = text.indexOf("2003,keep");
+		List<String> part = ParallelFileLoader.load(file, offset, limit, line -> line);
+		assertEquals("1003,keep", part.get(0));
+		assertEquals("2002,skip", part.get(part.size() - 1));
+		assertEquals(1000, part.size());
+	}
+	@Test
+	public void testMetricsCountSuccessesAndRejections(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		RentalSystemMetrics metrics = system.getMetrics();
+		Vehicle car = new Car("Honda","Civic",2021,5);
+		car.setLicensePlate("MET100");
+		Vehicle same = new Car("Honda","Civic",2021,5);
+		same.setLicensePlate("MET100");
+		Customer customer = new Customer(1, "Metrics");
+		system.addVehicle(car);
+		system.addVehicle(same);
+		system.addCustomer(customer);
+		system.rentVehicle(car, customer, LocalDate.now(), 40);
+		system.rentVehicle(car, customer, LocalDate.now(), 40);
+		system.returnVehicle(car, customer, LocalDate.now(), 0);
+		system.returnVehicle(car, customer, LocalDate.now(), 0);
+		system.returnVehicle(car, customer, LocalDate.now(), 0);
+		
+		//Asserts that each operation counts its successes and its rejections apart, with latencies to match.
+		assertEquals(1, metrics.getStats(RentalSystemMetrics.Operation.ADD_VEHICLE).getSuccesses());
+		assertEquals(1, metrics.getStats(RentalSystemMetrics.Operation.ADD_VEHICLE).getFailures());
+		assertEquals(1, metrics.getStats(RentalSystemMetrics.Operation.ADD_CUSTOMER).getSuccesses());
+		RentalSystemMetrics.OperationStats rents = metrics.getStats(RentalSystemMetrics.Operation.RENT);
+		assertEquals(1, rents.getSuccesses());
+		assertEquals(1, rents.getFailures());
+		assertTrue(rents.getMaxMicros() > 0);
+		assertTrue(rents.getP50Micros() <= rents.getP99Micros());
+		assertEquals(2, metrics.getStats(RentalSystemMetrics.Operation.RETURN).getFailures());
+		assertEquals(1, metrics.getOperations().get("RETURN").getSuccesses());
+		
+		//Asserts that the fleet gauge reads the live status counts and that reset clears the counters.
+		assertEquals(1, metrics.getFleetByStatus().get("Available"));
+		assertEquals(0, metrics.getFleetByStatus().get("Rented"));
+		system.rentVehicle(car, customer, LocalDate.now(), 40);
+		assertEquals(1, metrics.getFleetByStatus().get("Rented"));
+		assertTrue(metrics.getStartupMillis() >= 0);
+		metrics.reset();
+		assertEquals(0, metrics.getStats(RentalSystemMetrics.Operation.RENT).getSuccesses());
+		assertEquals(0, metrics.getStats(RentalSystemMetrics.Operation.RENT).getMaxMicros(), 0.0);
+		system.close();
+	}
+	@Test
+	public void testReportsPageThroughVehiclesAndHistory(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Customer customer = new Customer(1, "Pager");
+		system.addCustomer(customer);
+		Vehicle[] fleet = new Vehicle[3];
+		for (int i = 0; i < fleet.length; i++) {
+			fleet[i] = new Car("Honda","Civic",2020 + i,5);
+			fleet[i].setLicensePlate("PAG" + (100 + i));
+			system.addVehicle(fleet[i]);
+		}
+		//More records than one batch of the history report, so a page spans batches.
+		for (int i = 0; i < 1500; i++) {
+			system.rentVehicle(fleet[0], customer, LocalDate.of(2024, 1, 1).plusDays(i), i + 0.005);
+			system.returnVehicle(fleet[0], customer, LocalDate.of(2024, 1, 1).plusDays(i), 0);
+		}
+		system.rentVehicle(fleet[2], customer, LocalDate.of(2030, 1, 1), 2.675);
+		
+		//Asserts that a page of the history starts after the skipped records and keeps to the limit, across batches,
+		//with each row laid out the way the old printf calls laid it out.
+		StringWriter out = new StringWriter();
+		assertEquals(1200, system.writeRentalHistory(out, 100, 1200, null));
+		String[] lines = out.toString().split(System.lineSeparator());
+		assertEquals(2 + 1200, lines.length);  //Header, separator and rows; split drops the blank line after them.
+		assertEquals(String.format("| %-9s | %-12s | %-20s | %-12s | $%-11.2f |", "RENT", "PAG100", "Pager", LocalDate.of(2024, 2, 20), 50.005), lines[2]);
+		assertEquals(String.format("| %-9s | %-12s | %-20s | %-12s | $%-11.2f |", "RETURN", "PAG100", "Pager", LocalDate.of(2024, 1, 1).plusDays(649), 0.0), lines[1201]);
+		
+		//Asserts that a filtered page counts only matching records, and that the last page stops at the end.
+		out = new StringWriter();
+		assertEquals(1, system.writeRentalHistory(out, 1500, 10, record -> record.getRecordType().equals("RENT")));
+		assertTrue(out.toString().contains(String.format("$%-11.2f", 2.675)));
+		assertEquals(0, system.writeRentalHistory(new StringWriter(), 5000, 10, null));
+		
+		//Asserts that the vehicle report pages through the vehicles with the requested status.
+		out = new StringWriter();
+		assertEquals(1, system.writeVehicles(out, Vehicle.VehicleStatus.Available, 1, 10));
+		assertTrue(out.toString().contains("=== Available Vehicles ==="));
+		assertTrue(out.toString().contains(String.format("| %-15s | %-12s | %-12s | %-12s | %-6d | %-18s |", "Car", "PAG101", "Honda", "Civic", 2021, "Available")));
+		assertFalse(out.toString().contains("PAG100"));
+		out = new StringWriter();
+		assertEquals(0, system.writeVehicles(out, Vehicle.VehicleStatus.OutOfService, 0, 10));
+		assertTrue(out.toString().contains("  No vehicles with Status: OutOfService"));
+		system.close();
+	}
+	@Test
+	public void testPickingUpAReservationKeepsToItsOwnWindow(@TempDir File dataDir) throws Exception {
+		
+		RentalSystem system = new RentalSystem(dataDir);
+		Vehicle car = new Car("Kia","Rio",2022,5);
+		car.setLicensePlate("PIK100");
+		assertTrue(system.addVehicle(car));
+		Customer early = new Customer(1, "Early");
+		Customer later = new Customer(2, "Later");
+		system.addCustomer(early);
+		system.addCustomer(later);
+		LocalDate today = LocalDate.now();
+		Reservation current = system.reserveVehicle(car, early, today, today.plusDays(1));
+		Reservation nextWeek = system.reserveVehicle(car, later, today.plusDays(7), today.plusDays(9));
+		assertEquals(Vehicle.VehicleStatus.Held, car.getStatus());
+		
+		//Asserts that next week's reservation can't be picked up today, while the car is held for today's.
+		assertFalse(system.rentReservedVehicle(nextWeek.getId(), today, 50));
+		assertEquals(Vehicle.VehicleStatus.Held, car.getStatus());
+		assertEquals(2, system.getReservations(car).size());
+		assertFalse(system.rentReservedVehicle(current.getId(), today.plusDays(2), 50));  //After its last day.
+		
+		//Asserts that today's reservation is picked up as usual and next week's stays open.
+		assertTrue(system.rentReservedVehicle(current.getId(), today, 50));
+		assertEquals(Vehicle.VehicleStatus.Rented, car.getStatus());
+		assertEquals(List.of(nextWeek), system.getReservations(car));
+		system.close();
+	}
 	
 
 }
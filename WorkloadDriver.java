@@ -0,0 +1,687 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+//Drives a RentalSystem with a synthetic or recorded workload and reports throughput, latency percentiles and heap use,
+//so hardware can be sized and scaling checked without production traffic. Options are key=value arguments:
+//
+//  vehicles=10000              synthetic fleet size
+//  customers=1000              synthetic customer count
+//  fleet=car:40,sportcar:10,minibus:25,pickup:25     fleet mix by weight
+//  mix=rent:40,return:40,find:15,history:5           operation mix by weight
+//  ops=200000                  measured operations, split across the threads
+//  warmup=20000                operations run first and left out of the figures
+//  threads=1                   worker threads
+//  zipf=1.0                    popularity skew of vehicles and customers, 0 for uniform
+//  seed=42                     random seed, so runs can be repeated
+//  durability=SYNC             SYNC, GROUP or ASYNC (see PersistencePipeline), for the text store
+//  store=text                  text, binary or memory (see RentalStore)
+//  dir=<folder>                data folder to use; a temporary one is made and deleted if not given
+//  replay=<rental_records.txt> replays a recorded trace against the vehicles.txt and customers.txt next to it
+//
+//e.g. java WorkloadDriver vehicles=50000 threads=8 zipf=1.2 durability=GROUP
+public class WorkloadDriver {
+
+	public enum Operation { RENT, RETURN, FIND, HISTORY }
+
+	//Synthetic rentals start on this day and move on one day every DAY_OPERATIONS operations.
+	private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+	private static final int DAY_OPERATIONS = 1000;
+
+	private final Map<String, String> options = new LinkedHashMap<>();
+
+	public WorkloadDriver(String... args) {
+		options.put("vehicles", "10000");
+		options.put("customers", "1000");
+		options.put("fleet", "car:40,sportcar:10,minibus:25,pickup:25");
+		options.put("mix", "rent:40,return:40,find:15,history:5");
+		options.put("ops", "200000");
+		options.put("warmup", "20000");
+		options.put("threads", "1");
+		options.put("zipf", "1.0");
+		options.put("seed", "42");
+		options.put("durability", System.getProperty("rental.durability", "SYNC"));
+		options.put("store", RentalStore.configuredKind());
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			String key = equals < 0 ? arg : arg.substring(0, equals).trim();
+			if (equals < 0 || !(options.containsKey(key) || key.equals("dir") || key.equals("replay"))) {
+				throw new IllegalArgumentException("Unknown option " + arg);
+			}
+			options.put(key, arg.substring(equals + 1).trim());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		new WorkloadDriver(args).run(System.out);
+	}
+
+	//Sets up the data, runs the workload and prints the report. Returns the measured figures.
+	public Report run(PrintStream report) throws IOException, InterruptedException {
+		boolean replay = options.containsKey("replay");
+		File dir = options.containsKey("dir") ? new File(options.get("dir")) : Files.createTempDirectory("rental-workload").toFile();
+		boolean temporary = !options.containsKey("dir");
+		dir.mkdirs();
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));  //RentalSystem prints a line for every rent and return.
+		RentalSystem system = null;
+		try {
+			long heapBefore = usedHeapAfterGc();
+			long setupStart = System.nanoTime();
+			Worker[] workers;
+			String description;
+			if (replay) {
+				File trace = new File(options.get("replay"));
+				if (!options.get("store").equalsIgnoreCase("text")) {
+					throw new IllegalArgumentException("Replay reads the trace's vehicles.txt and customers.txt, so it needs store=text");
+				}
+				if (trace.getAbsoluteFile().getParentFile().equals(dir.getAbsoluteFile())) {
+					throw new IllegalArgumentException("Replay into a different folder than the trace's, or the trace gets loaded and appended to");
+				}
+				copyIfPresent(new File(trace.getAbsoluteFile().getParentFile(), "vehicles.txt"), new File(dir, "vehicles.txt"));
+				copyIfPresent(new File(trace.getAbsoluteFile().getParentFile(), "customers.txt"), new File(dir, "customers.txt"));
+				system = new RentalSystem(dir, durability());
+				workers = replayWorkers(system, trace);
+				description = "replay of " + trace + ", " + count(workers) + " records";
+			} else {
+				system = new RentalSystem(RentalStore.open(options.get("store"), dir, durability()));
+				workers = syntheticWorkers(system);
+				description = "synthetic, " + intOption("vehicles") + " vehicles, " + intOption("customers") + " customers, zipf " +
+						options.get("zipf") + ", mix " + options.get("mix");
+			}
+			long setupMillis = (System.nanoTime() - setupStart) / 1_000_000;
+			long retainedHeap = usedHeapAfterGc() - heapBefore;
+
+			if (!replay) {
+				runAll(workers, false);  //Warms up the JIT; nothing is recorded.
+			}
+			resetPeakHeap();
+			long[] gcBefore = gcTotals();
+			long elapsed = runAll(workers, true);
+			long[] gcAfter = gcTotals();
+
+			Report result = new Report(description, workers.length, elapsed, merge(workers));
+			report.println("Workload: " + description);
+			report.println("Threads: " + workers.length + ", " + options.get("store") + " store, durability " + durability() + ", setup " + setupMillis + " ms");
+			result.print(report);
+			report.printf(Locale.ROOT, "Heap: %.1f MB retained after setup, %.1f MB peak during the run, %.1f MB max; GC %d collections, %d ms%n",
+					mb(retainedHeap), mb(peakHeap()), mb(Runtime.getRuntime().maxMemory()), gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+			return result;
+		} finally {
+			if (system != null) {
+				system.close();
+			}
+			System.setOut(console);
+			if (temporary) {
+				delete(dir);
+			}
+		}
+	}
+
+	//Measured figures of one run.
+	public static class Report {
+		private final String description;
+		private final int threads;
+		private final long elapsedNanos;
+		private final Map<Operation, LatencyHistogram> latencies;
+		private final Map<Operation, Long> rejected;
+
+		Report(String description, int threads, long elapsedNanos, Worker merged) {
+			this.description = description;
+			this.threads = threads;
+			this.elapsedNanos = elapsedNanos;
+			this.latencies = new LinkedHashMap<>();
+			this.rejected = new LinkedHashMap<>();
+			for (Operation operation : Operation.values()) {
+				latencies.put(operation, merged.latencies[operation.ordinal()]);
+				rejected.put(operation, merged.rejected[operation.ordinal()]);
+			}
+		}
+
+		public String getDescription() { return description; }
+
+		public int getThreads() { return threads; }
+
+		public long getOperations() {
+			return all().count();
+		}
+
+		//Operations that ran but were turned down, like renting a vehicle that is out.
+		public long getRejected(Operation operation) {
+			return rejected.get(operation);
+		}
+
+		public LatencyHistogram getLatencies(Operation operation) {
+			return latencies.get(operation);
+		}
+
+		public double getOpsPerSecond() {
+			return elapsedNanos == 0 ? 0 : getOperations() * 1e9 / elapsedNanos;
+		}
+
+		private LatencyHistogram all() {
+			LatencyHistogram all = new LatencyHistogram();
+			for (LatencyHistogram histogram : latencies.values()) {
+				all.add(histogram);
+			}
+			return all;
+		}
+
+		void print(PrintStream out) {
+			out.printf(Locale.ROOT, "Operations: %d in %.3f s, %.0f ops/s%n", getOperations(), elapsedNanos / 1e9, getOpsPerSecond());
+			out.printf(Locale.ROOT, "%-8s %10s %9s %9s %9s %9s %9s %9s %9s%n", "Op", "Count", "Rejected", "Mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "Max us");
+			for (Operation operation : Operation.values()) {
+				printRow(out, operation.name(), latencies.get(operation), rejected.get(operation));
+			}
+			long totalRejected = 0;
+			for (long count : rejected.values()) {
+				totalRejected += count;
+			}
+			printRow(out, "ALL", all(), totalRejected);
+		}
+
+		private static void printRow(PrintStream out, String name, LatencyHistogram histogram, long rejected) {
+			if (histogram.count() == 0) {
+				return;
+			}
+			out.printf(Locale.ROOT, "%-8s %10d %9d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, histogram.count(), rejected,
+					histogram.mean() / 1e3, histogram.percentile(50) / 1e3, histogram.percentile(90) / 1e3,
+					histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+		}
+	}
+
+	//Latencies in nanoseconds, bucketed by their top five bits, so percentiles are within about 6% and the
+	//histogram stays the same small size however many operations run.
+	public static class LatencyHistogram {
+		private static final int SUB_BUCKETS = 16;
+		private final long[] counts = new long[64 * SUB_BUCKETS];
+		private long count;
+		private long total;
+		private long max;
+
+		public void record(long nanos) {
+			long value = Math.max(0, nanos);
+			counts[bucket(value)]++;
+			count++;
+			total += value;
+			max = Math.max(max, value);
+		}
+
+		public void add(LatencyHistogram other) {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += other.counts[i];
+			}
+			count += other.count;
+			total += other.total;
+			max = Math.max(max, other.max);
+		}
+
+		public long count() { return count; }
+
+		public long max() { return max; }
+
+		public double mean() {
+			return count == 0 ? 0 : (double) total / count;
+		}
+
+		//The latency that the given percent of operations came in at or under, as the top of its bucket.
+		public long percentile(double percent) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(max, upperBound(i));
+				}
+			}
+			return max;
+		}
+
+		//Values under 32 get a bucket each. Above that each power of two is split into 16 buckets.
+		private static int bucket(long value) {
+			if (value < 2 * SUB_BUCKETS) {
+				return (int) value;
+			}
+			int shift = 63 - Long.numberOfLeadingZeros(value) - 4;
+			return shift * SUB_BUCKETS + (int) (value >>> shift);
+		}
+
+		private static long upperBound(int bucket) {
+			if (bucket < 2 * SUB_BUCKETS) {
+				return bucket;
+			}
+			int shift = bucket / SUB_BUCKETS - 1;
+			long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+			return ((mantissa + 1) << shift) - 1;
+		}
+	}
+
+	//Picks ranks 0 to n - 1, rank k with probability proportional to 1 / (k + 1)^skew.
+	static class ZipfSampler {
+		private final double[] cumulative;
+
+		ZipfSampler(int n, double skew) {
+			cumulative = new double[n];
+			double sum = 0;
+			for (int k = 0; k < n; k++) {
+				sum += 1 / Math.pow(k + 1, skew);
+				cumulative[k] = sum;
+			}
+		}
+
+		int next(SplittableRandom random) {
+			double target = random.nextDouble() * cumulative[cumulative.length - 1];
+			int rank = Arrays.binarySearch(cumulative, target);
+			return Math.min(cumulative.length - 1, rank >= 0 ? rank : -rank - 1);
+		}
+	}
+
+	//One thread's share of the work and its own figures, merged once every thread is done.
+	private abstract static class Worker implements Runnable {
+		final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+		final long[] rejected = new long[Operation.values().length];
+		boolean recording;
+
+		Worker() {
+			for (int i = 0; i < latencies.length; i++) {
+				latencies[i] = new LatencyHistogram();
+			}
+		}
+
+		abstract int size();
+
+		void done(Operation operation, long start, boolean accepted) {
+			if (recording) {
+				latencies[operation.ordinal()].record(System.nanoTime() - start);
+				if (!accepted) {
+					rejected[operation.ordinal()]++;
+				}
+			}
+		}
+	}
+
+	//Runs every worker on its own thread, starting them together, and returns the wall time in nanoseconds.
+	private static long runAll(Worker[] workers, boolean recording) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			Worker worker = workers[i];
+			worker.recording = recording;
+			threads[i] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				worker.run();
+			}, "workload-" + i);
+			threads[i].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return System.nanoTime() - begin;
+	}
+
+	private static Worker merge(Worker[] workers) {
+		Worker merged = new Worker() {
+			public void run() {
+			}
+
+			int size() {
+				return 0;
+			}
+		};
+		for (Worker worker : workers) {
+			for (int i = 0; i < merged.latencies.length; i++) {
+				merged.latencies[i].add(worker.latencies[i]);
+				merged.rejected[i] += worker.rejected[i];
+			}
+		}
+		return merged;
+	}
+
+	private static long count(Worker[] workers) {
+		long total = 0;
+		for (Worker worker : workers) {
+			total += worker.size();
+		}
+		return total;
+	}
+
+	//Adds the synthetic fleet and customers, then gives each thread its share of the operations.
+	private Worker[] syntheticWorkers(RentalSystem system) {
+		SplittableRandom random = new SplittableRandom(longOption("seed"));
+		int vehicleCount = intOption("vehicles");
+		int customerCount = intOption("customers");
+		Map<String, Integer> fleetMix = weights("fleet", "car", "sportcar", "minibus", "pickup");
+		Map<String, Integer> operationMix = weights("mix", "rent", "return", "find", "history");
+
+		Vehicle[] vehicles = new Vehicle[vehicleCount];
+		for (int i = 0; i < vehicleCount; i++) {
+			vehicles[i] = newVehicle(pick(fleetMix, random), random);
+			vehicles[i].setLicensePlate(plate(i));
+			system.addVehicle(vehicles[i]);
+		}
+		Customer[] customers = new Customer[customerCount];
+		for (int i = 0; i < customerCount; i++) {
+			customers[i] = new Customer(i + 1, "Customer" + (i + 1));
+			system.addCustomer(customers[i]);
+		}
+		//Popular ranks are spread over the fleet instead of all landing on the first vehicles added.
+		shuffle(vehicles, random);
+		shuffle(customers, random);
+
+		double skew = Double.parseDouble(options.get("zipf"));
+		ZipfSampler vehicleSampler = new ZipfSampler(vehicleCount, skew);
+		ZipfSampler customerSampler = new ZipfSampler(customerCount, skew);
+		Operation[] operations = new Operation[100];
+		int total = 0;
+		for (int weight : operationMix.values()) {
+			total += weight;
+		}
+		int filled = 0;
+		int running = 0;
+		for (Map.Entry<String, Integer> entry : operationMix.entrySet()) {
+			running += entry.getValue();
+			int upTo = (int) Math.round(running * 100.0 / total);
+			for (; filled < upTo; filled++) {
+				operations[filled] = Operation.valueOf(entry.getKey().toUpperCase());
+			}
+		}
+
+		int threads = Math.max(1, intOption("threads"));
+		Customer[] renters = new Customer[vehicleCount];  //Who has each vehicle out, so returns come from the renter.
+		Worker[] workers = new Worker[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new SyntheticWorker(system, vehicles, customers, renters, vehicleSampler, customerSampler, operations,
+					random.split(), share(intOption("ops"), threads, t), share(intOption("warmup"), threads, t));
+		}
+		return workers;
+	}
+
+	private static class SyntheticWorker extends Worker {
+		private final RentalSystem system;
+		private final Vehicle[] vehicles;
+		private final Customer[] customers;
+		private final Customer[] renters;
+		private final ZipfSampler vehicleSampler;
+		private final ZipfSampler customerSampler;
+		private final Operation[] operations;
+		private final SplittableRandom random;
+		private final int measured;
+		private final int warmup;
+		private int done;
+
+		SyntheticWorker(RentalSystem system, Vehicle[] vehicles, Customer[] customers, Customer[] renters, ZipfSampler vehicleSampler,
+				ZipfSampler customerSampler, Operation[] operations, SplittableRandom random, int measured, int warmup) {
+			this.system = system;
+			this.vehicles = vehicles;
+			this.customers = customers;
+			this.renters = renters;
+			this.vehicleSampler = vehicleSampler;
+			this.customerSampler = customerSampler;
+			this.operations = operations;
+			this.random = random;
+			this.measured = measured;
+			this.warmup = warmup;
+		}
+
+		int size() {
+			return measured;
+		}
+
+		public void run() {
+			int count = recording ? measured : warmup;
+			for (int i = 0; i < count; i++) {
+				int index = vehicleSampler.next(random);
+				Vehicle vehicle = vehicles[index];
+				Customer customer = customers[customerSampler.next(random)];
+				LocalDate day = FIRST_DAY.plusDays(done++ / DAY_OPERATIONS);
+				Operation operation = operations[random.nextInt(operations.length)];
+				long start = System.nanoTime();
+				boolean accepted;
+				switch (operation) {
+					case RENT:
+						accepted = system.rentVehicle(vehicle, customer, day, 50 + random.nextInt(250));
+						if (accepted) {
+							renters[index] = customer;
+						}
+						break;
+					case RETURN:
+						Customer renter = renters[index];
+						accepted = system.returnVehicle(vehicle, renter != null ? renter : customer, day, random.nextInt(4) == 0 ? 25 : 0);
+						break;
+					case FIND:
+						accepted = system.findVehicleByPlate(vehicle.getLicensePlate()) != null;
+						break;
+					default:
+						accepted = random.nextBoolean()
+								? system.getRentalHistory().getRentalRecordsByVehicle(vehicle.getLicensePlate()) != null
+								: system.getRentalHistory().getRentalRecordsByCustomerId(customer.getCustomerId()) != null;
+				}
+				done(operation, start, accepted);
+			}
+		}
+	}
+
+	//Reads the trace up front and deals its records out by vehicle, so each vehicle's records replay in their recorded order.
+	private Worker[] replayWorkers(RentalSystem system, File trace) throws IOException {
+		int threads = Math.max(1, intOption("threads"));
+		ReplayWorker[] workers = new ReplayWorker[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new ReplayWorker(system);
+		}
+		try (BufferedReader reader = new BufferedReader(new FileReader(trace))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] data = line.split(",");
+				if (data.length < 5) {
+					continue;
+				}
+				Vehicle vehicle = system.findVehicleByPlate(data[0]);
+				Customer customer = system.findCustomerById(Integer.parseInt(data[1]));
+				if (vehicle == null || customer == null) {
+					continue;  //The trace names a vehicle or customer that isn't in the files next to it.
+				}
+				ReplayWorker worker = workers[Math.floorMod(data[0].hashCode(), threads)];
+				worker.add(vehicle, customer, LocalDate.parse(data[2]), Double.parseDouble(data[3]), data[4].equals("RENT"));
+			}
+		}
+		return workers;
+	}
+
+	private static class ReplayWorker extends Worker {
+		private final RentalSystem system;
+		private final List<Vehicle> vehicles = new ArrayList<>();
+		private final List<Customer> customers = new ArrayList<>();
+		private final List<LocalDate> dates = new ArrayList<>();
+		private final List<Double> amounts = new ArrayList<>();
+		private final List<Boolean> rents = new ArrayList<>();
+
+		ReplayWorker(RentalSystem system) {
+			this.system = system;
+		}
+
+		void add(Vehicle vehicle, Customer customer, LocalDate date, double amount, boolean rent) {
+			vehicles.add(vehicle);
+			customers.add(customer);
+			dates.add(date);
+			amounts.add(amount);
+			rents.add(rent);
+		}
+
+		int size() {
+			return vehicles.size();
+		}
+
+		public void run() {
+			for (int i = 0; i < vehicles.size(); i++) {
+				long start = System.nanoTime();
+				if (rents.get(i)) {
+					done(Operation.RENT, start, system.rentVehicle(vehicles.get(i), customers.get(i), dates.get(i), amounts.get(i)));
+				} else {
+					done(Operation.RETURN, start, system.returnVehicle(vehicles.get(i), customers.get(i), dates.get(i), amounts.get(i)));
+				}
+			}
+		}
+	}
+
+	private static Vehicle newVehicle(String type, SplittableRandom random) {
+		int year = 2015 + random.nextInt(11);
+		switch (type) {
+			case "sportcar":
+				return new SportCar("Porsche", "911", year, 2, 380 + random.nextInt(200), random.nextBoolean());
+			case "minibus":
+				return new Minibus("Ford", "Transit", year, random.nextBoolean());
+			case "pickup":
+				return new PickupTruck("Ford", "Ranger", year, 300 + random.nextInt(300), random.nextBoolean());
+			default:
+				return new Car("Toyota", "Corolla", year, 4 + random.nextInt(4));
+		}
+	}
+
+	//Turns a number from 0 to 17,575,999 into a valid plate, e.g. 0 is AAA000 and 1000 is AAB000.
+	static String plate(int index) {
+		int letters = index / 1000;
+		int digits = index % 1000;
+		return "" + (char) ('A' + (letters / 676) % 26) + (char) ('A' + (letters / 26) % 26) + (char) ('A' + letters % 26) +
+				(char) ('0' + digits / 100) + (char) ('0' + (digits / 10) % 10) + (char) ('0' + digits % 10);
+	}
+
+	//Reads a "name:weight,name:weight" option. Names left out get no weight.
+	private Map<String, Integer> weights(String option, String... names) {
+		Map<String, Integer> weights = new LinkedHashMap<>();
+		for (String part : options.get(option).split(",")) {
+			String[] pair = part.split(":");
+			String name = pair[0].trim().toLowerCase();
+			if (pair.length != 2 || !Arrays.asList(names).contains(name)) {
+				throw new IllegalArgumentException("Bad " + option + " entry " + part + ", expected one of " + Arrays.toString(names) + " with a weight");
+			}
+			weights.put(name, Integer.parseInt(pair[1].trim()));
+		}
+		weights.values().removeIf(weight -> weight <= 0);
+		if (weights.isEmpty()) {
+			throw new IllegalArgumentException("The " + option + " option needs at least one positive weight");
+		}
+		return weights;
+	}
+
+	private static String pick(Map<String, Integer> weights, SplittableRandom random) {
+		int total = 0;
+		for (int weight : weights.values()) {
+			total += weight;
+		}
+		int target = random.nextInt(total);
+		for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+			target -= entry.getValue();
+			if (target < 0) {
+				return entry.getKey();
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	private static <T> void shuffle(T[] items, SplittableRandom random) {
+		for (int i = items.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			T item = items[i];
+			items[i] = items[j];
+			items[j] = item;
+		}
+	}
+
+	//Thread t's part of total when it is split as evenly as possible.
+	private static int share(int total, int threads, int t) {
+		return total / threads + (t < total % threads ? 1 : 0);
+	}
+
+	private PersistencePipeline.DurabilityMode durability() {
+		return PersistencePipeline.DurabilityMode.valueOf(options.get("durability").toUpperCase());
+	}
+
+	private int intOption(String key) {
+		return Integer.parseInt(options.get(key));
+	}
+
+	private long longOption(String key) {
+		return Long.parseLong(options.get(key));
+	}
+
+	private static void copyIfPresent(File from, File to) throws IOException {
+		if (from.exists()) {
+			Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private static long usedHeapAfterGc() {
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	//The sum of each heap pool's peak, which can be a little over the true peak since pools peak at different times.
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	//Collections and milliseconds spent collecting so far, over every collector.
+	private static long[] gcTotals() {
+		long[] totals = new long[2];
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			totals[0] += Math.max(0, collector.getCollectionCount());
+			totals[1] += Math.max(0, collector.getCollectionTime());
+		}
+		return totals;
+	}
+
+	private static double mb(long bytes) {
+		return bytes / (1024.0 * 1024.0);
+	}
+}
@@ -0,0 +1,79 @@
+import java.io.File;
+import java.time.LocalDate;
+
+import rental.bench.BenchmarkData;
+import rental.bench.BenchmarkTarget;
+
+//Connects the benchmarks to RentalSystem. Lives in the default package so it can use the application classes.
+public class RentalSystemTarget implements BenchmarkTarget {
+
+	private RentalSystem system;
+	private Vehicle[] fleet;
+
+	@Override
+	public void load(File dir) {
+		system = new RentalSystem(dir);
+
+		//Resolves the fleet up front so the rental benchmarks measure renting, not lookups.
+		int size = 0;
+		while (system.findVehicleByPlate(BenchmarkData.plate(size)) != null) {
+			size++;
+		}
+		fleet = new Vehicle[size];
+		for (int i = 0; i < size; i++) {
+			fleet[i] = system.findVehicleByPlate(BenchmarkData.plate(i));
+		}
+	}
+
+	@Override
+	public void close() {
+		system.close();
+	}
+
+	@Override
+	public Object findVehicleByPlate(String plate) {
+		return system.findVehicleByPlate(plate);
+	}
+
+	@Override
+	public Object findCustomerById(int customerId) {
+		return system.findCustomerById(customerId);
+	}
+
+	@Override
+	public boolean addVehicle(String plate) {
+		Vehicle vehicle = new Car("Toyota", "Corolla", 2019, 4);
+		vehicle.setLicensePlate(plate);
+		return system.addVehicle(vehicle);
+	}
+
+	@Override
+	public boolean rentVehicle(int vehicle, int customerId, LocalDate date, double amount) {
+		return system.rentVehicle(fleet[vehicle], system.findCustomerById(customerId), date, amount);
+	}
+
+	@Override
+	public boolean returnVehicle(int vehicle, int customerId, LocalDate date, double extraFees) {
+		return system.returnVehicle(fleet[vehicle], system.findCustomerById(customerId), date, extraFees);
+	}
+
+	@Override
+	public Object recordsByVehicle(String plate) {
+		return system.getRentalHistory().getRentalRecordsByVehicle(plate);
+	}
+
+	@Override
+	public Object recordsByCustomerId(int customerId) {
+		return system.getRentalHistory().getRentalRecordsByCustomerId(customerId);
+	}
+
+	@Override
+	public Object recordsByCustomerName(String name) {
+		return system.getRentalHistory().getRentalRecordsByCustomer(name);
+	}
+
+	@Override
+	public Object recordsBetween(LocalDate from, LocalDate to) {
+		return system.getRentalHistory().getRentalRecordsBetween(from, to);
+	}
+}
@@ -0,0 +1,95 @@
+package rental.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+
+//Builds throwaway data folders for the benchmarks, in the same format RentalSystem saves.
+public final class BenchmarkData {
+
+	public static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+	public static final int DAYS = 365;
+
+	private BenchmarkData() {
+	}
+
+	//Turns a number from 0 to 17,575,999 into a valid plate, e.g. 0 is AAA000 and 1000 is AAB000.
+	public static String plate(int index) {
+		int letters = index / 1000;
+		int digits = index % 1000;
+		char[] plate = new char[6];
+		plate[2] = (char) ('A' + letters % 26);
+		plate[1] = (char) ('A' + (letters / 26) % 26);
+		plate[0] = (char) ('A' + (letters / 676) % 26);
+		plate[3] = (char) ('0' + digits / 100);
+		plate[4] = (char) ('0' + (digits / 10) % 10);
+		plate[5] = (char) ('0' + digits % 10);
+		return new String(plate);
+	}
+
+	public static int customersFor(int fleetSize) {
+		return Math.max(100, fleetSize / 10);
+	}
+
+	//Writes a fleet, its customers and a history in which record k rents or returns vehicle k % fleetSize.
+	public static File create(int fleetSize, int historySize) throws IOException {
+		File dir = File.createTempFile("rental-bench", "");
+		dir.delete();
+		dir.mkdirs();
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(dir, "vehicles.txt")))) {
+			for (int i = 0; i < fleetSize; i++) {
+				switch (i % 3) {
+					case 0:
+						writer.write("Car," + plate(i) + ",Toyota,Corolla,2019,4");
+						break;
+					case 1:
+						writer.write("Minibus," + plate(i) + ",Ford,Transit,2021,true");
+						break;
+					default:
+						writer.write("PickupTruck," + plate(i) + ",Ford,Ranger,2024,400.0,true");
+				}
+				writer.newLine();
+			}
+		}
+
+		int customers = customersFor(fleetSize);
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(dir, "customers.txt")))) {
+			for (int i = 0; i < customers; i++) {
+				writer.write(i + ",Customer" + i);
+				writer.newLine();
+			}
+		}
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(dir, "rental_records.txt")))) {
+			for (int k = 0; k < historySize; k++) {
+				boolean rent = (k / fleetSize) % 2 == 0;
+				LocalDate date = FIRST_DAY.plusDays((long) k * DAYS / historySize);
+				writer.write(plate(k % fleetSize) + "," + (k % customers) + "," + date + "," + (rent ? "120.0,RENT" : "15.0,RETURN"));
+				writer.newLine();
+			}
+		}
+		return dir;
+	}
+
+	public static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	//RentalSystem prints a line for every rent and return, so the benchmarks swap System.out for a sink.
+	public static PrintStream silence() {
+		PrintStream original = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		return original;
+	}
+}
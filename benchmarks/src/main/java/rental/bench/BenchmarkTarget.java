@@ -0,0 +1,43 @@
+package rental.bench;
+
+import java.io.File;
+import java.time.LocalDate;
+
+//The rental system as the benchmarks see it. JMH will not generate code for benchmarks in the
+//default package, and classes in a named package cannot refer to the application classes directly,
+//so the application is reached through this interface. RentalSystemTarget, in the default package,
+//implements it on top of RentalSystem.
+public interface BenchmarkTarget {
+
+	//Loads a RentalSystem over the given data folder. Vehicle number i is the vehicle with plate BenchmarkData.plate(i).
+	void load(File dir);
+
+	void close();
+
+	Object findVehicleByPlate(String plate);
+
+	Object findCustomerById(int customerId);
+
+	//Adds a car with the given plate, returning false if the plate is already taken.
+	boolean addVehicle(String plate);
+
+	boolean rentVehicle(int vehicle, int customerId, LocalDate date, double amount);
+
+	boolean returnVehicle(int vehicle, int customerId, LocalDate date, double extraFees);
+
+	Object recordsByVehicle(String plate);
+
+	Object recordsByCustomerId(int customerId);
+
+	Object recordsByCustomerName(String name);
+
+	Object recordsBetween(LocalDate from, LocalDate to);
+
+	static BenchmarkTarget create() {
+		try {
+			return (BenchmarkTarget) Class.forName("RentalSystemTarget").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("RentalSystemTarget is missing from the benchmark jar", e);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package rental.bench;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+//Rents and returns from 1, 2, 4 and 8 threads at once, to show how throughput scales with counters. Each
+//thread works through vehicles and a customer of its own, so every rent succeeds and the threads only meet
+//where the system itself makes them: the history, the running totals and the status index. JMH reports the
+//throughput of all threads together, so with nothing shared under one lock it should grow with the thread
+//count up to the number of cores.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Drental.commit.records=1024")
+public class ContentionBenchmark {
+
+	private static final int FLEET_SIZE = 100000;
+	private static final int MAX_THREADS = 8;
+
+	private File dir;
+	private BenchmarkTarget system;
+	private PrintStream out;
+
+	//The slice of the fleet one thread rents from, and the customer renting it.
+	@State(Scope.Thread)
+	public static class Counter {
+		int first;
+		int size;
+		int next;
+		int customerId;
+		LocalDate today = LocalDate.now();
+
+		@Setup(Level.Trial)
+		public void setUp(ThreadParams threads) {
+			size = FLEET_SIZE / MAX_THREADS;
+			first = threads.getThreadIndex() * size;
+			customerId = threads.getThreadIndex();
+		}
+
+		int nextVehicle() {
+			int vehicle = first + next;
+			next = next + 1 == size ? 0 : next + 1;
+			return vehicle;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		out = BenchmarkData.silence();
+		dir = BenchmarkData.create(FLEET_SIZE, 0);
+		system = BenchmarkTarget.create();
+		system.load(dir);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		system.close();
+		BenchmarkData.delete(dir);
+		System.setOut(out);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void threads1(Counter counter, Blackhole blackhole) {
+		rentAndReturn(counter, blackhole);
+	}
+
+	@Benchmark
+	@Threads(2)
+	public void threads2(Counter counter, Blackhole blackhole) {
+		rentAndReturn(counter, blackhole);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void threads4(Counter counter, Blackhole blackhole) {
+		rentAndReturn(counter, blackhole);
+	}
+
+	@Benchmark
+	@Threads(MAX_THREADS)
+	public void threads8(Counter counter, Blackhole blackhole) {
+		rentAndReturn(counter, blackhole);
+	}
+
+	private void rentAndReturn(Counter counter, Blackhole blackhole) {
+		int vehicle = counter.nextVehicle();
+		blackhole.consume(system.rentVehicle(vehicle, counter.customerId, counter.today, 120.0));
+		blackhole.consume(system.returnVehicle(vehicle, counter.customerId, counter.today, 0.0));
+	}
+}
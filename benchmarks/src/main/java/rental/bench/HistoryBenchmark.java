@@ -0,0 +1,79 @@
+package rental.bench;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//RentalHistory queries over a fixed fleet of 10,000 vehicles and a growing history.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class HistoryBenchmark {
+
+	private static final int FLEET_SIZE = 10_000;
+
+	@Param({"1000", "100000", "1000000"})
+	public int historySize;
+
+	private File dir;
+	private BenchmarkTarget system;
+	private PrintStream out;
+	private int customers;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		out = BenchmarkData.silence();
+		dir = BenchmarkData.create(FLEET_SIZE, historySize);
+		system = BenchmarkTarget.create();
+		system.load(dir);
+		customers = BenchmarkData.customersFor(FLEET_SIZE);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		system.close();
+		BenchmarkData.delete(dir);
+		System.setOut(out);
+	}
+
+	@Benchmark
+	public Object recordsByVehicle() {
+		return system.recordsByVehicle(BenchmarkData.plate(ThreadLocalRandom.current().nextInt(FLEET_SIZE)));
+	}
+
+	@Benchmark
+	public Object recordsByCustomerId() {
+		return system.recordsByCustomerId(ThreadLocalRandom.current().nextInt(customers));
+	}
+
+	@Benchmark
+	public Object recordsByCustomerName() {
+		return system.recordsByCustomerName("Customer" + ThreadLocalRandom.current().nextInt(customers));
+	}
+
+	//A one-week window somewhere in the year of history.
+	@Benchmark
+	public Object recordsInWeek() {
+		LocalDate from = BenchmarkData.FIRST_DAY.plusDays(ThreadLocalRandom.current().nextInt(BenchmarkData.DAYS - 7));
+		return system.recordsBetween(from, from.plusDays(6));
+	}
+}
@@ -0,0 +1,79 @@
+package rental.bench;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Plate and id lookups, and adding vehicles with their duplicate check, at different fleet sizes.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Drental.commit.records=1024")
+public class LookupBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	public int fleetSize;
+
+	private File dir;
+	private BenchmarkTarget system;
+	private PrintStream out;
+	private int customers;
+	private int nextPlate;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		out = BenchmarkData.silence();
+		dir = BenchmarkData.create(fleetSize, 0);
+		system = BenchmarkTarget.create();
+		system.load(dir);
+		customers = BenchmarkData.customersFor(fleetSize);
+		nextPlate = fleetSize;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		system.close();
+		BenchmarkData.delete(dir);
+		System.setOut(out);
+	}
+
+	@Benchmark
+	public Object findVehicleByPlate() {
+		return system.findVehicleByPlate(BenchmarkData.plate(ThreadLocalRandom.current().nextInt(fleetSize)));
+	}
+
+	@Benchmark
+	public Object findMissingVehicle() {
+		return system.findVehicleByPlate("ZZZ999");
+	}
+
+	@Benchmark
+	public Object findCustomerById() {
+		return system.findCustomerById(ThreadLocalRandom.current().nextInt(customers));
+	}
+
+	//Adds a new plate each call. Once every plate is taken the calls measure the duplicate rejection instead.
+	@Benchmark
+	public boolean addVehicle() {
+		String plate = BenchmarkData.plate(nextPlate);
+		nextPlate = (nextPlate + 1) % 17_576_000;
+		return system.addVehicle(plate);
+	}
+}
@@ -0,0 +1,70 @@
+package rental.bench;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//A rent followed by a return of a random vehicle, including the records written to rental_records.txt.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Drental.commit.records=1024")
+public class RentalBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	public int fleetSize;
+
+	private File dir;
+	private BenchmarkTarget system;
+	private PrintStream out;
+	private LocalDate today = LocalDate.now();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		out = BenchmarkData.silence();
+		dir = BenchmarkData.create(fleetSize, 0);
+		system = BenchmarkTarget.create();
+		system.load(dir);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		system.close();
+		BenchmarkData.delete(dir);
+		System.setOut(out);
+	}
+
+	@Benchmark
+	public void rentAndReturn(Blackhole blackhole) {
+		int vehicle = ThreadLocalRandom.current().nextInt(fleetSize);
+		blackhole.consume(system.rentVehicle(vehicle, 0, today, 120.0));
+		blackhole.consume(system.returnVehicle(vehicle, 0, today, 0.0));
+	}
+
+	//The same work from four threads, to see how the plate-striped locks scale.
+	@Benchmark
+	@Threads(4)
+	public void rentAndReturnContended(Blackhole blackhole) {
+		rentAndReturn(blackhole);
+	}
+}
@@ -0,0 +1,57 @@
+package rental.bench;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//The full loadData path: building a RentalSystem over saved vehicles, customers and records.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class StartupBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	public int fleetSize;
+
+	@Param({"1000", "100000", "1000000"})
+	public int historySize;
+
+	private File dir;
+	private PrintStream out;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		out = BenchmarkData.silence();
+		dir = BenchmarkData.create(fleetSize, historySize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkData.delete(dir);
+		System.setOut(out);
+	}
+
+	@Benchmark
+	public BenchmarkTarget loadData() {
+		BenchmarkTarget system = BenchmarkTarget.create();
+		system.load(dir);
+		return system;
+	}
+}